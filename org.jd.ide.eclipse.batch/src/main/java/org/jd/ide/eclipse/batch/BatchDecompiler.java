@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.core.v1.api.loader.LoaderException;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.loader.Classpath;
+import org.jd.ide.eclipse.util.loader.ClasspathLoader;
+import org.jd.ide.eclipse.util.loader.ListableLoader;
+import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+
+/**
+ * Decompiles archives and class folders without Eclipse, with the loaders,
+ * the printers and the JD-Core configuration of the plug-in.
+ * <p>
+ * Top level classes are decompiled in parallel, the classes of all the
+ * inputs forming the classpath. The number of classes queued is bounded,
+ * as are the printers kept by the pool and the archives kept open by the
+ * registry, so that memory does not grow with the inputs.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class BatchDecompiler {
+	private static final ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+	private static final String CLASS_SUFFIX = ".class";
+	private static final String JAVA_SUFFIX = ".java";
+	// Classes queued per thread
+	private static final int QUEUE_LENGTH = 4;
+
+	private final BatchOptions options;
+	private final ArchiveRegistry registry = new ArchiveRegistry();
+	private final PrinterPool printers;
+	private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder decompiledCount = new LongAdder();
+	private final LongAdder unchangedCount = new LongAdder();
+	private final LongAdder filteredCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+	private final LongAdder inputBytes = new LongAdder();
+	private final LongAdder outputChars = new LongAdder();
+
+	// Roots shared by the loaders of all the classes, indexed once per run
+	private Classpath classpath;
+	private IncrementalState state;
+	private SourceOutput output;
+
+	public BatchDecompiler(BatchOptions options) {
+		this.options = options;
+		this.printers = new PrinterPool(options.getThreadCount(), PrinterPool.DEFAULT_MAX_RETAINED_CAPACITY);
+	}
+
+	public static void main(String[] args) {
+		BatchOptions options;
+
+		try {
+			options = BatchOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(BatchOptions.USAGE);
+			System.exit(2);
+			return;
+		}
+
+		if (options.isHelp()) {
+			System.out.println(BatchOptions.USAGE);
+			return;
+		}
+
+		try {
+			BatchDecompiler decompiler = new BatchDecompiler(options);
+			long startTime = System.nanoTime();
+
+			decompiler.run();
+			decompiler.printSummary(System.out, System.nanoTime() - startTime);
+			System.exit((decompiler.getFailedCount() > 0) ? 1 : 0);
+		} catch (IOException | LoaderException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (InterruptedException e) {
+			System.exit(2);
+		}
+	}
+
+	public void run() throws IOException, LoaderException, InterruptedException {
+		List<File> inputs = options.getInputs();
+
+		if (options.isIncremental()) {
+			state = IncrementalState.load(options.getState(), options.fingerprint());
+		}
+
+		classpath = new Classpath(registry, inputs);
+		classpath.index();
+
+		ExecutorService executor = Executors.newFixedThreadPool(options.getThreadCount());
+		Semaphore queue = new Semaphore(options.getThreadCount() * QUEUE_LENGTH);
+
+		output = SourceOutput.open(options.getOutput(), options.isZipOutput());
+
+		try {
+			for (File input : inputs) {
+				String prefix = (inputs.size() == 1) ? "" : getBaseName(input) + '/';
+
+				for (String internalName : getTopLevelTypeNames(input)) {
+					if (!options.accept(internalName)) {
+						filteredCount.increment();
+						continue;
+					}
+
+					queue.acquire();
+					executor.execute(() -> {
+						try {
+							decompile(input, internalName, prefix + internalName + JAVA_SUFFIX);
+						} finally {
+							queue.release();
+						}
+					});
+				}
+			}
+
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+			if (state != null) {
+				// Sources of the classes removed since the previous run
+				for (String name : state.getPreviousNames()) {
+					if (!names.contains(name)) {
+						output.delete(name);
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			output.close();
+			registry.close();
+		}
+
+		if (state != null) {
+			state.save(options.getState(), options.fingerprint());
+		}
+	}
+
+	/**
+	 * @return The classes of an input, except the inner classes, decompiled with their outer class.
+	 */
+	protected List<String> getTopLevelTypeNames(File input) throws LoaderException {
+		try (ArchiveRegistry.Lease lease = registry.acquire(input)) {
+			List<String> internalNames = new ArrayList<>(((ListableLoader) lease.getLoader()).getInternalNames());
+			Set<String> all = new HashSet<>(internalNames);
+
+			internalNames.removeIf(name -> !ListableLoader.getTopLevelTypeName(name, all).equals(name));
+
+			return internalNames;
+		}
+	}
+
+	protected void decompile(File input, String internalName, String name) {
+		names.add(name);
+
+		try (ClasspathLoader classpathLoader = new ClasspathLoader(classpath, registry.acquire(input))) {
+			byte[] data = classpathLoader.load(internalName);
+
+			if (data == null) {
+				throw new LoaderException("Not found: " + internalName + CLASS_SUFFIX);
+			}
+
+			inputBytes.add(data.length);
+
+			DiskSourceCache.Digest digest = (state == null) ? null : DiskSourceCache.digest(data);
+
+			if ((state != null) && output.exists(name) && state.isUnchanged(name, digest, classpathLoader)) {
+				unchangedCount.increment();
+				return;
+			}
+
+			DiskSourceCache.TrackingLoader loader = new DiskSourceCache.TrackingLoader(classpathLoader, internalName);
+			LineNumberStringBuilderPrinter printer = printers.acquire();
+
+			try {
+				// JD-Core caches in the configuration a type maker bound to the loader
+				Map<String, Object> configuration = new HashMap<>();
+
+				configuration.put("realignLineNumbers", options.isRealignLineNumbers());
+				printer.setRealignmentLineNumber(options.isRealignLineNumbers());
+				printer.setUnicodeEscape(options.isEscapeUnicodeCharacters());
+				printer.setShowLineNumbers(options.isShowLineNumbers());
+
+				DECOMPILER.decompile(loader, printer, internalName, configuration);
+				output.write(name, printer.getBuffer());
+				outputChars.add(printer.getBuffer().length());
+			} finally {
+				printers.release(printer);
+			}
+
+			if (state != null) {
+				state.update(name, digest, loader.getDependencies());
+			}
+
+			decompiledCount.increment();
+		} catch (Exception e) {
+			failedCount.increment();
+			System.err.println("Failed to decompile " + internalName.replace('/', '.') + " from " + input + ": " + e);
+		}
+	}
+
+	public void printSummary(PrintStream out, long nanos) {
+		double seconds = Math.max(nanos, 1) / 1e9;
+		long decompiled = decompiledCount.sum();
+
+		out.printf("Decompiled %d classes in %.1f s: %.0f classes/s, %.1f MB/s of class files read%n", decompiled,
+				seconds, decompiled / seconds, inputBytes.sum() / seconds / (1024 * 1024));
+		out.printf("Unchanged: %d, filtered out: %d, failed: %d, source characters written: %d%n",
+				unchangedCount.sum(), filteredCount.sum(), failedCount.sum(), outputChars.sum());
+	}
+
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	private static String getBaseName(File input) {
+		String name = input.getName();
+		int index = name.lastIndexOf('.');
+		return (input.isFile() && (index > 0)) ? name.substring(0, index) : name;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.batch;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Command line of the batch decompiler.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class BatchOptions {
+	public static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: jd-batch [options] <archive|class folder>...",
+			"  -o, --output <dir|file.zip>  Directory or zip file receiving the sources (required)",
+			"  -i, --include <pattern>      Decompile the classes matching the pattern, like 'com/acme/**'",
+			"  -x, --exclude <pattern>      Skip the classes matching the pattern",
+			"  -j, --threads <count>        Decompilation threads, the number of processors by default",
+			"      --incremental            Skip the classes unchanged since the previous run",
+			"      --state <file>           State of the incremental mode, next to the output by default",
+			"      --line-numbers           Prefix the lines with their numbers",
+			"      --realign                Realign the lines on their original numbers",
+			"      --escape-unicode         Escape the non-ASCII characters",
+			"  -h, --help                   Print this message");
+
+	private final List<File> inputs = new ArrayList<>();
+	private final List<Pattern> includes = new ArrayList<>();
+	private final List<Pattern> excludes = new ArrayList<>();
+	private Path output;
+	private Path state;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private boolean incremental;
+	private boolean showLineNumbers;
+	private boolean realignLineNumbers;
+	private boolean escapeUnicodeCharacters;
+	private boolean help;
+
+	/**
+	 * @throws IllegalArgumentException if the command line is invalid.
+	 */
+	public static BatchOptions parse(String[] args) {
+		BatchOptions options = new BatchOptions();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			switch (arg) {
+			case "-o":
+			case "--output":
+				options.output = Paths.get(value(args, ++i, arg));
+				break;
+			case "-i":
+			case "--include":
+				options.includes.add(compile(value(args, ++i, arg)));
+				break;
+			case "-x":
+			case "--exclude":
+				options.excludes.add(compile(value(args, ++i, arg)));
+				break;
+			case "-j":
+			case "--threads":
+				try {
+					options.threadCount = Integer.parseInt(value(args, ++i, arg));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid thread count: " + args[i]);
+				}
+				if (options.threadCount < 1) {
+					throw new IllegalArgumentException("Invalid thread count: " + args[i]);
+				}
+				break;
+			case "--incremental":
+				options.incremental = true;
+				break;
+			case "--state":
+				options.state = Paths.get(value(args, ++i, arg));
+				break;
+			case "--line-numbers":
+				options.showLineNumbers = true;
+				break;
+			case "--realign":
+				options.realignLineNumbers = true;
+				break;
+			case "--escape-unicode":
+				options.escapeUnicodeCharacters = true;
+				break;
+			case "-h":
+			case "--help":
+				options.help = true;
+				break;
+			default:
+				if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}
+				options.inputs.add(new File(arg));
+			}
+		}
+
+		if (!options.help) {
+			if (options.output == null) {
+				throw new IllegalArgumentException("Missing output");
+			}
+			if (options.inputs.isEmpty()) {
+				throw new IllegalArgumentException("Missing archive or class folder");
+			}
+			for (File input : options.inputs) {
+				if (!input.exists()) {
+					throw new IllegalArgumentException("Not found: " + input);
+				}
+			}
+		}
+
+		return options;
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Missing value of " + option);
+		}
+		return args[index];
+	}
+
+	/**
+	 * Compiles a pattern of internal names: '**' matches any sequence of
+	 * characters, '*' and '?' do not match '/'. Dots are read as slashes.
+	 */
+	static Pattern compile(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		String p = pattern.replace('.', '/');
+
+		for (int i = 0; i < p.length(); i++) {
+			char c = p.charAt(i);
+
+			if (c == '*') {
+				if ((i + 1 < p.length()) && (p.charAt(i + 1) == '*')) {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^/]*");
+				}
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * @return true if a class matches an include pattern, if any, and no exclude pattern.
+	 */
+	public boolean accept(String internalName) {
+		if (!includes.isEmpty() && includes.stream().noneMatch(p -> p.matcher(internalName).matches())) {
+			return false;
+		}
+		return excludes.stream().noneMatch(p -> p.matcher(internalName).matches());
+	}
+
+	public List<File> getInputs() { return inputs; }
+	public Path getOutput() { return output; }
+	public int getThreadCount() { return threadCount; }
+	public boolean isIncremental() { return incremental; }
+	public boolean isShowLineNumbers() { return showLineNumbers; }
+	public boolean isRealignLineNumbers() { return realignLineNumbers; }
+	public boolean isEscapeUnicodeCharacters() { return escapeUnicodeCharacters; }
+	public boolean isHelp() { return help; }
+
+	/**
+	 * @return The state file of the incremental mode.
+	 */
+	public Path getState() {
+		if (state != null) {
+			return state;
+		} else if (isZipOutput()) {
+			return output.resolveSibling(output.getFileName() + ".state");
+		} else {
+			return output.resolve(".jd-batch.state");
+		}
+	}
+
+	public boolean isZipOutput() {
+		String name = output.getFileName().toString().toLowerCase();
+		return name.endsWith(".zip") || name.endsWith(".jar");
+	}
+
+	/**
+	 * @return A value identifying the options affecting the output.
+	 */
+	public int fingerprint() {
+		return (realignLineNumbers ? 1 : 0) | (escapeUnicodeCharacters ? 2 : 0) | (showLineNumbers ? 4 : 0);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jd.core.v1.api.loader.LoaderException;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache.Digest;
+import org.jd.ide.eclipse.util.loader.StampedLoader;
+
+/**
+ * Digests of the classes decompiled by the previous run, and stamps of the
+ * other class files they read, by output file name.
+ * <p>
+ * The state is a text file, one output per line: name, digest of the
+ * class file, then the names and the stamps of the dependencies, '-' for
+ * the classes looked up but not found. It is dropped when the options change.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class IncrementalState {
+	private static final String HEADER = "# jd-batch state 2 options=";
+
+	private final Map<String, Record> previous;
+	private final Map<String, Record> current = new ConcurrentHashMap<>();
+
+	private IncrementalState(Map<String, Record> previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * @return An empty state, if the file does not exist or was written with other options.
+	 */
+	public static IncrementalState load(Path file, int optionFingerprint) throws IOException {
+		Map<String, Record> records = new ConcurrentHashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if ((HEADER + optionFingerprint).equals(reader.readLine())) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					String[] fields = line.split("\t");
+
+					if (fields.length >= 2) {
+						Map<String, Long> dependencies = new LinkedHashMap<>();
+
+						for (int i = 2; i + 1 < fields.length; i += 2) {
+							dependencies.put(fields[i], parseStamp(fields[i + 1]));
+						}
+
+						records.put(fields[0], new Record(parse(fields[1]), dependencies));
+					}
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// First run
+		} catch (IllegalArgumentException e) {
+			// Corrupted: full run
+			records.clear();
+		}
+
+		return new IncrementalState(records);
+	}
+
+	/**
+	 * @return true if the class and the class files it read did not change
+	 *         since the previous run. The output is then kept by this run.
+	 */
+	public boolean isUnchanged(String name, Digest digest, StampedLoader loader) throws LoaderException {
+		Record record = previous.get(name);
+
+		if ((record == null) || !record.digest.equals(digest)) {
+			return false;
+		}
+
+		for (Map.Entry<String, Long> dependency : record.dependencies.entrySet()) {
+			if (!Objects.equals(loader.getStamp(dependency.getKey()), dependency.getValue())) {
+				return false;
+			}
+		}
+
+		current.put(name, record);
+		return true;
+	}
+
+	public void update(String name, Digest digest, Map<String, Long> dependencies) {
+		current.put(name, new Record(digest, dependencies));
+	}
+
+	/**
+	 * @return The outputs of the previous run.
+	 */
+	public Set<String> getPreviousNames() {
+		return Collections.unmodifiableSet(previous.keySet());
+	}
+
+	/**
+	 * Writes the records of this run, replacing the file atomically.
+	 */
+	public void save(Path file, int optionFingerprint) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write(HEADER + optionFingerprint);
+			writer.newLine();
+
+			for (Map.Entry<String, Record> entry : current.entrySet()) {
+				Record record = entry.getValue();
+
+				writer.write(entry.getKey());
+				writer.write('\t');
+				writer.write(record.digest.toString());
+
+				for (Map.Entry<String, Long> dependency : record.dependencies.entrySet()) {
+					Long stamp = dependency.getValue();
+
+					writer.write('\t');
+					writer.write(dependency.getKey());
+					writer.write('\t');
+					writer.write((stamp == null) ? "-" : Long.toHexString(stamp));
+				}
+
+				writer.newLine();
+			}
+		}
+
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Digest parse(String hex) {
+		if (hex.length() != 32) {
+			throw new IllegalArgumentException(hex);
+		}
+		return new Digest(Long.parseUnsignedLong(hex.substring(0, 16), 16), Long.parseUnsignedLong(hex.substring(16), 16));
+	}
+
+	private static Long parseStamp(String hex) {
+		return "-".equals(hex) ? null : Long.parseUnsignedLong(hex, 16);
+	}
+
+	private static class Record {
+		private final Digest digest;
+		private final Map<String, Long> dependencies;
+
+		Record(Digest digest, Map<String, Long> dependencies) {
+			this.digest = digest;
+			this.dependencies = dependencies;
+		}
+	}
+}
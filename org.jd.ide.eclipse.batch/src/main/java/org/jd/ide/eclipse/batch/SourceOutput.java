@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jd.ide.eclipse.util.printer.CharArrayBuffer;
+
+/**
+ * Directory or zip file receiving the decompiled sources, written through
+ * NIO. Zip entries are spooled to temporary files until the zip file is
+ * closed, so that memory does not grow with the output.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class SourceOutput implements Closeable {
+	private final Path root;
+	private final FileSystem zipFileSystem;
+
+	private SourceOutput(Path root, FileSystem zipFileSystem) {
+		this.root = root;
+		this.zipFileSystem = zipFileSystem;
+	}
+
+	/**
+	 * Opens a directory, or a zip file if 'zip' is true, creating it if needed.
+	 * The entries of an existing zip file are kept.
+	 */
+	public static SourceOutput open(Path path, boolean zip) throws IOException {
+		if (zip) {
+			Map<String, Object> env = new HashMap<>();
+			env.put("create", "true");
+			env.put("useTempFile", Boolean.TRUE);
+
+			Path absolutePath = path.toAbsolutePath();
+			if (absolutePath.getParent() != null) {
+				Files.createDirectories(absolutePath.getParent());
+			}
+
+			FileSystem fileSystem = FileSystems.newFileSystem(URI.create("jar:" + absolutePath.toUri()), env);
+			return new SourceOutput(fileSystem.getPath("/"), fileSystem);
+		} else {
+			Files.createDirectories(path);
+			return new SourceOutput(path, null);
+		}
+	}
+
+	public boolean exists(String name) {
+		return Files.exists(root.resolve(name));
+	}
+
+	public void write(String name, CharArrayBuffer source) throws IOException {
+		Path path = root.resolve(name);
+		Path parent = path.getParent();
+
+		if ((parent != null) && !Files.isDirectory(parent)) {
+			Files.createDirectories(parent);
+		}
+
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			source.writeTo(writer);
+		}
+	}
+
+	public void delete(String name) throws IOException {
+		Files.deleteIfExists(root.resolve(name));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (zipFileSystem != null) {
+			zipFileSystem.close();
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.jd.ide.eclipse.util.loader.ListableLoader;
+import org.jd.ide.eclipse.util.loader.ZipLoader;
+
+/**
+ * Fixed corpus of the benchmarks, generated on first use.
+ * <p>
+ * "synthetic" is a jar compiled from sources generated with a fixed seed,
+ * "jd-core" is the JD-Core jar the plug-in is built with. Each jar is also
+ * extracted into a class folder for the directory loader benchmarks.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public final class Corpus {
+	public static final String SYNTHETIC = "synthetic";
+	public static final String JD_CORE = "jd-core";
+
+	// Bump to regenerate the corpus of existing build directories
+	private static final int VERSION = 1;
+	private static final int CLASS_COUNT = 400;
+	private static final long SEED = 20190302L;
+
+	private Corpus() {}
+
+	/**
+	 * @return The jar of the corpus 'name'.
+	 */
+	public static synchronized File getJar(String name) throws IOException {
+		if (JD_CORE.equals(name)) {
+			File jar = new File(System.getProperty("jd.benchmark.jdcore", "../../jd-core/build/libs/jd-core-1.1.4.jar"));
+
+			if (!jar.isFile()) {
+				throw new IOException("JD-Core jar not found: " + jar);
+			}
+
+			return jar;
+		}
+
+		if (!SYNTHETIC.equals(name)) {
+			throw new IllegalArgumentException("Unknown corpus: " + name);
+		}
+
+		File jar = new File(getRoot(), SYNTHETIC + "-" + VERSION + ".jar");
+
+		if (!jar.isFile()) {
+			generateSyntheticJar(jar);
+		}
+
+		return jar;
+	}
+
+	/**
+	 * @return The class folder holding the classes of the corpus 'name'.
+	 */
+	public static synchronized File getDirectory(String name) throws IOException {
+		File jar = getJar(name);
+		File directory = new File(getRoot(), name + "-" + VERSION + "-classes");
+
+		if (!directory.isDirectory()) {
+			extract(jar, directory);
+		}
+
+		return directory;
+	}
+
+	/**
+	 * @return The internal names of the top level classes of the corpus 'name', sorted.
+	 */
+	public static List<String> getTopLevelTypeNames(String name) throws Exception {
+		List<String> topLevelTypeNames = new ArrayList<>();
+
+		try (ZipLoader loader = new ZipLoader(getJar(name))) {
+			List<String> internalNames = loader.getInternalNames();
+			Set<String> all = new HashSet<>(internalNames);
+
+			for (String internalName : internalNames) {
+				if (ListableLoader.getTopLevelTypeName(internalName, all).equals(internalName)) {
+					topLevelTypeNames.add(internalName);
+				}
+			}
+		}
+
+		topLevelTypeNames.sort(null);
+		return topLevelTypeNames;
+	}
+
+	private static File getRoot() throws IOException {
+		File root = new File(System.getProperty("jd.benchmark.corpus",
+				new File(System.getProperty("java.io.tmpdir"), "jd-benchmark-corpus").getPath()));
+
+		Files.createDirectories(root.toPath());
+		return root;
+	}
+
+	private static void generateSyntheticJar(File jar) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+		if (compiler == null) {
+			throw new IllegalStateException("A JDK is required to generate the benchmark corpus");
+		}
+
+		Path work = Files.createTempDirectory(jar.getParentFile().toPath(), "synthetic");
+
+		try {
+			Path sources = work.resolve("src");
+			Path classes = work.resolve("classes");
+			List<String> arguments = new ArrayList<>(List.of("-g", "-nowarn", "-encoding", "UTF-8", "-d", classes.toString()));
+			Random random = new Random(SEED);
+
+			Files.createDirectories(classes);
+
+			for (int i = 0; i < CLASS_COUNT; i++) {
+				String packageName = "org/jd/benchmark/p" + (i % 10);
+				Path file = sources.resolve(packageName).resolve("Type" + i + ".java");
+
+				Files.createDirectories(file.getParent());
+				Files.writeString(file, generateSource(packageName.replace('/', '.'), "Type" + i, i, random));
+				arguments.add(file.toString());
+			}
+
+			if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+				throw new IllegalStateException("Unable to compile the benchmark corpus");
+			}
+
+			File tmp = new File(jar.getPath() + ".tmp");
+
+			try (OutputStream os = Files.newOutputStream(tmp.toPath()); ZipOutputStream zos = new ZipOutputStream(os);
+					Stream<Path> stream = Files.walk(classes)) {
+				for (Path path : (Iterable<Path>) stream.filter(Files::isRegularFile).sorted()::iterator) {
+					zos.putNextEntry(new ZipEntry(classes.relativize(path).toString().replace(File.separatorChar, '/')));
+					zos.write(Files.readAllBytes(path));
+					zos.closeEntry();
+				}
+			}
+
+			Files.move(tmp.toPath(), jar.toPath());
+		} finally {
+			delete(work);
+		}
+	}
+
+	/**
+	 * Generates a class mixing the constructs the decompiler and the
+	 * printers deal with: super types, fields, string constants with non-ASCII
+	 * characters, loops, switches, exception handlers, lambdas and inner
+	 * classes. The size varies from one class to the other.
+	 */
+	private static String generateSource(String packageName, String typeName, int index, Random random) {
+		StringBuilder sb = new StringBuilder(8 * 1024);
+		int methodCount = 2 + random.nextInt(index % 20 == 0 ? 60 : 12);
+
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import java.util.*;\n\n");
+		sb.append("public class ").append(typeName);
+		if ((index % 8) != 0) {
+			// Short hierarchies, for the loading of super types
+			sb.append(" extends org.jd.benchmark.p").append((index - 1) % 10).append(".Type").append(index - 1);
+		}
+		sb.append(" {\n");
+
+		for (int i = 0; i < 4; i++) {
+			sb.append("\tprotected static final String CONSTANT_").append(i).append(" = \"").append(randomText(random)).append("\";\n");
+			sb.append("\tprivate int field").append(i).append(";\n");
+		}
+
+		for (int m = 0; m < methodCount; m++) {
+			sb.append("\n\tpublic int method").append(m).append("(int a, String s, List<String> list) {\n");
+			sb.append("\t\tint result = a;\n");
+
+			switch (random.nextInt(4)) {
+				case 0:
+					sb.append("\t\tfor (int i = 0; i < a; i++) {\n\t\t\tif ((i & 1) == 0) result += i * field0; else result -= s.length();\n\t\t}\n");
+					break;
+				case 1:
+					sb.append("\t\tswitch (a % 4) {\n\t\t\tcase 0: result = CONSTANT_0.length(); break;\n\t\t\tcase 1: result += field1; break;\n\t\t\tdefault: result = -result;\n\t\t}\n");
+					break;
+				case 2:
+					sb.append("\t\ttry {\n\t\t\tresult += Integer.parseInt(s);\n\t\t} catch (NumberFormatException e) {\n\t\t\tresult = \"").append(randomText(random)).append("\".hashCode();\n\t\t} finally {\n\t\t\tfield2++;\n\t\t}\n");
+					break;
+				default:
+					sb.append("\t\tlist.removeIf(e -> e.length() > a);\n\t\tfor (String e : list) {\n\t\t\tresult += e.indexOf('").append((char) ('a' + random.nextInt(26))).append("');\n\t\t}\n");
+					break;
+			}
+
+			sb.append("\t\treturn result + new Inner().value(result);\n\t}\n");
+		}
+
+		sb.append("\n\tprotected class Inner {\n\t\tint value(int v) {\n\t\t\treturn v * field3 + CONSTANT_3.length();\n\t\t}\n\t}\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	private static String randomText(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = 10 + random.nextInt(60);
+
+		for (int i = 0; i < length; i++) {
+			int p = random.nextInt(100);
+
+			if (p < 3) {
+				sb.append((char) (0xE0 + random.nextInt(30)));
+			} else if (p < 15) {
+				sb.append(' ');
+			} else {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static void extract(File jar, File directory) throws IOException {
+		Path tmp = Files.createTempDirectory(directory.getParentFile().toPath(), directory.getName());
+
+		try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(jar.toPath()))) {
+			for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+				if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+					Path path = tmp.resolve(entry.getName()).normalize();
+
+					if (path.startsWith(tmp)) {
+						Files.createDirectories(path.getParent());
+						Files.copy(zis, path);
+					}
+				}
+			}
+		}
+
+		Files.move(tmp, directory.toPath());
+	}
+
+	private static void delete(Path path) throws IOException {
+		try (Stream<Path> stream = Files.walk(path)) {
+			stream.sorted(Comparator.reverseOrder()).forEach(p -> {
+				try {
+					Files.delete(p);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+import org.jd.ide.eclipse.util.printer.PrinterRecording;
+import org.jd.ide.eclipse.util.printer.RecordingPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end decompilation of the classes of a corpus, following the path
+ * of JDSourceMapper.decompile() without the source caches: shared archive
+ * lease, pooled printer, decompilation and copy of the output. The
+ * rendering of recorded decompilations, done when only presentation
+ * options change, is measured for comparison.
+ * <p>
+ * As in the plug-in, each decompilation gets a new configuration: JD-Core
+ * caches in it a type maker bound to the loader, which would otherwise
+ * stay warm across the classes.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecompileBenchmark {
+	private static final ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+
+	@Param({Corpus.SYNTHETIC, Corpus.JD_CORE})
+	public String corpus;
+
+	@Param({"false", "true"})
+	public boolean showLineNumbers;
+
+	@Param({"false", "true"})
+	public boolean realignLineNumbers;
+
+	private final ArchiveRegistry registry = new ArchiveRegistry();
+	private final PrinterPool printers = new PrinterPool();
+
+	private File jar;
+	private String[] internalTypeNames;
+	private PrinterRecording[] recordings;
+	private int index;
+
+	@Setup
+	public void setup() throws Exception {
+		jar = Corpus.getJar(corpus);
+		internalTypeNames = Corpus.getTopLevelTypeNames(corpus).toArray(new String[0]);
+		recordings = new PrinterRecording[internalTypeNames.length];
+
+		try (ArchiveRegistry.Lease lease = registry.acquire(jar)) {
+			RecordingPrinter recorder = new RecordingPrinter();
+
+			for (int i = 0; i < internalTypeNames.length; i++) {
+				DECOMPILER.decompile(lease, recorder, internalTypeNames[i], newConfiguration());
+				recordings[i] = recorder.toRecording();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		registry.close();
+	}
+
+	private Map<String, Object> newConfiguration() {
+		Map<String, Object> configuration = new HashMap<>();
+
+		configuration.put("realignLineNumbers", realignLineNumbers);
+		return configuration;
+	}
+
+	/**
+	 * Decompiles the next class of the corpus.
+	 */
+	@Benchmark
+	public char[] decompile() throws Exception {
+		if (index == internalTypeNames.length) {
+			index = 0;
+		}
+
+		String internalTypeName = internalTypeNames[index++];
+		LineNumberStringBuilderPrinter printer = printers.acquire();
+
+		printer.setRealignmentLineNumber(realignLineNumbers);
+		printer.setUnicodeEscape(true);
+		printer.setShowLineNumbers(showLineNumbers);
+
+		try (ArchiveRegistry.Lease lease = registry.acquire(jar)) {
+			DECOMPILER.decompile(lease, printer, internalTypeName, newConfiguration());
+			return printer.toCharArray();
+		} finally {
+			printers.release(printer);
+		}
+	}
+
+	/**
+	 * Renders the recorded decompilation of the next class of the corpus.
+	 */
+	@Benchmark
+	public char[] replay() {
+		if (index == recordings.length) {
+			index = 0;
+		}
+
+		LineNumberStringBuilderPrinter printer = printers.acquire();
+
+		printer.setRealignmentLineNumber(realignLineNumbers);
+		printer.setUnicodeEscape(true);
+		printer.setShowLineNumbers(showLineNumbers);
+
+		try {
+			recordings[index++].replay(printer);
+			return printer.toCharArray();
+		} finally {
+			printers.release(printer);
+		}
+	}
+}
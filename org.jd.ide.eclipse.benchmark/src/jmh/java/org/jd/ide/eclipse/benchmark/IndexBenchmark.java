@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.index.ArchiveIndex;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Kind;
+import org.jd.ide.eclipse.util.index.IndexingPrinter;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.printer.PrinterRecording;
+import org.jd.ide.eclipse.util.printer.RecordingPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Full-text index of the decompiled classes of a corpus: indexing of the
+ * recorded decompilations, as done by ArchiveIndexer from the disk source
+ * cache, and queries of the search page.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IndexBenchmark {
+	private static final ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+
+	@Param({Corpus.SYNTHETIC, Corpus.JD_CORE})
+	public String corpus;
+
+	private String[] internalTypeNames;
+	private PrinterRecording[] recordings;
+	private ArchiveIndex index;
+	private ArchiveIndex.Query stringQuery;
+	private ArchiveIndex.Query referenceQuery;
+
+	@Setup
+	public void setup() throws Exception {
+		File jar = Corpus.getJar(corpus);
+		List<String> names = Corpus.getTopLevelTypeNames(corpus);
+		Map<String, Object> configuration = new HashMap<>();
+
+		internalTypeNames = names.toArray(new String[0]);
+		recordings = new PrinterRecording[internalTypeNames.length];
+		configuration.put("realignLineNumbers", false);
+
+		try (ArchiveRegistry registry = new ArchiveRegistry(); ArchiveRegistry.Lease lease = registry.acquire(jar)) {
+			RecordingPrinter recorder = new RecordingPrinter();
+
+			for (int i = 0; i < internalTypeNames.length; i++) {
+				DECOMPILER.decompile(lease, recorder, internalTypeNames[i], configuration);
+				recordings[i] = recorder.toRecording();
+			}
+		}
+
+		index = index();
+		stringQuery = new ArchiveIndex.Query(Kind.STRING, "e*r", false);
+		referenceQuery = new ArchiveIndex.Query(Kind.REFERENCE, "String.valueOf", true);
+	}
+
+	/**
+	 * Indexes all the classes of the corpus from their recordings.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public ArchiveIndex index() {
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder("benchmark");
+		IndexingPrinter printer = new IndexingPrinter();
+
+		for (int i = 0; i < recordings.length; i++) {
+			recordings[i].replay(printer);
+			builder.add(internalTypeNames[i], new DiskSourceCache.Digest(i, i), printer.getTerms());
+		}
+
+		return builder.build();
+	}
+
+	@Benchmark
+	public List<ArchiveIndex.Match> searchStringConstants() {
+		return index.search(stringQuery, 1000);
+	}
+
+	@Benchmark
+	public List<ArchiveIndex.Match> searchReferences() {
+		return index.search(referenceQuery, 1000);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.jd.ide.eclipse.util.loader.DirectoryLoader;
+import org.jd.ide.eclipse.util.loader.ZipLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Opening of a jar, and loading of class files from a jar and from a
+ * class folder. Classes are loaded in turn, in sorted order.
+ * <p>
+ * The class folder is read either as when it is not watched, each call
+ * checking the file system, or as when it is watched by the archive
+ * watcher, canLoad() then answering from the index of its class files.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoaderBenchmark {
+	@Param({Corpus.SYNTHETIC, Corpus.JD_CORE})
+	public String corpus;
+
+	private File jar;
+	private ZipLoader zipLoader;
+	private DirectoryLoader directoryLoader;
+	private DirectoryLoader watchedDirectoryLoader;
+	private String[] internalNames;
+	private int index;
+
+	@Setup
+	public void setup() throws Exception {
+		jar = Corpus.getJar(corpus);
+		zipLoader = new ZipLoader(jar);
+		directoryLoader = new DirectoryLoader(Corpus.getDirectory(corpus));
+		// No change happens during the run: the index is built by the first call
+		watchedDirectoryLoader = new DirectoryLoader(Corpus.getDirectory(corpus));
+		watchedDirectoryLoader.setWatched(true);
+		internalNames = Corpus.getTopLevelTypeNames(corpus).toArray(new String[0]);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		zipLoader.close();
+		watchedDirectoryLoader.close();
+	}
+
+	private String nextInternalName() {
+		if (index == internalNames.length) {
+			index = 0;
+		}
+		return internalNames[index++];
+	}
+
+	/**
+	 * Opens the jar and reads its central directory.
+	 */
+	@Benchmark
+	public boolean zipLoaderOpen() throws Exception {
+		try (ZipLoader loader = new ZipLoader(jar)) {
+			return loader.canLoad(internalNames[0]);
+		}
+	}
+
+	@Benchmark
+	public byte[] zipLoaderLoad() throws Exception {
+		return zipLoader.load(nextInternalName());
+	}
+
+	@Benchmark
+	public boolean zipLoaderCanLoad() {
+		return zipLoader.canLoad(nextInternalName());
+	}
+
+	@Benchmark
+	public byte[] directoryLoaderLoad() throws Exception {
+		return directoryLoader.load(nextInternalName());
+	}
+
+	@Benchmark
+	public boolean directoryLoaderCanLoad() {
+		return directoryLoader.canLoad(nextInternalName());
+	}
+
+	@Benchmark
+	public boolean watchedDirectoryLoaderCanLoad() {
+		return watchedDirectoryLoader.canLoad(nextInternalName());
+	}
+}
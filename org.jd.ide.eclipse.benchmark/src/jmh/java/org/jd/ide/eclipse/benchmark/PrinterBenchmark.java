@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Printing of text, with escaping of the non-ASCII characters, and
+ * rendering of the lines, with and without line numbers.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrinterBenchmark {
+	private static final int TEXT_COUNT = 2000;
+
+	@State(Scope.Thread)
+	public static class EscapeState {
+		@Param({"0", "3", "50"})
+		public int nonAsciiPercent;
+
+		LineNumberStringBuilderPrinter printer = new LineNumberStringBuilderPrinter();
+		String[] texts = new String[TEXT_COUNT];
+
+		@Setup
+		public void setup() {
+			Random random = new Random(42);
+
+			for (int i = 0; i < TEXT_COUNT; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = 20 + random.nextInt(80);
+
+				for (int j = 0; j < length; j++) {
+					sb.append((random.nextInt(100) < nonAsciiPercent) ? (char) (0xE0 + random.nextInt(30)) : (char) ('a' + random.nextInt(26)));
+				}
+
+				texts[i] = sb.toString();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class LineState {
+		@Param({"false", "true"})
+		public boolean showLineNumbers;
+
+		@Param({"999", "123456"})
+		public int maxLineNumber;
+
+		LineNumberStringBuilderPrinter printer = new LineNumberStringBuilderPrinter();
+
+		@Setup
+		public void setup() {
+			printer.setShowLineNumbers(showLineNumbers);
+			printer.setRealignmentLineNumber(true);
+		}
+	}
+
+	/**
+	 * Prints 2000 string constants of 20 to 100 characters.
+	 */
+	@Benchmark
+	public int escape(EscapeState state) {
+		LineNumberStringBuilderPrinter printer = state.printer;
+
+		printer.start(0, 52, 0);
+		for (String text : state.texts) {
+			printer.printStringConstant(text, "Benchmark");
+		}
+		printer.end();
+
+		return printer.getBuffer().length();
+	}
+
+	/**
+	 * Prints 1000 short lines, numbered up to 'maxLineNumber', with an extra line every 8 lines.
+	 */
+	@Benchmark
+	public int renderLines(LineState state) {
+		LineNumberStringBuilderPrinter printer = state.printer;
+		int step = Math.max(1, state.maxLineNumber / 1000);
+
+		printer.start(state.maxLineNumber, 52, 0);
+		printer.indent();
+		for (int lineNumber = step; lineNumber <= state.maxLineNumber; lineNumber += step) {
+			printer.startLine(lineNumber);
+			printer.printKeyword("return");
+			printer.endLine();
+			if ((lineNumber & 7) == 0) {
+				printer.extraLine(1);
+			}
+		}
+		printer.end();
+
+		return printer.getBuffer().length();
+	}
+}
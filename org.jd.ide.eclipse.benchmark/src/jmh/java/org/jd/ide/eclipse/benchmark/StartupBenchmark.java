@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of the activation of the plug-in, and of the first editor, the
+ * classes of the plug-in and of JD-Core being loaded by a new class loader
+ * at each invocation.
+ * <p>
+ * "eager" creates all the services in JavaDecompilerPlugin.start(), as
+ * before the lazy activation, "lazy" only those created by start() now:
+ * the archive registry loading JD-Core, the decompilation threads and the
+ * JMX metrics are created by the first editor. The bundle itself is not
+ * activated anymore by the launch of the workbench: with "lazy", the whole
+ * activation is paid by the first editor or preference page. Besides the
+ * time, the classes defined by the class loader are counted, and the
+ * classes loaded by the JVM, JDK classes included.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+	// Class decompiled by the first editor
+	private static final String INTERNAL_TYPE_NAME = "org/jd/core/v1/ClassFileToJavaSourceDecompiler";
+
+	@Param({"eager", "lazy"})
+	public String activation;
+
+	private URL[] urls;
+	private File jar;
+	private File stateDirectory;
+
+	private IsolatedClassLoader classLoader;
+	private Object probe;
+	private Method activate;
+	private Method openEditor;
+	private long loadedClassCount;
+
+	@Setup
+	public void setup() throws IOException {
+		// Classes of the plug-in, of JD-Core and of the probe
+		urls = new URL[] {
+			ArchiveRegistry.class.getProtectionDomain().getCodeSource().getLocation(),
+			ClassFileToJavaSourceDecompiler.class.getProtectionDomain().getCodeSource().getLocation(),
+			StartupBenchmark.class.getProtectionDomain().getCodeSource().getLocation()
+		};
+		jar = Corpus.getJar(Corpus.JD_CORE);
+		stateDirectory = Files.createTempDirectory("jd-startup").toFile();
+	}
+
+	@Setup(Level.Invocation)
+	public void createClassLoader() throws Exception {
+		classLoader = new IsolatedClassLoader(urls);
+
+		Class<?> probeClass = classLoader.loadClass(StartupProbe.class.getName());
+
+		probe = probeClass.getConstructor(File.class).newInstance(stateDirectory);
+		activate = probeClass.getMethod("activate", boolean.class);
+		openEditor = probeClass.getMethod("openEditor", File.class, String.class);
+		classLoader.reset();
+		loadedClassCount = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeClassLoader() throws Exception {
+		((AutoCloseable) probe).close();
+		classLoader.close();
+		probe = null;
+		classLoader = null;
+	}
+
+	@TearDown
+	public void tearDown() {
+		File[] files = stateDirectory.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				deleteRecursively(file);
+			}
+		}
+		stateDirectory.delete();
+	}
+
+	/**
+	 * Activates the plug-in.
+	 */
+	@Benchmark
+	public Object activation(ClassCounters counters) throws Exception {
+		activate.invoke(probe, "eager".equals(activation));
+		counters.record(classLoader, loadedClassCount);
+		return probe;
+	}
+
+	/**
+	 * Activates the plug-in, then decompiles a class as the first editor does.
+	 */
+	@Benchmark
+	public Object firstEditor(ClassCounters counters) throws Exception {
+		activate.invoke(probe, "eager".equals(activation));
+		Object length = openEditor.invoke(probe, jar, INTERNAL_TYPE_NAME);
+		counters.record(classLoader, loadedClassCount);
+		return length;
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] files = file.listFiles();
+
+		if (files != null) {
+			for (File child : files) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Classes loaded by the last invocation, reported with the time.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class ClassCounters {
+		// Classes defined by the class loader of the invocation
+		public long pluginClasses;
+		public long jdCoreClasses;
+		// Classes loaded by the JVM, JDK classes loaded for the first time included
+		public long loadedClasses;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			pluginClasses = 0;
+			jdCoreClasses = 0;
+			loadedClasses = 0;
+		}
+
+		void record(IsolatedClassLoader classLoader, long loadedClassCount) {
+			ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+
+			pluginClasses += classLoader.pluginClassCount.get();
+			jdCoreClasses += classLoader.jdCoreClassCount.get();
+			loadedClasses += classLoading.getTotalLoadedClassCount() - loadedClassCount;
+		}
+	}
+
+	/**
+	 * Loads the classes of the plug-in and of JD-Core again, the JDK
+	 * classes being shared.
+	 */
+	static class IsolatedClassLoader extends URLClassLoader {
+		static {
+			registerAsParallelCapable();
+		}
+
+		final AtomicInteger pluginClassCount = new AtomicInteger();
+		final AtomicInteger jdCoreClassCount = new AtomicInteger();
+
+		IsolatedClassLoader(URL[] urls) {
+			super(urls, ClassLoader.getPlatformClassLoader());
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			Class<?> c = super.findClass(name);
+
+			if (name.startsWith("org.jd.core.")) {
+				jdCoreClassCount.incrementAndGet();
+			} else if (name.startsWith("org.jd.ide.eclipse.util.")) {
+				pluginClassCount.incrementAndGet();
+			}
+
+			return c;
+		}
+
+		void reset() {
+			pluginClassCount.set(0);
+			jdCoreClassCount.set(0);
+		}
+	}
+}
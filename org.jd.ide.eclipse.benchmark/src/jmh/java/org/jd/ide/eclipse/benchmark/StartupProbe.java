@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.ide.eclipse.util.DecompilerServices;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics.Phase;
+import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+
+/**
+ * Activation of the plug-in without Eclipse, loaded by the isolated class
+ * loader of {@link StartupBenchmark}: the {@link DecompilerServices}
+ * created by JavaDecompilerPlugin.start(), with either all of the services
+ * as before the lazy activation, or only those free of JD-Core classes and
+ * threads, and the services created on first use by the first editor.
+ * <p>
+ * Only JDK types are exchanged with the benchmark, its classes being
+ * loaded by another class loader.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class StartupProbe implements AutoCloseable {
+	// Default of the source cache size preference
+	private static final long SOURCE_CACHE_SIZE = 16L * 1024L * 1024L;
+
+	private final File stateDirectory;
+
+	private DecompilerServices services;
+
+	/**
+	 * @param stateDirectory State location of the plug-in.
+	 */
+	public StartupProbe(File stateDirectory) {
+		this.stateDirectory = stateDirectory;
+	}
+
+	/**
+	 * Creates the services of JavaDecompilerPlugin.start().
+	 *
+	 * @param eager true to create the services the plug-in now creates on first use.
+	 */
+	public void activate(boolean eager) {
+		services = new DecompilerServices(stateDirectory, SOURCE_CACHE_SIZE);
+		services.start();
+
+		if (eager) {
+			services.getArchiveRegistry();
+			services.getDecompilationMetrics();
+			services.getDecompilationScheduler();
+		}
+	}
+
+	/**
+	 * Decompiles a class as the first editor does, without the disk cache.
+	 *
+	 * @return The length of the decompiled source.
+	 */
+	public int openEditor(File base, String internalTypeName) throws Exception {
+		ArchiveRegistry registry = services.getArchiveRegistry();
+		DecompilationMetrics metrics = services.getDecompilationMetrics();
+		PrinterPool printerPool = services.getPrinterPool();
+		Map<String, Object> configuration = new HashMap<>();
+
+		configuration.put("realignLineNumbers", Boolean.TRUE);
+
+		char[] source = services.getDecompilationScheduler().submit(internalTypeName, Priority.FOREGROUND, canceled -> {
+			long time = System.nanoTime();
+			LineNumberStringBuilderPrinter printer = printerPool.acquire();
+
+			try (ArchiveRegistry.Lease lease = registry.acquire(base)) {
+				printer.setRealignmentLineNumber(true);
+				printer.setUnicodeEscape(true);
+				new ClassFileToJavaSourceDecompiler().decompile(lease, printer, internalTypeName, configuration);
+				metrics.recordSince(Phase.DECOMPILE, time);
+				return printer.toCharArray();
+			} finally {
+				printerPool.release(printer);
+			}
+		}).get();
+
+		return source.length;
+	}
+
+	@Override
+	public void close() {
+		services.close();
+	}
+}
@@ -7,8 +7,25 @@
 
 package org.jd.ide.eclipse;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.jd.ide.eclipse.editors.SourceMapperRegistry;
+import org.jd.ide.eclipse.search.ArchiveIndexingJob;
+import org.jd.ide.eclipse.util.DecompilerServices;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+import org.jd.ide.eclipse.util.cache.SourceCache;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler;
+import org.jd.ide.eclipse.util.index.FullTextIndex;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -32,6 +49,7 @@ public class JavaDecompilerPlugin extends AbstractUIPlugin {
 	public static final String PREF_SHOW_LINE_NUMBERS           = PLUGIN_ID + ".prefs.ShowLineNumbers";
 	public static final String PREF_SHOW_METADATA               = PLUGIN_ID + ".prefs.ShowMetadata";
 	public static final String PREF_USE_AS_DEFAULT_EDITOR 		= PLUGIN_ID + ".prefs.UseJDAsDefaultEditor";
+	public static final String PREF_SOURCE_CACHE_SIZE           = PLUGIN_ID + ".prefs.SourceCacheSize";
 	
 	// URLs
 	public static final String URL_JDECLIPSE = "https://github.com/java-decompiler/jd-eclipse";
@@ -39,6 +57,18 @@ public class JavaDecompilerPlugin extends AbstractUIPlugin {
 	// The shared instance
 	private static JavaDecompilerPlugin plugin;
 	
+	// Caches, printers, loaders, threads and metrics of the decompilations: the loaders
+	// loading the JD-Core classes, the threads and the metrics are created on first use
+	private DecompilerServices services;
+	// Source mappers of the package fragment roots, created on first use
+	private SourceMapperRegistry sourceMapperRegistry;
+	// Source cache size in megabytes set by PREF_SOURCE_CACHE_SIZE
+	private IPropertyChangeListener sourceCacheSizeListener;
+	private Job diskSourceCacheCompactionJob;
+	// Full-text indexes of the decompiled archives, loaded on first search
+	private FullTextIndex fullTextIndex;
+	// Set once the ".class" file associations are configured, by the first editor
+	private final AtomicBoolean classFileAssociationSetup = new AtomicBoolean();
 	
 	/**
 	 * The constructor
@@ -52,13 +82,30 @@ public class JavaDecompilerPlugin extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
-		
-		// Setup ".class" file associations
-		try {
-		    Display.getDefault().asyncExec(new SetupClassFileAssociationRunnable());
-		} catch (Exception e) {
-		    System.out.println("Failed to configure class file associations" + e);
-		}
+		// The bundle is activated lazily, by the first editor or preference page: the
+		// services loading the JD-Core classes or starting threads are created on first use
+		services = new DecompilerServices(getStateLocation().toFile(), getSourceCacheSize()) {
+			@Override
+			protected void warn(String message, Throwable t) {
+				getLog().log(new Status(Status.WARNING, PLUGIN_ID, 0, message, t));
+			}
+		};
+		sourceCacheSizeListener = (PropertyChangeEvent event) -> {
+			if (PREF_SOURCE_CACHE_SIZE.equals(event.getProperty())) {
+				services.getSourceCache().setMaxSize(getSourceCacheSize());
+			}
+		};
+		getPreferenceStore().addPropertyChangeListener(sourceCacheSizeListener);
+		diskSourceCacheCompactionJob = Job.create("Compacting the decompiled source cache", monitor -> {
+			try {
+				services.getDiskSourceCache().compact();
+			} catch (Exception e) {
+				getLog().log(new Status(Status.WARNING, PLUGIN_ID, 0, e.getMessage(), e));
+			}
+		});
+		diskSourceCacheCompactionJob.setSystem(true);
+		diskSourceCacheCompactionJob.setPriority(Job.DECORATE);
+		services.start();
 	}
 
 	/*
@@ -66,6 +113,29 @@ public class JavaDecompilerPlugin extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		// Indexing decompiles with the scheduler
+		ArchiveIndexingJob.shutdown();
+		if (diskSourceCacheCompactionJob != null) {
+			diskSourceCacheCompactionJob.cancel();
+			diskSourceCacheCompactionJob.join();
+			diskSourceCacheCompactionJob = null;
+		}
+		if (sourceCacheSizeListener != null) {
+			getPreferenceStore().removePropertyChangeListener(sourceCacheSizeListener);
+			sourceCacheSizeListener = null;
+		}
+		synchronized (this) {
+			if (sourceMapperRegistry != null) {
+				sourceMapperRegistry.dispose();
+				sourceMapperRegistry = null;
+			}
+			fullTextIndex = null;
+		}
+		if (services != null) {
+			services.close();
+		}
+		// Kept until now for the decompilations still running
+		services = null;
 		plugin = null;
 		super.stop(context);
 	}
@@ -76,5 +146,110 @@ public class JavaDecompilerPlugin extends AbstractUIPlugin {
 	 */
 	public static JavaDecompilerPlugin getDefault() {
 		return plugin;
-	}		
+	}
+
+	/**
+	 * Returns the registry of the loaders shared by all source mappers
+	 * @return the archive registry
+	 */
+	public ArchiveRegistry getArchiveRegistry() {
+		return services.getArchiveRegistry();
+	}
+
+	/**
+	 * Returns the registry of the source mappers of the package fragment roots
+	 * @return the source mapper registry
+	 */
+	public synchronized SourceMapperRegistry getSourceMapperRegistry() {
+		if (sourceMapperRegistry == null) {
+			sourceMapperRegistry = new SourceMapperRegistry();
+		}
+		return sourceMapperRegistry;
+	}
+
+	/**
+	 * Returns the cache of the decompiled sources
+	 * @return the source cache
+	 */
+	public SourceCache getSourceCache() {
+		return services.getSourceCache();
+	}
+
+	/**
+	 * Returns the persistent cache of the decompiled sources
+	 * @return the disk source cache
+	 */
+	public DiskSourceCache getDiskSourceCache() {
+		return services.getDiskSourceCache();
+	}
+
+	/**
+	 * Returns the full-text indexes of the decompiled archives
+	 * @return the full-text index
+	 */
+	public synchronized FullTextIndex getFullTextIndex() {
+		if (fullTextIndex == null) {
+			fullTextIndex = new FullTextIndex(getStateLocation().append("index").toFile());
+			services.getMemoryBudget().register("Search indexes", fullTextIndex);
+		}
+		return fullTextIndex;
+	}
+
+	/**
+	 * Returns the latencies of the decompilation phases
+	 * @return the decompilation metrics
+	 */
+	public DecompilationMetrics getDecompilationMetrics() {
+		return services.getDecompilationMetrics();
+	}
+
+	/**
+	 * Returns the threads running the decompilations
+	 * @return the decompilation scheduler
+	 */
+	public DecompilationScheduler getDecompilationScheduler() {
+		return services.getDecompilationScheduler();
+	}
+
+	/**
+	 * Returns the printers of the decompilations of the editors
+	 * @return the printer pool
+	 */
+	public PrinterPool getPrinterPool() {
+		return services.getPrinterPool();
+	}
+
+	/**
+	 * Returns the heap budget shared by the caches
+	 * @return the memory budget
+	 */
+	public MemoryBudget getMemoryBudget() {
+		return services.getMemoryBudget();
+	}
+
+	/**
+	 * Configures the ".class" file associations once, after the opening of the first editor
+	 */
+	public void setupClassFileAssociation() {
+		if (classFileAssociationSetup.compareAndSet(false, true)) {
+			try {
+				Display.getDefault().asyncExec(new SetupClassFileAssociationRunnable());
+			} catch (Exception e) {
+				getLog().log(new Status(Status.WARNING, PLUGIN_ID, 0, "Unable to configure the class file associations", e));
+			}
+		}
+	}
+
+	/**
+	 * Reclaims the space of the obsolete entries of the disk source cache in background
+	 */
+	public void scheduleDiskSourceCacheCompaction() {
+		if ((diskSourceCacheCompactionJob != null) && (diskSourceCacheCompactionJob.getState() == Job.NONE)) {
+			diskSourceCacheCompactionJob.schedule(10000);
+		}
+	}
+
+	private long getSourceCacheSize() {
+		return Math.max(0, getPreferenceStore().getInt(PREF_SOURCE_CACHE_SIZE)) * 1024L * 1024L;
+	}
 }
\ No newline at end of file
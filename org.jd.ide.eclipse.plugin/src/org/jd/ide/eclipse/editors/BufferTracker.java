@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.editors;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.IBuffer;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.internal.core.BufferManager;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+
+/**
+ * Buffers of the class files opened with decompiled sources, and the
+ * inputs of their decompilation.
+ * <p>
+ * JDT keeps the buffer of a class file once its source has been found. A
+ * buffer is removed, forcing JDT to ask the source mapper again, only if it
+ * was not produced from the same source mapper, class file and options.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@SuppressWarnings("restriction")
+class BufferTracker {
+	// BufferManager.removeBuffer(IBuffer) is not public API, resolved once
+	private static final Method REMOVE_BUFFER = findRemoveBuffer();
+
+	private final Map<IBuffer, Stamp> stamps = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Keeps the buffer of a class file if it was produced with 'stamp', removes it otherwise.
+	 *
+	 * @param stamp Inputs of the decompilation, or null to remove the buffer.
+	 * @return true if the buffer was kept.
+	 */
+	boolean retain(IClassFile classFile, Stamp stamp) {
+		IBuffer buffer = BufferManager.getDefaultBufferManager().getBuffer(classFile);
+
+		if (buffer == null) {
+			return false;
+		}
+
+		Stamp previous = stamps.remove(buffer);
+
+		if ((stamp != null) && stamp.equals(previous)) {
+			stamps.put(buffer, previous);
+			return true;
+		}
+
+		remove(buffer);
+		return false;
+	}
+
+	/**
+	 * Records the inputs of the decompilation held by the buffer of a class file.
+	 */
+	void record(IClassFile classFile, Stamp stamp) {
+		IBuffer buffer = BufferManager.getDefaultBufferManager().getBuffer(classFile);
+
+		if (buffer != null) {
+			stamps.put(buffer, stamp);
+		}
+	}
+
+	private static void remove(IBuffer buffer) {
+		if (REMOVE_BUFFER != null) {
+			try {
+				REMOVE_BUFFER.invoke(BufferManager.getDefaultBufferManager(), buffer);
+			} catch (Exception e) {
+				JavaDecompilerPlugin.getDefault().getLog()
+						.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
+			}
+		}
+	}
+
+	private static Method findRemoveBuffer() {
+		try {
+			Method method = BufferManager.class.getDeclaredMethod("removeBuffer", IBuffer.class);
+			method.setAccessible(true);
+			return method;
+		} catch (Exception e) {
+			// Buffers are not removed: the decompiled sources are not refreshed
+			JavaDecompilerPlugin.getDefault().getLog()
+					.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
+			return null;
+		}
+	}
+
+	/**
+	 * Inputs of a decompilation: source mapper, identity of the class file
+	 * content, and options.
+	 */
+	static final class Stamp {
+		private final JDSourceMapper sourceMapper;
+		private final String identity;
+		private final int optionFingerprint;
+
+		Stamp(JDSourceMapper sourceMapper, String identity, int optionFingerprint) {
+			this.sourceMapper = sourceMapper;
+			this.identity = identity;
+			this.optionFingerprint = optionFingerprint;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Stamp)) {
+				return false;
+			}
+
+			Stamp other = (Stamp) obj;
+
+			return (sourceMapper == other.sourceMapper) && (optionFingerprint == other.optionFingerprint)
+					&& identity.equals(other.identity);
+		}
+
+		@Override
+		public int hashCode() {
+			return identity.hashCode() * 31 + optionFingerprint;
+		}
+	}
+}
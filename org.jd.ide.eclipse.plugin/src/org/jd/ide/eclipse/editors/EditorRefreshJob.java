@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.editors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.preferences.DecompilerOptions;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+
+/**
+ * Refreshes the open JD editors after a change of the decompiler
+ * preferences, or of the classes of a watched archive.
+ * <p>
+ * Changes are coalesced: the job runs once the preferences have been
+ * stable for {@link #DELAY} ms. Editors already showing the current
+ * options and class files are skipped. The classes of the visible editors are decompiled
+ * first, in parallel on the decompilation scheduler, then those of the hidden editors; each editor then
+ * sets its input again on the UI thread, from the source cache.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class EditorRefreshJob extends Job {
+	private static final long DELAY = 250;
+	private static final long CANCELLATION_CHECK_INTERVAL = 100;
+
+	private static final EditorRefreshJob INSTANCE = new EditorRefreshJob();
+
+	private final Set<JDClassFileEditor> editors = ConcurrentHashMap.newKeySet();
+
+	private EditorRefreshJob() {
+		super("Refreshing decompiled editors");
+		setPriority(Job.INTERACTIVE);
+	}
+
+	static void register(JDClassFileEditor editor) {
+		INSTANCE.editors.add(editor);
+	}
+
+	static void unregister(JDClassFileEditor editor) {
+		INSTANCE.editors.remove(editor);
+	}
+
+	/**
+	 * Schedules a refresh, postponing the pending one.
+	 */
+	public static void request() {
+		INSTANCE.cancel();
+		INSTANCE.schedule(DELAY);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		DecompilerOptions options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+		Display display = PlatformUI.getWorkbench().getDisplay();
+		List<JDClassFileEditor> visibleEditors = new ArrayList<>();
+		List<JDClassFileEditor> hiddenEditors = new ArrayList<>();
+
+		if (display.isDisposed()) {
+			return Status.OK_STATUS;
+		}
+
+		display.syncExec(() -> {
+			for (JDClassFileEditor editor : editors) {
+				if (editor.needsRefresh(options)) {
+					(editor.isVisible() ? visibleEditors : hiddenEditors).add(editor);
+				}
+			}
+		});
+
+		monitor.beginTask(getName(), visibleEditors.size() + hiddenEditors.size());
+
+		try {
+			refresh(visibleEditors, Priority.FOREGROUND, display, monitor);
+			refresh(hiddenEditors, Priority.BACKGROUND, display, monitor);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} finally {
+			monitor.done();
+		}
+
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+
+	protected void refresh(List<JDClassFileEditor> list, Priority priority, Display display, IProgressMonitor monitor)
+			throws InterruptedException {
+		if (list.isEmpty() || monitor.isCanceled()) {
+			return;
+		}
+
+		List<Future<char[]>> futures = new ArrayList<>(list.size());
+
+		for (JDClassFileEditor editor : list) {
+			Future<char[]> future = editor.submitRefresh(priority);
+
+			if (future != null) {
+				futures.add(future);
+			} else {
+				monitor.worked(1);
+			}
+		}
+
+		try {
+			for (Future<char[]> future : futures) {
+				await(future, monitor);
+				monitor.worked(1);
+			}
+		} finally {
+			if (monitor.isCanceled()) {
+				// Canceled futures return at once, the decompilations shared with an editor go on
+				futures.forEach(future -> future.cancel(false));
+			}
+		}
+
+		if (!monitor.isCanceled() && !display.isDisposed()) {
+			display.asyncExec(() -> list.forEach(JDClassFileEditor::refresh));
+		}
+	}
+
+	private static void await(Future<char[]> future, IProgressMonitor monitor) throws InterruptedException {
+		try {
+			while (!monitor.isCanceled()) {
+				try {
+					future.get(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+					return;
+				} catch (TimeoutException e) {
+					// Check the monitor again
+				}
+			}
+		} catch (CancellationException | ExecutionException e) {
+			// Canceled or failed: the error is reported when the input is set again
+		}
+	}
+}
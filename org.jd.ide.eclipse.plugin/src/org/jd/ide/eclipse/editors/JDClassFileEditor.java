@@ -8,27 +8,37 @@
 package org.jd.ide.eclipse.editors;
 
 import java.io.File;
-import java.lang.reflect.Method;
-import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jdt.core.IBuffer;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.internal.core.BufferManager;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.internal.core.PackageFragmentRoot;
 import org.eclipse.jdt.internal.ui.javaeditor.IClassFileEditorInput;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IFileEditorInput;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.preferences.DecompilerOptions;
 import org.jd.ide.eclipse.util.MessageUtils;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics.Phase;
 
 /**
  * JDClassFileEditor
@@ -37,11 +47,26 @@ import org.jd.ide.eclipse.util.MessageUtils;
  * @version 0.1.4
  */
 public class JDClassFileEditor extends TextEditor implements IPropertyChangeListener {
+	// Buffers produced by the source mappers, shared by all editors
+	private final static BufferTracker BUFFERS = new BufferTracker();
+
+	// Decompilation of the current input, running in background
+	private DecompilationJob decompilationJob;
+	// Class decompiled by the last completed job
+	private String decompiledTypeName;
+	// Source mapper, top level class, class content identity and options of the current input
+	private JDSourceMapper sourceMapper;
+	private String internalTypeName;
+	private String identity;
+	private DecompilerOptions options;
+
 	public JDClassFileEditor() {
 		super();
 		// Configura el Document Provider en el constructor
 //		setDocumentProvider(new JDDocumentProvider());
 		JavaDecompilerPlugin.getDefault().getPreferenceStore().addPropertyChangeListener(this);
+		JavaDecompilerPlugin.getDefault().setupClassFileAssociation();
+		EditorRefreshJob.register(this);
 	}
 
 	@Override
@@ -64,51 +89,84 @@ public class JDClassFileEditor extends TextEditor implements IPropertyChangeList
 			throw new CoreException(
 					new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, MessageUtils.getString("editor.error.notInClasspath")));
 		}
-		cleanupBuffer(classFile);
-		setupSourceMapper(classFile);
+		cancelDecompilation();
+
+		sourceMapper = setupSourceMapper(classFile);
+		internalTypeName = getInternalTypeName(classFile);
+		options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+
+		BufferTracker.Stamp stamp = null;
+		identity = null;
+
+		if ((sourceMapper != null) && (internalTypeName != null)) {
+			identity = sourceMapper.getIdentity(internalTypeName);
+			stamp = new BufferTracker.Stamp(sourceMapper, identity, options.fingerprint());
+		}
 
+		// Keep the buffer of an unchanged class, decompiled with the same options
+		boolean bufferRetained = BUFFERS.retain(classFile, stamp);
+
+		if (stamp != null) {
+			if (internalTypeName.equals(decompiledTypeName)) {
+				// Decompiled in background, just before
+				decompiledTypeName = null;
+			} else if (!bufferRetained && !sourceMapper.isCached(internalTypeName)) {
+				// Open with a placeholder, the document is set when the decompilation is done
+				sourceMapper.deferDecompilation(internalTypeName);
+				decompilationJob = new DecompilationJob(sourceMapper, internalTypeName);
+				decompilationJob.schedule();
+			}
+		}
+
+		long startTime = System.nanoTime();
 		super.doSetInput(input);
+		JavaDecompilerPlugin.getDefault().getDecompilationMetrics().recordSince(Phase.EDITOR, startTime);
+
+		if ((stamp != null) && !sourceMapper.clearFailure(internalTypeName)
+				&& !sourceMapper.isDeferred(internalTypeName)) {
+			// The buffer holds the decompiled source, not a placeholder
+			BUFFERS.record(classFile, stamp);
+		}
 	}
 
-	protected static void cleanupBuffer(IClassFile file) {
-		IBuffer buffer = BufferManager.getDefaultBufferManager().getBuffer(file);
+	/**
+	 * @return The internal name of the top level type of a class file, the
+	 *         one the source mapper is asked for.
+	 */
+	protected static String getInternalTypeName(IClassFile classFile) {
+		IType type = classFile.findPrimaryType();
 
-		if (buffer != null) {
-			// ADVERTENCIA: Se usa reflexión para acceder a un método interno de Eclipse.
-			// Esto podría romperse en futuras versiones del IDE. Se hace para
-			// eliminar un búfer de clase y forzar la recarga del contenido decompilado.
-			// Se debe buscar una alternativa en la API pública si es posible.
-			try {
-				// Remove the buffer
-				Method method = BufferManager.class.getDeclaredMethod("removeBuffer", new Class[] { IBuffer.class });
-				method.setAccessible(true);
-				method.invoke(BufferManager.getDefaultBufferManager(), new Object[] { buffer });
-			} catch (Exception e) {
-				JavaDecompilerPlugin.getDefault().getLog()
-						.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
-			}
+		if (type == null) {
+			return null;
+		}
+
+		while (type.getDeclaringType() != null) {
+			type = type.getDeclaringType();
+		}
+
+		return type.getFullyQualifiedName().replace('.', '/');
+	}
+
+	protected void cancelDecompilation() {
+		if (decompilationJob != null) {
+			decompilationJob.cancel();
+			decompilationJob = null;
 		}
 	}
 
-	protected void setupSourceMapper(IClassFile classFile) {
+	protected JDSourceMapper setupSourceMapper(IClassFile classFile) {
 		try {
 			// Search package fragment root and classPath
 			IJavaElement packageFragment = classFile.getParent();
 			IJavaElement packageFragmentRoot = packageFragment.getParent();
 
 			if (packageFragmentRoot instanceof PackageFragmentRoot) {
-				// Setup a new source mapper.
+				// Setup the source mapper of the root
 				PackageFragmentRoot root = (PackageFragmentRoot) packageFragmentRoot;
 
 				// Location of the archive file containing classes.
-				IPath basePath = root.getPath();
-				File baseFile = basePath.makeAbsolute().toFile();
-
-				if (!baseFile.exists()) {
-					IResource resource = root.getCorrespondingResource();
-					basePath = resource.getLocation();
-					baseFile = basePath.makeAbsolute().toFile();
-				}
+				File baseFile = getBaseFile(root);
+				IPath basePath = new Path(baseFile.getPath());
 
 				// Class path
 				String classPath = classFile.getElementName();
@@ -136,15 +194,80 @@ public class JDClassFileEditor extends TextEditor implements IPropertyChangeList
 						sourceRootPath = null;
 				}
 
-				// Options
-				Map<String, String> options = root.getJavaProject().getOptions(true);
-
-				root.setSourceMapper(new JDSourceMapper(baseFile, sourcePath, sourceRootPath, options));
+				return JavaDecompilerPlugin.getDefault().getSourceMapperRegistry().getSourceMapper(root, baseFile,
+						sourcePath, sourceRootPath);
 			}
 		} catch (CoreException e) {
 			JavaDecompilerPlugin.getDefault().getLog()
 					.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
 		}
+
+		return null;
+	}
+
+	/**
+	 * @return Location of the archive file or of the directory containing the
+	 *         classes of a package fragment root.
+	 */
+	public static File getBaseFile(IPackageFragmentRoot root) throws JavaModelException {
+		IPath basePath = root.getPath();
+		File baseFile = basePath.makeAbsolute().toFile();
+
+		if (!baseFile.exists()) {
+			IResource resource = root.getCorrespondingResource();
+			basePath = resource.getLocation();
+			baseFile = basePath.makeAbsolute().toFile();
+		}
+
+		return baseFile;
+	}
+
+	/**
+	 * @return true if the editor shows a decompiled class with other options,
+	 *         or a class whose class files changed since.
+	 */
+	boolean needsRefresh(DecompilerOptions currentOptions) {
+		return (getEditorInput() != null) && (sourceMapper != null) && (internalTypeName != null)
+				&& (!currentOptions.equals(options) || !sourceMapper.getIdentity(internalTypeName).equals(identity));
+	}
+
+	boolean isVisible() {
+		return (getSite() != null) && getSite().getPage().isPartVisible(this);
+	}
+
+	/**
+	 * Submits the decompilation of the class in the source cache, before
+	 * {@link #refresh()}. Called from a background thread.
+	 *
+	 * @return The future decompiled source, or null if nothing was submitted.
+	 */
+	Future<char[]> submitRefresh(Priority priority) {
+		JDSourceMapper mapper = sourceMapper;
+		String typeName = internalTypeName;
+
+		if ((mapper != null) && (typeName != null)) {
+			try {
+				return mapper.submitDecompilation(typeName, priority);
+			} catch (RuntimeException e) {
+				// Stopping: the error is reported when the input is set again
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Sets the input again, with the current options.
+	 */
+	void refresh() {
+		if (getEditorInput() != null) {
+			try {
+				setInput(getEditorInput());
+			} catch (Exception e) {
+				JavaDecompilerPlugin.getDefault().getLog().log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID,
+						0, "Error al refrescar el editor JD", e));
+			}
+		}
 	}
 
 	@Override
@@ -164,27 +287,20 @@ public class JDClassFileEditor extends TextEditor implements IPropertyChangeList
 
 	@Override
 	public void dispose() {
+		cancelDecompilation();
+		EditorRefreshJob.unregister(this);
 		JavaDecompilerPlugin.getDefault().getPreferenceStore().removePropertyChangeListener(this);
+		super.dispose();
 	}
 
 	/**
-	 * Refresh decompiled source code.
+	 * Refresh decompiled source code. Changes are batched by {@link EditorRefreshJob}.
 	 * 
 	 * @see org.eclipse.jface.util.IPropertyChangeListener#propertyChange(org.eclipse.jface.util.PropertyChangeEvent)
 	 */
 	public void propertyChange(PropertyChangeEvent event) {
-		String property = event.getProperty();
-
-		if (isRelevantPreference(property) && getEditorInput() != null) {
-			try {
-//				if (getDocumentProvider() instanceof JDDocumentProvider)
-//					return;
-
-				setInput(getEditorInput()); // Esto vuelve a ejecutar doSetInput
-			} catch (Exception e) {
-				JavaDecompilerPlugin.getDefault().getLog().log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID,
-						0, "Error al refrescar el editor JD", e));
-			}
+		if (isRelevantPreference(event.getProperty())) {
+			EditorRefreshJob.request();
 		}
 	}
 
@@ -194,4 +310,56 @@ public class JDClassFileEditor extends TextEditor implements IPropertyChangeList
 				|| property.equals(JavaDecompilerPlugin.PREF_SHOW_LINE_NUMBERS)
 				|| property.equals(JavaDecompilerPlugin.PREF_SHOW_METADATA);
 	}
+
+	/**
+	 * Decompiles the class of the editor input, then sets the input again to
+	 * replace the placeholder. The result is dropped if the editor was closed
+	 * or its input changed meanwhile.
+	 */
+	private class DecompilationJob extends Job {
+		private final JDSourceMapper sourceMapper;
+		private final String internalTypeName;
+
+		DecompilationJob(JDSourceMapper sourceMapper, String internalTypeName) {
+			super(MessageUtils.getString(MessageUtils.editor_decompiling, internalTypeName.replace('/', '.')));
+			this.sourceMapper = sourceMapper;
+			this.internalTypeName = internalTypeName;
+			setPriority(Job.INTERACTIVE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+
+			try {
+				sourceMapper.findDecompiledSource(internalTypeName, Priority.FOREGROUND, monitor);
+			} catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			} catch (RuntimeException e) {
+				// Already logged, shown in place of the source instead of decompiling again
+				sourceMapper.failDecompilation(internalTypeName, e);
+			} finally {
+				sourceMapper.undeferDecompilation(internalTypeName);
+				monitor.done();
+			}
+
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+
+			Display display = PlatformUI.getWorkbench().getDisplay();
+
+			if (!display.isDisposed()) {
+				display.asyncExec(() -> {
+					if ((decompilationJob == this) && (getEditorInput() != null)) {
+						decompilationJob = null;
+						decompiledTypeName = internalTypeName;
+						setInput(getEditorInput());
+					}
+				});
+			}
+
+			return Status.OK_STATUS;
+		}
+	}
 }
@@ -8,22 +8,50 @@
 package org.jd.ide.eclipse.editors;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.internal.core.SourceMapper;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.swt.widgets.Display;
 import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
-import org.jd.core.v1.api.loader.Loader;
+import org.jd.core.v1.api.loader.LoaderException;
 import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.preferences.DecompilerOptions;
 import org.jd.ide.eclipse.util.MessageUtils;
-import org.jd.ide.eclipse.util.loader.DirectoryLoader;
-import org.jd.ide.eclipse.util.loader.ZipLoader;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.SourceCache;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.loader.Classpath;
+import org.jd.ide.eclipse.util.loader.ClasspathLoader;
+import org.jd.ide.eclipse.util.loader.StampedLoader;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics.Phase;
 import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+import org.jd.ide.eclipse.util.printer.RecordingPrinter;
 
 /**
  * JDSourceMapper
@@ -35,17 +63,32 @@ public class JDSourceMapper extends SourceMapper {
 	private final static String JAVA_CLASS_SUFFIX = ".class";
 	private final static String JAVA_SOURCE_SUFFIX = ".java";
 	private final static int JAVA_SOURCE_SUFFIX_LENGTH = 5;
+	// Archives read by NestedZipLoader, fat jars and web archives included
+	private final static Set<String> ARCHIVE_EXTENSIONS = Set.of("jar", "zip", "war");
 
 	private final static ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+	// Interval of the cancellation checks while waiting for a decompilation
+	private final static long CANCELLATION_CHECK_INTERVAL = 100;
 
 	private File basePath;
+	// Other roots of the classpath, searched for the types referenced by the decompiled classes,
+	// indexed in background on first use and after a change of one of its archives
+	private final Classpath classpath;
 
-	private LineNumberStringBuilderPrinter printer = new LineNumberStringBuilderPrinter();
+	private Set<String> deferredTypeNames = ConcurrentHashMap.newKeySet();
+	// Placeholders of the classes whose decompilation in background failed
+	private Map<String, String> failedTypeNames = new ConcurrentHashMap<>();
 
 	@SuppressWarnings({ "restriction", "rawtypes" })
 	public JDSourceMapper(File basePath, IPath sourcePath, String sourceRootPath, Map options) {
+		this(basePath, Collections.emptyList(), sourcePath, sourceRootPath, options);
+	}
+
+	@SuppressWarnings({ "restriction", "rawtypes" })
+	public JDSourceMapper(File basePath, List<File> classpath, IPath sourcePath, String sourceRootPath, Map options) {
 		super(sourcePath, sourceRootPath, options);
 		this.basePath = basePath;
+		this.classpath = new Classpath(JavaDecompilerPlugin.getDefault().getArchiveRegistry(), classpath);
 	}
 
 	@Override
@@ -67,25 +110,238 @@ public class JDSourceMapper extends SourceMapper {
 		if ((source == null) && javaSourcePath.toLowerCase().endsWith(JAVA_SOURCE_SUFFIX)) {
 			String internalTypeName = javaSourcePath.substring(0, javaSourcePath.length() - JAVA_SOURCE_SUFFIX_LENGTH);
 
-			// Decompile class file
-			try {
-				source = decompile(this.basePath.getAbsolutePath(), internalTypeName);
-			} catch (Exception e) {
-				// Lanzamos una CoreException para un manejo de errores más estándar en Eclipse
-				String errorMessage = MessageUtils.getString("editor.error.to_decompile", internalTypeName);
-				JavaDecompilerPlugin.getDefault().getLog()
-						.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, errorMessage, e));
+			if (deferredTypeNames.contains(internalTypeName)) {
+				// Being decompiled in background, see JDClassFileEditor
+				return MessageUtils.getString(MessageUtils.editor_decompiling, internalTypeName.replace('/', '.'))
+						.toCharArray();
+			}
+
+			String failure = failedTypeNames.get(internalTypeName);
+
+			if (failure != null) {
+				// Failed in background, see JDClassFileEditor
+				return failure.toCharArray();
+			}
+
+			// The UI thread waits for the source, as an editor does
+			Priority priority = (Display.getCurrent() != null) ? Priority.FOREGROUND : Priority.BACKGROUND;
+			source = findDecompiledSource(internalTypeName, priority, null);
+		}
+
+		return source;
+	}
+
+	/**
+	 * Returns the decompiled source of a class, from the caches or by running
+	 * the decompiler.
+	 * 
+	 * The decompilation runs on the decompilation scheduler, shared with the
+	 * concurrent requests of the same class.
+	 * 
+	 * @param internalTypeName internal name of the class.
+	 * @param priority         FOREGROUND if an editor waits for the source.
+	 * @param monitor          Progress monitor checked for cancellation, or null.
+	 * @return Decompiled class text.
+	 * @throws OperationCanceledException if the monitor was canceled.
+	 */
+	public char[] findDecompiledSource(String internalTypeName, Priority priority, IProgressMonitor monitor) {
+		// Decompile class file, unless already done with the same options
+		try {
+			return await(submitDecompilation(internalTypeName, priority), monitor);
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (Exception e) {
+			// Lanzamos una CoreException para un manejo de errores más estándar en Eclipse
+			String errorMessage = MessageUtils.getString("editor.error.to_decompile", internalTypeName);
+			JavaDecompilerPlugin.getDefault().getLog()
+					.log(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, errorMessage, e));
+
+			// Relanzamos la excepción para que el framework la maneje
+			// Envolvemos la CoreException en una RuntimeException
+			throw new RuntimeException("Decompilation failed",
+					new CoreException(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, errorMessage, e)));
+		}
+	}
+
+	/**
+	 * Submits the decompilation of a class to the decompilation scheduler,
+	 * unless its source is in the memory cache, without waiting for it.
+	 * 
+	 * @param internalTypeName internal name of the class.
+	 * @param priority         FOREGROUND if an editor waits for the source.
+	 * @return The future decompiled class text, already done if cached.
+	 * @throws RejectedExecutionException if the plug-in is stopping.
+	 */
+	public Future<char[]> submitDecompilation(String internalTypeName, Priority priority) {
+		DecompilerOptions options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+		SourceCache cache = JavaDecompilerPlugin.getDefault().getSourceCache();
+		SourceCache.Key key = new SourceCache.Key(getIdentity(internalTypeName), internalTypeName,
+				options.fingerprint());
+
+		char[] source = cache.get(key);
+
+		if (source != null) {
+			return CompletableFuture.completedFuture(source);
+		}
+
+		DecompilationScheduler scheduler = JavaDecompilerPlugin.getDefault().getDecompilationScheduler();
+
+		if (!classpath.isIndexed() && !scheduler.isWorkerThread()) {
+			// Classes are searched root by root until the classpath is indexed
+			scheduler.submit(classpath, Priority.BACKGROUND, canceled -> {
+				classpath.index();
+				return null;
+			});
+		}
+
+		return scheduler.submit(key, priority, canceled -> decompile(key, options, canceled));
+	}
+
+	/**
+	 * Decompiles a class on a thread of the scheduler, then puts its source in the memory cache.
+	 */
+	private char[] decompile(SourceCache.Key key, DecompilerOptions options, BooleanSupplier canceled) throws Exception {
+		SourceCache cache = JavaDecompilerPlugin.getDefault().getSourceCache();
+		char[] source = cache.get(key);
+
+		if (source != null) {
+			// Put by a task ended after the lookup of the caller
+			return source;
+		}
 
-				// Relanzamos la excepción para que el framework la maneje
-				// Envolvemos la CoreException en una RuntimeException
-				throw new RuntimeException("Decompilation failed",
-						new CoreException(new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, errorMessage, e)));
+		DecompilationMetrics metrics = JavaDecompilerPlugin.getDefault().getDecompilationMetrics();
+		String archive = this.basePath.getAbsolutePath();
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return canceled.getAsBoolean();
 			}
+		};
+		long startTime = System.nanoTime();
+
+		try {
+			source = decompile(archive, key.getInternalTypeName(), options, monitor);
+			metrics.recordDecompilation(archive, System.nanoTime() - startTime, false);
+		} catch (OperationCanceledException e) {
+			metrics.recordCancellation();
+			throw e;
+		} catch (Exception e) {
+			metrics.recordDecompilation(archive, System.nanoTime() - startTime, true);
+			throw e;
 		}
 
+		cache.put(key, source);
 		return source;
 	}
 
+	/**
+	 * Waits for a decompilation, withdrawing from it if the monitor is canceled.
+	 */
+	private static char[] await(Future<char[]> future, IProgressMonitor monitor) throws Exception {
+		try {
+			if (monitor == null) {
+				return future.get();
+			}
+
+			for (;;) {
+				try {
+					return future.get(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					if (monitor.isCanceled()) {
+						future.cancel(false);
+						throw new OperationCanceledException();
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		} catch (CancellationException e) {
+			// Canceled by the other callers, or on shutdown
+			throw new OperationCanceledException();
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Drops the index of the classpath if it contains a root, after the root changed.
+	 *
+	 * @param path Canonical path of the root.
+	 */
+	public void classpathChanged(String path) {
+		if (classpath.contains(path)) {
+			classpath.invalidate();
+		}
+	}
+
+	/**
+	 * @return true if the decompiled source of a class is in the memory cache.
+	 */
+	public boolean isCached(String internalTypeName) {
+		DecompilerOptions options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+		SourceCache.Key key = new SourceCache.Key(getIdentity(internalTypeName), internalTypeName, options.fingerprint());
+
+		return JavaDecompilerPlugin.getDefault().getSourceCache().contains(key);
+	}
+
+	/**
+	 * Makes {@link #findSource(String)} return a placeholder for a class
+	 * while it is decompiled in background.
+	 */
+	public void deferDecompilation(String internalTypeName) {
+		failedTypeNames.remove(internalTypeName);
+		deferredTypeNames.add(internalTypeName);
+	}
+
+	public void undeferDecompilation(String internalTypeName) {
+		deferredTypeNames.remove(internalTypeName);
+	}
+
+	public boolean isDeferred(String internalTypeName) {
+		return deferredTypeNames.contains(internalTypeName);
+	}
+
+	/**
+	 * Makes {@link #findSource(String)} return an error placeholder for a
+	 * class whose decompilation in background failed, instead of running
+	 * the decompiler again, until {@link #clearFailure(String)}.
+	 */
+	public void failDecompilation(String internalTypeName, Throwable throwable) {
+		while (throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+
+		// Keep the placeholder a comment
+		String cause = throwable.toString().replace("*/", "* /");
+
+		failedTypeNames.put(internalTypeName, MessageUtils.getString(MessageUtils.editor_error_decompiling,
+				internalTypeName.replace('/', '.'), cause));
+	}
+
+	/**
+	 * @return true if the decompilation of the class had failed.
+	 */
+	public boolean clearFailure(String internalTypeName) {
+		return failedTypeNames.remove(internalTypeName) != null;
+	}
+
+	/**
+	 * @return Identity of the content to decompile: the CRC-32 and the size of
+	 *         the class files of the class in an archive, or the class file
+	 *         itself in a class folder. Classes keep their identity when other
+	 *         classes of their archive change.
+	 */
+	protected String getIdentity(String internalTypeName) {
+		return JavaDecompilerPlugin.getDefault().getArchiveRegistry().identity(this.basePath, internalTypeName);
+	}
+
 	/**
 	 * @param basePath          Path to the root of the classpath, either a path to
 	 *                          a directory or a path to a jar file.
@@ -95,40 +351,171 @@ public class JDSourceMapper extends SourceMapper {
 	protected char[] decompile(String basePath, String internalTypeName) throws Exception {
 		// Load preferences
 		IPreferenceStore store = JavaDecompilerPlugin.getDefault().getPreferenceStore();
-		boolean realignmentLineNumber = store.getBoolean(JavaDecompilerPlugin.PREF_REALIGN_LINE_NUMBERS);
-		boolean unicodeEscape = store.getBoolean(JavaDecompilerPlugin.PREF_ESCAPE_UNICODE_CHARACTERS);
-		boolean showLineNumbers = store.getBoolean(JavaDecompilerPlugin.PREF_SHOW_LINE_NUMBERS);
-		boolean showMetaData = store.getBoolean(JavaDecompilerPlugin.PREF_SHOW_METADATA);
+		return decompile(basePath, internalTypeName, DecompilerOptions.load(store));
+	}
+
+	/**
+	 * @param basePath          Path to the root of the classpath, either a path to
+	 *                          a directory or a path to a jar file.
+	 * @param internalClassName internal name of the class.
+	 * @param options           Options affecting the output.
+	 * @return Decompiled class text.
+	 */
+	protected char[] decompile(String basePath, String internalTypeName, DecompilerOptions options) throws Exception {
+		return decompile(basePath, internalTypeName, options, null);
+	}
+
+	/**
+	 * @param basePath          Path to the root of the classpath, either a path to
+	 *                          a directory or a path to a jar file.
+	 * @param internalClassName internal name of the class.
+	 * @param options           Options affecting the output.
+	 * @param monitor           Progress monitor checked for cancellation, or null.
+	 * @return Decompiled class text.
+	 */
+	protected char[] decompile(String basePath, String internalTypeName, DecompilerOptions options,
+			IProgressMonitor monitor) throws Exception {
+		boolean realignmentLineNumber = options.isRealignLineNumbers();
+		boolean unicodeEscape = options.isEscapeUnicodeCharacters();
+		boolean showLineNumbers = options.isShowLineNumbers();
+		boolean showMetaData = options.isShowMetadata();
+
+		DiskSourceCache.Entry entry = getDecompiledEntry(new File(basePath), classpath, internalTypeName, options, monitor);
+		DecompilationMetrics metrics = JavaDecompilerPlugin.getDefault().getDecompilationMetrics();
+		long time;
+
+		// Metadata, appended to the source by the single copy of the printer buffer
+		StringBuilder metadata = null;
+
+		if (showMetaData) {
+			metadata = new StringBuilder(256);
+
+			time = System.nanoTime();
+			appendMetadata(metadata, internalTypeName, new File(basePath), entry.getMajorVersion(),
+					entry.getMinorVersion());
+			metrics.recordSince(Phase.METADATA, time);
+		}
+
+		// Render the recorded printer calls with the presentation options, printers are not shared
+		PrinterPool printers = JavaDecompilerPlugin.getDefault().getPrinterPool();
+		LineNumberStringBuilderPrinter printer = printers.acquire();
+
+		try {
+			printer.setRealignmentLineNumber(realignmentLineNumber);
+			printer.setUnicodeEscape(unicodeEscape);
+			printer.setShowLineNumbers(showLineNumbers);
 
+			time = System.nanoTime();
+			entry.getRecording().replay(printer);
+			char[] source = (metadata == null) ? printer.toCharArray() : printer.getBuffer().toCharArray(metadata);
+			metrics.recordSince(Phase.RENDER, time);
+			return source;
+		} finally {
+			printers.release(printer);
+		}
+	}
+
+	/**
+	 * Returns the recorded decompilation of a class, from the disk cache or by
+	 * running the decompiler, before the presentation options are applied.
+	 * 
+	 * @param base             Archive or directory containing the class.
+	 * @param classpath        Other roots of the classpath.
+	 * @param internalTypeName internal name of the class.
+	 * @param options          Options affecting the output.
+	 * @param monitor          Progress monitor checked for cancellation, or null.
+	 * @return Recorded decompilation.
+	 */
+	public static DiskSourceCache.Entry getDecompiledEntry(File base, Classpath classpath, String internalTypeName,
+			DecompilerOptions options, IProgressMonitor monitor) throws Exception {
 		Map<String, Object> configuration = new HashMap<>();
-		configuration.put("realignLineNumbers", realignmentLineNumber);
+		configuration.put("realignLineNumbers", options.isRealignLineNumbers());
 
-		// Initialize loader
-		Loader loader = createLoader(basePath);
+		DiskSourceCache diskCache = JavaDecompilerPlugin.getDefault().getDiskSourceCache();
+		DiskSourceCache.Entry entry = null;
+		DecompilationMetrics metrics = JavaDecompilerPlugin.getDefault().getDecompilationMetrics();
+		long time = System.nanoTime();
 
-		// Initialize printer
-		printer.setRealignmentLineNumber(realignmentLineNumber);
-		printer.setUnicodeEscape(unicodeEscape);
-		printer.setShowLineNumbers(showLineNumbers);
+		// Decompile class file with the shared loaders of the classpath
+		try (ClasspathLoader classpathLoader = createLoader(base, classpath)) {
+			StampedLoader loader = (monitor == null) ? classpathLoader : new CancelableLoader(classpathLoader, monitor);
+			time = metrics.recordSince(Phase.LOADER, time);
 
-		// Decompile class file
-		DECOMPILER.decompile(loader, printer, internalTypeName, configuration);
+			// Look for a previous decompilation of the same class file
+			byte[] data = loader.load(internalTypeName);
+			time = metrics.recordSince(Phase.LOAD, time);
+			DiskSourceCache.Digest key = null;
 
-		StringBuilder stringBuffer = printer.getStringBuffer();
+			if (data != null) {
+				key = DiskSourceCache.digest(data, JavaDecompilerPlugin.VERSION_JD_CORE, options.decompilerFingerprint());
+				entry = getCachedEntry(diskCache, key, loader);
+				time = metrics.recordSince(Phase.DISK_CACHE, time);
+				metrics.recordDiskCacheLookup(entry != null);
+			}
 
-		// Metadata
-		if (showMetaData) {
-			appendMetadata(stringBuffer, internalTypeName, new File(basePath));
+			if (entry == null) {
+				if ((monitor != null) && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+
+				DiskSourceCache.TrackingLoader trackingLoader = new DiskSourceCache.TrackingLoader(loader, internalTypeName);
+				// Presentation options are applied on replay, so that changing them does not decompile again
+				RecordingPrinter recorder = new RecordingPrinter();
+
+				DECOMPILER.decompile(trackingLoader, recorder, internalTypeName, configuration);
+
+				entry = new DiskSourceCache.Entry(recorder.getMajorVersion(), recorder.getMinorVersion(),
+						trackingLoader.getDependencies(), recorder.toRecording());
+
+				// JD-Core calls the printer at the end of the decompilation, from start() to end()
+				metrics.record(Phase.DECOMPILE, recorder.getStartTime() - time);
+				metrics.recordSince(Phase.PRINT, recorder.getStartTime());
+
+				if (key != null) {
+					putCachedEntry(diskCache, key, entry);
+				}
+			}
 		}
 
-		return stringBuffer.toString().toCharArray();
+		return entry;
+	}
+
+	private static DiskSourceCache.Entry getCachedEntry(DiskSourceCache diskCache, DiskSourceCache.Digest key, StampedLoader loader) {
+		try {
+			DiskSourceCache.Entry entry = diskCache.get(key);
+
+			if ((entry != null) && entry.isValid(loader)) {
+				return entry;
+			}
+		} catch (IOException | LoaderException e) {
+			JavaDecompilerPlugin.getDefault().getLog()
+					.log(new Status(Status.WARNING, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
+		}
+
+		return null;
+	}
+
+	private static void putCachedEntry(DiskSourceCache diskCache, DiskSourceCache.Digest key, DiskSourceCache.Entry entry) {
+		try {
+			diskCache.put(key, entry);
+
+			if (diskCache.needsCompaction()) {
+				JavaDecompilerPlugin.getDefault().scheduleDiskSourceCacheCompaction();
+			}
+		} catch (IOException e) {
+			JavaDecompilerPlugin.getDefault().getLog()
+					.log(new Status(Status.WARNING, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e));
+		}
 	}
 
-	private Loader createLoader(String basePath) throws Exception {
-		File base = new File(basePath);
+	private static ClasspathLoader createLoader(File base, Classpath classpath) throws Exception {
+		ArchiveRegistry registry = classpath.getRegistry();
 		if (base.isFile()) {
-			if (basePath.toLowerCase().endsWith(".jar") || basePath.toLowerCase().endsWith(".zip")) {
-				return new ZipLoader(base);
+			String basePath = base.getPath();
+			String extension = basePath.substring(basePath.lastIndexOf('.') + 1).toLowerCase();
+
+			if (ARCHIVE_EXTENSIONS.contains(extension)) {
+				return new ClasspathLoader(classpath, registry.acquire(base));
 			} else {
 				String errorMessage = MessageUtils.getString("editor.error.unexpected.type.file", basePath);
 				JavaDecompilerPlugin.getDefault().getLog()
@@ -136,11 +523,12 @@ public class JDSourceMapper extends SourceMapper {
 				throw new IllegalArgumentException(errorMessage);
 			}
 		} else {
-			return new DirectoryLoader(base);
+			return new ClasspathLoader(classpath, registry.acquire(base));
 		}
 	}
 
-	private void appendMetadata(StringBuilder stringBuffer, String internalTypeName, File base) {
+	private void appendMetadata(StringBuilder stringBuffer, String internalTypeName, File base, int majorVersion,
+			int minorVersion) {
 		// Metadata
 		stringBuffer.append("\n\n/* Location:              ");
 		String classPath = internalTypeName + JAVA_CLASS_SUFFIX;
@@ -148,7 +536,6 @@ public class JDSourceMapper extends SourceMapper {
 		// Escape "\ u" sequence to prevent "Invalid unicode" errors
 		stringBuffer.append(location.replaceAll("(^|[^\\\\])\\\\u", "\\\\\\\\u"));
 		// Add Java compiler version
-		int majorVersion = printer.getMajorVersion();
 		if (majorVersion >= 45) {
 			stringBuffer.append("\n * Java compiler version: ");
 			if (majorVersion >= 49) {
@@ -159,7 +546,7 @@ public class JDSourceMapper extends SourceMapper {
 			stringBuffer.append(" (");
 			stringBuffer.append(majorVersion);
 			stringBuffer.append('.');
-			stringBuffer.append(printer.getMinorVersion());
+			stringBuffer.append(minorVersion);
 			stringBuffer.append(')');
 		}
 		// Add JD-Core version
@@ -167,4 +554,36 @@ public class JDSourceMapper extends SourceMapper {
 		stringBuffer.append(JavaDecompilerPlugin.VERSION_JD_CORE);
 		stringBuffer.append("\n */");
 	}
+
+	/**
+	 * Loader interrupting the decompilation when the monitor is canceled.
+	 */
+	private static class CancelableLoader implements StampedLoader {
+		private final StampedLoader loader;
+		private final IProgressMonitor monitor;
+
+		CancelableLoader(StampedLoader loader, IProgressMonitor monitor) {
+			this.loader = loader;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public boolean canLoad(String internalName) {
+			return loader.canLoad(internalName);
+		}
+
+		@Override
+		public byte[] load(String internalName) throws LoaderException {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+
+			return loader.load(internalName);
+		}
+
+		@Override
+		public Long getStamp(String internalName) throws LoaderException {
+			return loader.getStamp(internalName);
+		}
+	}
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.editors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.internal.core.PackageFragmentRoot;
+import org.eclipse.jdt.internal.core.SourceMapper;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.search.ArchiveIndexingJob;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.loader.ArchiveWatcher;
+
+/**
+ * Source mappers of the package fragment roots, one per root.
+ * <p>
+ * A mapper is created on the first class opened in a root, and kept with
+ * its source attachment index across the editors of that root. It is
+ * installed again when JDT discards the information of the root, and
+ * replaced when the root leaves the classpath, its source attachment
+ * changes, or the classpath of its project changes.
+ * <p>
+ * The archives and class folders of the mappers are watched: when classes
+ * change, their decompiled sources are dropped and the editors showing them
+ * are refreshed. The other classes of the root keep their sources. The
+ * classpaths containing a changed archive are indexed again, as are the
+ * full-text indexes of the archives changed or added to a classpath.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@SuppressWarnings("restriction")
+public class SourceMapperRegistry implements IElementChangedListener {
+	// Changes of a root making its mapper obsolete. Content changes are found by the watcher, class by class
+	private static final int ROOT_CHANGES = IJavaElementDelta.F_SOURCEATTACHED | IJavaElementDelta.F_SOURCEDETACHED
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_ADDED_TO_CLASSPATH;
+	// Changes of a project making the mappers of its roots obsolete
+	private static final int PROJECT_CHANGES = IJavaElementDelta.F_CLOSED | IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	// Changes of a project adding archives to its classpath
+	private static final int CLASSPATH_CHANGES = IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private final Map<IPackageFragmentRoot, Registration> registrations = new ConcurrentHashMap<>();
+	private final ArchiveWatcher watcher;
+
+	public SourceMapperRegistry() {
+		watcher = new ArchiveWatcher(JavaDecompilerPlugin.getDefault().getArchiveRegistry(), this::classesChanged);
+		JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+	}
+
+	/**
+	 * @param root           Package fragment root of the class to decompile.
+	 * @param baseFile       Location of the archive file or of the directory
+	 *                       containing the classes.
+	 * @param sourcePath     Location of the archive file containing source.
+	 * @param sourceRootPath Location of the package fragment root within the
+	 *                       source archive, or null.
+	 * @return The mapper of the root, installed on the root.
+	 */
+	public JDSourceMapper getSourceMapper(PackageFragmentRoot root, File baseFile, IPath sourcePath,
+			String sourceRootPath) throws JavaModelException {
+		Registration registration = registrations.get(root);
+
+		if ((registration == null) || !registration.matches(baseFile, sourcePath, sourceRootPath)) {
+			// Options copied once per mapper
+			Map<String, String> options = root.getJavaProject().getOptions(true);
+			JDSourceMapper sourceMapper = new JDSourceMapper(baseFile, getClasspath(root), sourcePath, sourceRootPath,
+					options);
+
+			registration = new Registration(sourceMapper, baseFile, sourcePath, sourceRootPath);
+			watcher.watch(baseFile);
+			unwatch(registrations.put(root, registration));
+		}
+
+		SourceMapper installed = root.getSourceMapper();
+
+		if (installed != registration.sourceMapper) {
+			// New root, or root information discarded by JDT
+			root.setSourceMapper(registration.sourceMapper);
+		}
+
+		return registration.sourceMapper;
+	}
+
+	/**
+	 * @return The libraries of the project of a root, archives and class
+	 *         folders, in classpath order.
+	 */
+	public static List<File> getClasspath(IPackageFragmentRoot root) throws JavaModelException {
+		List<File> classpath = new ArrayList<>();
+
+		for (IClasspathEntry entry : root.getJavaProject().getResolvedClasspath(true)) {
+			if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
+				File file = entry.getPath().toFile();
+
+				if (!file.exists()) {
+					// Workspace relative path
+					IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(entry.getPath());
+
+					if ((resource != null) && (resource.getLocation() != null)) {
+						file = resource.getLocation().toFile();
+					}
+				}
+
+				classpath.add(file);
+			}
+		}
+
+		return classpath;
+	}
+
+	public int getSize() {
+		return registrations.size();
+	}
+
+	public void dispose() {
+		JavaCore.removeElementChangedListener(this);
+		watcher.close();
+		registrations.clear();
+	}
+
+	private void unwatch(Registration registration) {
+		if (registration != null) {
+			watcher.unwatch(registration.baseFile);
+		}
+	}
+
+	/**
+	 * Drops the decompiled sources of the changed classes of a watched root,
+	 * then refreshes the editors whose class changed. Called by the watcher.
+	 *
+	 * @param internalNames Changed classes, or null if unknown.
+	 */
+	protected void classesChanged(File baseFile, Set<String> internalNames) {
+		JavaDecompilerPlugin plugin = JavaDecompilerPlugin.getDefault();
+
+		if ((plugin == null) || (plugin.getSourceCache() == null)) {
+			return;
+		}
+
+		// Identities of the classes of an archive, or of the class files of a folder
+		String path = ArchiveRegistry.canonicalPath(baseFile);
+		String archivePrefix = path + '!';
+		String folderPrefix = path + File.separatorChar;
+
+		classpathChanged(path);
+		ArchiveIndexingJob.update(getRoots(baseFile));
+		plugin.getSourceCache().removeIf(key -> (key.getArchive().startsWith(archivePrefix)
+				|| key.getArchive().startsWith(folderPrefix))
+				&& ((internalNames == null) || internalNames.contains(key.getInternalTypeName())));
+
+		EditorRefreshJob.request();
+	}
+
+	/**
+	 * @return The registered roots of an archive or class folder.
+	 */
+	protected List<IPackageFragmentRoot> getRoots(File baseFile) {
+		List<IPackageFragmentRoot> roots = new ArrayList<>();
+
+		for (Map.Entry<IPackageFragmentRoot, Registration> entry : registrations.entrySet()) {
+			if (entry.getValue().baseFile.equals(baseFile)) {
+				roots.add(entry.getKey());
+			}
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Drops the index of the classpaths containing a changed root.
+	 *
+	 * @param path Canonical path of the root.
+	 */
+	protected void classpathChanged(String path) {
+		for (Registration registration : registrations.values()) {
+			registration.sourceMapper.classpathChanged(path);
+		}
+	}
+
+	// --- IElementChangedListener --- //
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		// Visited even without mapper, for the full-text indexes
+		visit(event.getDelta());
+	}
+
+	protected void visit(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+			if ((delta.getKind() != IJavaElementDelta.REMOVED) && ((delta.getFlags() & CLASSPATH_CHANGES) != 0)) {
+				try {
+					ArchiveIndexingJob.update(Arrays.asList(((IJavaProject) element).getPackageFragmentRoots()));
+				} catch (JavaModelException e) {
+					// Project closed meanwhile
+				}
+			}
+			if ((delta.getKind() == IJavaElementDelta.REMOVED) || ((delta.getFlags() & PROJECT_CHANGES) != 0)) {
+				Iterator<Map.Entry<IPackageFragmentRoot, Registration>> iterator = registrations.entrySet().iterator();
+
+				while (iterator.hasNext()) {
+					Map.Entry<IPackageFragmentRoot, Registration> entry = iterator.next();
+
+					if (element.equals(entry.getKey().getJavaProject())) {
+						iterator.remove();
+						unwatch(entry.getValue());
+					}
+				}
+				return;
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			if ((delta.getKind() == IJavaElementDelta.REMOVED) || ((delta.getFlags() & ROOT_CHANGES) != 0)) {
+				unwatch(registrations.remove(element));
+				if ((delta.getFlags() & IJavaElementDelta.F_ADDED_TO_CLASSPATH) != 0) {
+					ArchiveIndexingJob.update(Collections.singletonList((IPackageFragmentRoot) element));
+				}
+			} else if ((delta.getFlags() & IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED) != 0) {
+				// Libraries of the classpaths are not all watched
+				try {
+					classpathChanged(ArchiveRegistry.canonicalPath(JDClassFileEditor.getBaseFile((IPackageFragmentRoot) element)));
+				} catch (JavaModelException e) {
+					// Root not found anymore
+				}
+				ArchiveIndexingJob.update(Collections.singletonList((IPackageFragmentRoot) element));
+			}
+			return;
+		default:
+			return;
+		}
+
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			visit(child);
+		}
+	}
+
+	private static class Registration {
+		private final JDSourceMapper sourceMapper;
+		private final File baseFile;
+		private final IPath sourcePath;
+		private final String sourceRootPath;
+
+		Registration(JDSourceMapper sourceMapper, File baseFile, IPath sourcePath, String sourceRootPath) {
+			this.sourceMapper = sourceMapper;
+			this.baseFile = baseFile;
+			this.sourcePath = sourcePath;
+			this.sourceRootPath = sourceRootPath;
+		}
+
+		boolean matches(File baseFile, IPath sourcePath, String sourceRootPath) {
+			return this.baseFile.equals(baseFile) && Objects.equals(this.sourcePath, sourcePath)
+					&& Objects.equals(this.sourceRootPath, sourceRootPath);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.handlers;
+
+import java.io.File;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.Adapters;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.handlers.HandlerUtil;
+import org.jd.ide.eclipse.editors.JDClassFileEditor;
+
+/**
+ * Asks for the location of the source jar, then schedules a
+ * {@link DecompileToSourceJarJob} on the selected package fragment root.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompileToSourceJarHandler extends AbstractHandler {
+	@Override
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		ISelection selection = HandlerUtil.getCurrentSelection(event);
+
+		if (!(selection instanceof IStructuredSelection)) {
+			return null;
+		}
+
+		IPackageFragmentRoot root = Adapters.adapt(((IStructuredSelection) selection).getFirstElement(),
+				IPackageFragmentRoot.class);
+
+		if (root == null) {
+			return null;
+		}
+
+		Shell shell = HandlerUtil.getActiveShell(event);
+		File baseFile;
+
+		try {
+			if (root.getKind() != IPackageFragmentRoot.K_BINARY) {
+				MessageDialog.openInformation(shell, "Decompile to Source Jar",
+						root.getElementName() + " does not contain class files.");
+				return null;
+			}
+
+			baseFile = JDClassFileEditor.getBaseFile(root);
+		} catch (JavaModelException e) {
+			throw new ExecutionException(e.getMessage(), e);
+		}
+
+		String name = baseFile.getName();
+		if (name.toLowerCase().endsWith(".jar") || name.toLowerCase().endsWith(".zip")) {
+			name = name.substring(0, name.length() - 4);
+		}
+
+		FileDialog dialog = new FileDialog(shell, SWT.SAVE);
+		dialog.setText("Decompile to Source Jar");
+		dialog.setFilterExtensions(new String[] { "*.jar", "*.zip" });
+		dialog.setFilterPath(baseFile.isFile() ? baseFile.getParent() : baseFile.getPath());
+		dialog.setFileName(name + "-sources.jar");
+		dialog.setOverwrite(true);
+
+		String destination = dialog.open();
+
+		if (destination != null) {
+			boolean attachSources = MessageDialog.openQuestion(shell, "Decompile to Source Jar",
+					"Attach the generated sources to " + root.getElementName() + "?");
+
+			new DecompileToSourceJarJob(root, new File(destination), attachSources).schedule();
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ClasspathContainerInitializer;
+import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.jd.core.v1.ClassFileToJavaSourceDecompiler;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.editors.JDClassFileEditor;
+import org.jd.ide.eclipse.preferences.DecompilerOptions;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.jd.ide.eclipse.util.concurrent.TaskGroup;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.loader.ListableLoader;
+import org.jd.ide.eclipse.util.printer.LineNumberStringBuilderPrinter;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+
+/**
+ * Decompiles all the classes of a package fragment root into a source jar.
+ * <p>
+ * Classes are decompiled in parallel in the background lane of the
+ * decompilation scheduler, with pooled printers, so that the classes
+ * opened in editors meanwhile are decompiled first. Sources are handed to
+ * a single writer thread through a bounded queue and streamed into the jar.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompileToSourceJarJob extends Job {
+	private static final ClassFileToJavaSourceDecompiler DECOMPILER = new ClassFileToJavaSourceDecompiler();
+
+	private static final Source END_OF_SOURCES = new Source(null, null);
+	// Classes submitted and not yet written, per thread of the scheduler
+	private static final int QUEUE_LENGTH = 2;
+
+	private final IPackageFragmentRoot root;
+	private final File destination;
+	private final boolean attachSources;
+
+	/**
+	 * @param root          Jar or class folder to decompile.
+	 * @param destination   Source jar to create.
+	 * @param attachSources true to set the source jar as source attachment of the root.
+	 */
+	public DecompileToSourceJarJob(IPackageFragmentRoot root, File destination, boolean attachSources) {
+		super("Decompiling " + root.getElementName() + " to " + destination.getName());
+		this.root = root;
+		this.destination = destination;
+		this.attachSources = attachSources;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		try {
+			File baseFile = JDClassFileEditor.getBaseFile(root);
+			DecompilerOptions options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+			long start = System.nanoTime();
+			int count;
+
+			try (ArchiveRegistry.Lease loader = JavaDecompilerPlugin.getDefault().getArchiveRegistry().acquire(baseFile)) {
+				if (!(loader.getLoader() instanceof ListableLoader)) {
+					return new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, "Unable to list the classes of " + baseFile);
+				}
+
+				List<String> internalTypeNames = getTopLevelTypeNames(((ListableLoader) loader.getLoader()).getInternalNames());
+
+				monitor.beginTask(getName(), internalTypeNames.size());
+				count = export(loader, internalTypeNames, options, monitor, start);
+			}
+
+			if (monitor.isCanceled()) {
+				Files.deleteIfExists(destination.toPath());
+				return Status.CANCEL_STATUS;
+			}
+
+			if (attachSources) {
+				attachSources(new Path(destination.getAbsolutePath()));
+			}
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			String message = String.format("%d classes of %s decompiled in %.1f s (%.0f classes/s)", count,
+					root.getElementName(), seconds, count / Math.max(seconds, 1e-3));
+			IStatus status = new Status(Status.INFO, JavaDecompilerPlugin.PLUGIN_ID, message);
+
+			JavaDecompilerPlugin.getDefault().getLog().log(status);
+			return status;
+		} catch (Exception e) {
+			try {
+				Files.deleteIfExists(destination.toPath());
+			} catch (IOException ignore) {
+				// Nothing to do
+			}
+			return new Status(Status.ERROR, JavaDecompilerPlugin.PLUGIN_ID, 0, e.getMessage(), e);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * @return Number of classes written.
+	 */
+	private int export(ArchiveRegistry.Lease loader, List<String> internalTypeNames, DecompilerOptions options,
+			IProgressMonitor monitor, long start) throws Exception {
+		DecompilationScheduler scheduler = JavaDecompilerPlugin.getDefault().getDecompilationScheduler();
+		int window = QUEUE_LENGTH * scheduler.getThreadCount();
+		// Sources decompiled and not yet written, bounded by the window, plus the end marker
+		BlockingQueue<Source> queue = new ArrayBlockingQueue<>(window + 1);
+		Semaphore pending = new Semaphore(window);
+		PrinterPool printers = new PrinterPool(scheduler.getThreadCount(), PrinterPool.DEFAULT_MAX_RETAINED_CAPACITY);
+		// The lease is closed by the caller once the running decompilations ended
+		TaskGroup running = new TaskGroup();
+
+		AtomicInteger written = new AtomicInteger();
+		Exception[] writerFailure = new Exception[1];
+		Thread writer = new Thread(() -> {
+			try (OutputStream os = Files.newOutputStream(destination.toPath());
+					ZipOutputStream zos = new ZipOutputStream(os);
+					Writer out = new OutputStreamWriter(zos, StandardCharsets.UTF_8)) {
+				for (Source source = queue.take(); source != END_OF_SOURCES; source = queue.take()) {
+					pending.release();
+					zos.putNextEntry(new ZipEntry(source.internalTypeName + ".java"));
+					out.write(source.text);
+					out.flush();
+					zos.closeEntry();
+
+					int n = written.incrementAndGet();
+					monitor.worked(1);
+					if ((n & 63) == 0) {
+						double seconds = (System.nanoTime() - start) / 1e9;
+						monitor.subTask(String.format("%d/%d classes, %.0f classes/s", n, internalTypeNames.size(),
+								n / Math.max(seconds, 1e-3)));
+					}
+				}
+			} catch (Exception e) {
+				writerFailure[0] = e;
+				monitor.setCanceled(true);
+			}
+		}, "JD source jar writer");
+
+		writer.start();
+
+		// Classes are decompiled in the background lane of the scheduler, after the classes opened in editors
+		List<Future<?>> futures = new ArrayList<>(internalTypeNames.size());
+
+		try {
+			for (String internalTypeName : internalTypeNames) {
+				while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+					if (monitor.isCanceled() || !writer.isAlive()) {
+						break;
+					}
+				}
+				if (monitor.isCanceled() || !writer.isAlive()) {
+					break;
+				}
+
+				futures.add(scheduler.submit(null, Priority.BACKGROUND, canceled -> {
+					if (running.enter()) {
+						try {
+							// Never blocks: at most 'window' sources are pending
+							queue.add(decompile(loader, printers, internalTypeName, options));
+						} finally {
+							running.exit();
+						}
+					}
+					return null;
+				}));
+			}
+		} finally {
+			if (monitor.isCanceled() || !writer.isAlive()) {
+				futures.forEach(future -> future.cancel(false));
+			}
+
+			// Wait for the submitted decompilations, canceled futures return at once
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (CancellationException | ExecutionException e) {
+					// Not written
+				}
+			}
+
+			// Wait for the canceled decompilations still running
+			running.close();
+			queue.add(END_OF_SOURCES);
+			writer.join();
+		}
+
+		if (writerFailure[0] != null) {
+			throw writerFailure[0];
+		}
+
+		return written.get();
+	}
+
+	private static Source decompile(ArchiveRegistry.Lease loader, PrinterPool printers, String internalTypeName,
+			DecompilerOptions options) {
+		LineNumberStringBuilderPrinter printer = printers.acquire();
+		// Not shared between tasks: JD-Core keeps a type maker bound to the loader in the configuration
+		Map<String, Object> configuration = new HashMap<>();
+		char[] text;
+
+		try {
+			configuration.put("realignLineNumbers", options.isRealignLineNumbers());
+			printer.setRealignmentLineNumber(options.isRealignLineNumbers());
+			printer.setUnicodeEscape(options.isEscapeUnicodeCharacters());
+			printer.setShowLineNumbers(options.isShowLineNumbers());
+			DECOMPILER.decompile(loader, printer, internalTypeName, configuration);
+			text = printer.toCharArray();
+		} catch (Exception e) {
+			text = ("// Error while decompiling " + internalTypeName + ": " + e + "\n").toCharArray();
+		} finally {
+			printers.release(printer);
+		}
+
+		return new Source(internalTypeName, text);
+	}
+
+	/**
+	 * Inner classes are decompiled with their outer class. Classes with a '$'
+	 * in their name but without outer class in the archive, as generated
+	 * classes or inner classes of a stripped class, are decompiled alone.
+	 */
+	private static List<String> getTopLevelTypeNames(List<String> internalNames) {
+		Set<String> all = new HashSet<>(internalNames);
+		List<String> topLevelTypeNames = new ArrayList<>(internalNames.size());
+
+		for (String internalName : internalNames) {
+			if (ListableLoader.getTopLevelTypeName(internalName, all).equals(internalName)) {
+				topLevelTypeNames.add(internalName);
+			}
+		}
+
+		return topLevelTypeNames;
+	}
+
+	/**
+	 * Sets the source attachment of the root, in the raw classpath of its
+	 * project or in its classpath container when the container can be updated.
+	 */
+	private void attachSources(IPath sourcePath) throws CoreException {
+		IJavaProject javaProject = root.getJavaProject();
+		IClasspathEntry rawEntry = root.getRawClasspathEntry();
+
+		if (rawEntry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
+			IClasspathEntry[] rawClasspath = javaProject.getRawClasspath();
+
+			for (int i = 0; i < rawClasspath.length; i++) {
+				if (rawClasspath[i].equals(rawEntry)) {
+					rawClasspath[i] = withSourceAttachment(rawEntry, sourcePath);
+				}
+			}
+
+			javaProject.setRawClasspath(rawClasspath, null);
+		} else if (rawEntry.getEntryKind() == IClasspathEntry.CPE_CONTAINER) {
+			IPath containerPath = rawEntry.getPath();
+			ClasspathContainerInitializer initializer = JavaCore.getClasspathContainerInitializer(containerPath.segment(0));
+			IClasspathContainer container = JavaCore.getClasspathContainer(containerPath, javaProject);
+
+			if ((initializer == null) || (container == null) || !initializer.canUpdateClasspathContainer(containerPath, javaProject)) {
+				JavaDecompilerPlugin.getDefault().getLog().log(new Status(Status.WARNING, JavaDecompilerPlugin.PLUGIN_ID,
+						"Unable to attach sources to " + root.getElementName() + ": " + containerPath + " cannot be updated"));
+				return;
+			}
+
+			IClasspathEntry[] entries = container.getClasspathEntries().clone();
+
+			for (int i = 0; i < entries.length; i++) {
+				if (entries[i].getPath().equals(root.getPath())) {
+					entries[i] = withSourceAttachment(entries[i], sourcePath);
+				}
+			}
+
+			initializer.requestClasspathContainerUpdate(containerPath, javaProject, new IClasspathContainer() {
+				@Override public IClasspathEntry[] getClasspathEntries() { return entries; }
+				@Override public String getDescription() { return container.getDescription(); }
+				@Override public int getKind() { return container.getKind(); }
+				@Override public IPath getPath() { return container.getPath(); }
+			});
+		}
+	}
+
+	private static IClasspathEntry withSourceAttachment(IClasspathEntry entry, IPath sourcePath) {
+		return JavaCore.newLibraryEntry(entry.getPath(), sourcePath, null, entry.getAccessRules(),
+				entry.getExtraAttributes(), entry.isExported());
+	}
+
+	private static class Source {
+		final String internalTypeName;
+		final char[] text;
+
+		Source(String internalTypeName, char[] text) {
+			this.internalTypeName = internalTypeName;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.preferences;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+
+/**
+ * Snapshot of the preferences affecting the decompiled output.
+ * 
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public final class DecompilerOptions {
+	private static final int REALIGN_LINE_NUMBERS = 1;
+	private static final int ESCAPE_UNICODE_CHARACTERS = 2;
+	private static final int SHOW_LINE_NUMBERS = 4;
+	private static final int SHOW_METADATA = 8;
+
+	private final boolean realignLineNumbers;
+	private final boolean escapeUnicodeCharacters;
+	private final boolean showLineNumbers;
+	private final boolean showMetadata;
+
+	public DecompilerOptions(boolean realignLineNumbers, boolean escapeUnicodeCharacters, boolean showLineNumbers,
+			boolean showMetadata) {
+		this.realignLineNumbers = realignLineNumbers;
+		this.escapeUnicodeCharacters = escapeUnicodeCharacters;
+		this.showLineNumbers = showLineNumbers;
+		this.showMetadata = showMetadata;
+	}
+
+	public static DecompilerOptions load(IPreferenceStore store) {
+		return new DecompilerOptions(store.getBoolean(JavaDecompilerPlugin.PREF_REALIGN_LINE_NUMBERS),
+				store.getBoolean(JavaDecompilerPlugin.PREF_ESCAPE_UNICODE_CHARACTERS),
+				store.getBoolean(JavaDecompilerPlugin.PREF_SHOW_LINE_NUMBERS),
+				store.getBoolean(JavaDecompilerPlugin.PREF_SHOW_METADATA));
+	}
+
+	public boolean isRealignLineNumbers() {
+		return realignLineNumbers;
+	}
+
+	public boolean isEscapeUnicodeCharacters() {
+		return escapeUnicodeCharacters;
+	}
+
+	public boolean isShowLineNumbers() {
+		return showLineNumbers;
+	}
+
+	public boolean isShowMetadata() {
+		return showMetadata;
+	}
+
+	/**
+	 * @return A value identifying the options, usable in cache keys.
+	 */
+	public int fingerprint() {
+		return (realignLineNumbers ? REALIGN_LINE_NUMBERS : 0) | (escapeUnicodeCharacters ? ESCAPE_UNICODE_CHARACTERS : 0)
+				| (showLineNumbers ? SHOW_LINE_NUMBERS : 0) | (showMetadata ? SHOW_METADATA : 0);
+	}
+
+	/**
+	 * @return A value identifying the options used by the decompiler, the
+	 *         others being applied when its printer calls are replayed.
+	 */
+	public int decompilerFingerprint() {
+		return fingerprint() & REALIGN_LINE_NUMBERS;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof DecompilerOptions) && (((DecompilerOptions) obj).fingerprint() == fingerprint());
+	}
+
+	@Override
+	public int hashCode() {
+		return fingerprint();
+	}
+}
@@ -28,5 +28,6 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(JavaDecompilerPlugin.PREF_REALIGN_LINE_NUMBERS, true);
 		store.setDefault(JavaDecompilerPlugin.PREF_SHOW_LINE_NUMBERS, true);
 		store.setDefault(JavaDecompilerPlugin.PREF_SHOW_METADATA, true);
+		store.setDefault(JavaDecompilerPlugin.PREF_SOURCE_CACHE_SIZE, 16);
 	}
 }
@@ -8,15 +8,20 @@
 package org.jd.ide.eclipse.preferences;
 
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+import org.jd.ide.eclipse.util.cache.SourceCache;
 
 /**
  * PreferencePage
@@ -40,7 +45,8 @@ public class PreferencePage extends FieldEditorPreferencePage implements IWorkbe
 
 		new Label(fieldEditorParent, SWT.NONE);
 		createBooleanPreferences(fieldEditorParent);
-		
+		createCachePreferences(fieldEditorParent);
+		createMemoryUsage(fieldEditorParent);
 	}
 	
 	private void createBooleanPreferences(Composite fieldEditorParent) {
@@ -73,6 +79,52 @@ public class PreferencePage extends FieldEditorPreferencePage implements IWorkbe
 	    }
 	}
 
+	private void createCachePreferences(Composite fieldEditorParent) {
+		new Label(fieldEditorParent, SWT.NONE);
+
+		IntegerFieldEditor editor = new IntegerFieldEditor(JavaDecompilerPlugin.PREF_SOURCE_CACHE_SIZE,
+				"Decompiled source cache size (MB)", fieldEditorParent);
+		editor.setValidRange(0, 1024);
+		editor.getLabelControl(fieldEditorParent).setToolTipText("Memoria reservada para reutilizar las clases ya decompiladas (0 para desactivar)");
+		addField(editor);
+
+		SourceCache cache = JavaDecompilerPlugin.getDefault().getSourceCache();
+		if (cache != null) {
+			Label statistics = new Label(fieldEditorParent, SWT.NONE);
+			statistics.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+			statistics.setText(String.format("%d classes, %d KB, %d hits, %d misses, %d evictions",
+					cache.getEntryCount(), cache.getSize() / 1024, cache.getHitCount(), cache.getMissCount(),
+					cache.getEvictionCount()));
+		}
+	}
+
+	private void createMemoryUsage(Composite fieldEditorParent) {
+		MemoryBudget budget = JavaDecompilerPlugin.getDefault().getMemoryBudget();
+		if (budget == null) {
+			return;
+		}
+
+		new Label(fieldEditorParent, SWT.NONE);
+		createStatistics(fieldEditorParent, "Heap used by the caches:");
+
+		for (Map.Entry<String, Long> usage : budget.getUsage().entrySet()) {
+			createStatistics(fieldEditorParent, String.format("    %s: %d KB", usage.getKey(), usage.getValue() / 1024));
+		}
+
+		if (budget.isStarted()) {
+			createStatistics(fieldEditorParent, String.format("Shrunk %d times under heap pressure, %d KB released",
+					budget.getPressureCount(), budget.getReleasedSize() / 1024));
+		} else {
+			createStatistics(fieldEditorParent, "Heap pressure is not monitored by this virtual machine");
+		}
+	}
+
+	private static void createStatistics(Composite fieldEditorParent, String text) {
+		Label statistics = new Label(fieldEditorParent, SWT.NONE);
+		statistics.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		statistics.setText(text);
+	}
+
 	/**
 	 * @see org.eclipse.ui.IWorkbenchPreferencePage#init(org.eclipse.ui.IWorkbench)
 	 */
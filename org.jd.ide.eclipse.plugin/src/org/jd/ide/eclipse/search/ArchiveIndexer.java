@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.editors.JDClassFileEditor;
+import org.jd.ide.eclipse.editors.JDSourceMapper;
+import org.jd.ide.eclipse.editors.SourceMapperRegistry;
+import org.jd.ide.eclipse.preferences.DecompilerOptions;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.jd.ide.eclipse.util.concurrent.TaskGroup;
+import org.jd.ide.eclipse.util.index.ArchiveIndex;
+import org.jd.ide.eclipse.util.index.FullTextIndex;
+import org.jd.ide.eclipse.util.index.IndexingPrinter;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.loader.Classpath;
+import org.jd.ide.eclipse.util.loader.ListableLoader;
+
+/**
+ * Builds the full-text index of an archive from its previous index.
+ * <p>
+ * Classes whose class files did not change keep their terms. The others
+ * are replayed from the disk source cache, or decompiled in the background
+ * lane of the decompilation scheduler, their recordings being kept in the
+ * disk source cache for the editors. A class is decompiled at most once
+ * per version of its class files, even when the decompilation fails.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class ArchiveIndexer {
+	// Classes submitted and not yet indexed, per thread of the scheduler
+	private static final int QUEUE_LENGTH = 2;
+
+	private ArchiveIndexer() {}
+
+	/**
+	 * @return The up to date index of an archive.
+	 * @throws OperationCanceledException if the monitor was canceled.
+	 */
+	public static ArchiveIndex index(IPackageFragmentRoot root, IProgressMonitor monitor) throws Exception {
+		File baseFile = JDClassFileEditor.getBaseFile(root);
+		FullTextIndex fullTextIndex = JavaDecompilerPlugin.getDefault().getFullTextIndex();
+		ArchiveIndex previous = fullTextIndex.get(baseFile);
+
+		if (FullTextIndex.isUpToDate(baseFile, previous)) {
+			return previous;
+		}
+
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder(ArchiveRegistry.identity(baseFile));
+		// Indexed once for all the classes of the archive
+		Classpath classpath = new Classpath(JavaDecompilerPlugin.getDefault().getArchiveRegistry(),
+				SourceMapperRegistry.getClasspath(root));
+		classpath.index();
+		DecompilerOptions options = DecompilerOptions.load(JavaDecompilerPlugin.getDefault().getPreferenceStore());
+		DecompilationScheduler scheduler = JavaDecompilerPlugin.getDefault().getDecompilationScheduler();
+		Semaphore pending = new Semaphore(QUEUE_LENGTH * scheduler.getThreadCount());
+		List<Future<?>> futures = new ArrayList<>();
+		// The builder is built once the running decompilations ended
+		TaskGroup running = new TaskGroup();
+
+		try (ArchiveRegistry.Lease lease = JavaDecompilerPlugin.getDefault().getArchiveRegistry().acquire(baseFile)) {
+			if (!(lease.getLoader() instanceof ListableLoader)) {
+				throw new IllegalArgumentException("Unable to list the classes of " + baseFile);
+			}
+
+			Map<String, List<String>> groups = getTopLevelTypeGroups(((ListableLoader) lease.getLoader()).getInternalNames());
+			SubMonitor progress = SubMonitor.convert(monitor, "Indexing " + root.getElementName(), groups.size());
+
+			try {
+				for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+					String internalTypeName = group.getKey();
+					List<byte[]> data = new ArrayList<>(group.getValue().size());
+
+					for (String internalName : group.getValue()) {
+						byte[] bytes = lease.load(internalName);
+
+						if (bytes != null) {
+							data.add(bytes);
+						}
+					}
+
+					DiskSourceCache.Digest digest = DiskSourceCache.digestAll(data);
+					Collection<String> terms = (previous == null) ? null : previous.getTerms(internalTypeName, digest);
+
+					if (terms != null) {
+						builder.add(internalTypeName, digest, terms);
+					} else {
+						while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+							if (progress.isCanceled()) {
+								throw new OperationCanceledException();
+							}
+						}
+
+						futures.add(scheduler.submit(null, Priority.BACKGROUND, canceled -> {
+							if (running.enter()) {
+								try {
+									if (!canceled.getAsBoolean()) {
+										index(builder, baseFile, classpath, internalTypeName, digest, options);
+									}
+								} finally {
+									pending.release();
+									running.exit();
+								}
+							}
+							return null;
+						}));
+					}
+
+					progress.worked(1);
+
+					if (progress.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+				}
+			} finally {
+				if (progress.isCanceled()) {
+					futures.forEach(future -> future.cancel(false));
+				}
+
+				// Wait for the submitted decompilations, canceled futures return at once
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (CancellationException | ExecutionException e) {
+						// Not indexed
+					}
+				}
+
+				// Wait for the canceled decompilations still running
+				running.close();
+			}
+		}
+
+		ArchiveIndex index = builder.build();
+		fullTextIndex.put(baseFile, index);
+		return index;
+	}
+
+	private static void index(ArchiveIndex.Builder builder, File baseFile, Classpath classpath, String internalTypeName,
+			DiskSourceCache.Digest digest, DecompilerOptions options) {
+		Collection<String> terms;
+
+		try {
+			DiskSourceCache.Entry entry = JDSourceMapper.getDecompiledEntry(baseFile, classpath, internalTypeName, options, null);
+			IndexingPrinter printer = new IndexingPrinter();
+
+			entry.getRecording().replay(printer);
+			terms = printer.getTerms();
+		} catch (Exception e) {
+			// Indexed without terms, so that it is not decompiled again until it changes
+			terms = Collections.emptyList();
+		}
+
+		builder.add(internalTypeName, digest, terms);
+	}
+
+	/**
+	 * @return The classes of an archive by top level class, inner classes
+	 *         being decompiled with their outer class.
+	 */
+	private static Map<String, List<String>> getTopLevelTypeGroups(List<String> internalNames) {
+		Set<String> all = new HashSet<>(internalNames);
+		Map<String, List<String>> groups = new TreeMap<>();
+
+		for (String internalName : internalNames) {
+			String topLevelTypeName = ListableLoader.getTopLevelTypeName(internalName, all);
+			groups.computeIfAbsent(topLevelTypeName, k -> new ArrayList<>()).add(internalName);
+		}
+
+		// Digests do not depend on the order of the entries
+		groups.values().forEach(Collections::sort);
+		return groups;
+	}
+}
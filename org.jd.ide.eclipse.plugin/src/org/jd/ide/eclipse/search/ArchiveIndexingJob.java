@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.editors.JDClassFileEditor;
+
+/**
+ * Indexes archives in the background, one at a time, with
+ * {@link ArchiveIndexer}.
+ * <p>
+ * The archives out of date are queued by the searches, which read the
+ * existing indexes without waiting. Archives changed, or added to a
+ * classpath, are queued by the source mapper registry: they are indexed
+ * again only if they were indexed before, so that the archives never
+ * searched are not decompiled.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class ArchiveIndexingJob extends Job {
+	// Changes are coalesced
+	private static final long DELAY = 1000;
+
+	private static final ArchiveIndexingJob INSTANCE = new ArchiveIndexingJob();
+
+	// Queued roots, by path
+	private final Map<IPath, Entry> pending = new LinkedHashMap<>();
+
+	private ArchiveIndexingJob() {
+		super("Indexing decompiled archives");
+		setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Queues the archives out of date found by a search.
+	 */
+	public static void request(Collection<IPackageFragmentRoot> roots) {
+		INSTANCE.add(roots, true);
+		INSTANCE.schedule();
+	}
+
+	/**
+	 * Queues archives changed or added to a classpath, indexed again if they
+	 * were indexed before.
+	 */
+	public static void update(Collection<IPackageFragmentRoot> roots) {
+		INSTANCE.add(roots, false);
+		INSTANCE.schedule(DELAY);
+	}
+
+	/**
+	 * Drops the queued archives and waits for the end of the running indexing.
+	 */
+	public static void shutdown() throws InterruptedException {
+		synchronized (INSTANCE.pending) {
+			INSTANCE.pending.clear();
+		}
+		INSTANCE.cancel();
+		INSTANCE.join();
+	}
+
+	private void add(Collection<IPackageFragmentRoot> roots, boolean requested) {
+		synchronized (pending) {
+			for (IPackageFragmentRoot root : roots) {
+				Entry entry = pending.get(root.getPath());
+
+				if (entry != null) {
+					entry.requested |= requested;
+				} else if (isIndexable(root)) {
+					pending.put(root.getPath(), new Entry(root, requested));
+				}
+			}
+		}
+	}
+
+	private static boolean isIndexable(IPackageFragmentRoot root) {
+		try {
+			return DecompiledSearchQuery.isIndexable(root);
+		} catch (JavaModelException e) {
+			// Root not found anymore
+			return false;
+		}
+	}
+
+	private Entry next() {
+		synchronized (pending) {
+			Iterator<Entry> iterator = pending.values().iterator();
+
+			if (!iterator.hasNext()) {
+				return null;
+			}
+
+			Entry entry = iterator.next();
+			iterator.remove();
+			return entry;
+		}
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		SubMonitor progress = SubMonitor.convert(monitor);
+		JavaDecompilerPlugin plugin = JavaDecompilerPlugin.getDefault();
+
+		for (Entry entry = next(); entry != null; entry = next()) {
+			if (progress.isCanceled() || (plugin == null)) {
+				synchronized (pending) {
+					pending.clear();
+				}
+				return Status.CANCEL_STATUS;
+			}
+
+			try {
+				File baseFile = JDClassFileEditor.getBaseFile(entry.root);
+
+				if (entry.requested || (plugin.getFullTextIndex().get(baseFile) != null)) {
+					progress.setWorkRemaining(100);
+					ArchiveIndexer.index(entry.root, progress.split(100));
+				}
+			} catch (OperationCanceledException e) {
+				synchronized (pending) {
+					pending.clear();
+				}
+				return Status.CANCEL_STATUS;
+			} catch (Exception e) {
+				plugin.getLog().log(new Status(Status.WARNING, JavaDecompilerPlugin.PLUGIN_ID, 0,
+						"Unable to index " + entry.root.getElementName() + ": " + e.getMessage(), e));
+			}
+		}
+
+		return Status.OK_STATUS;
+	}
+
+	private static class Entry {
+		private final IPackageFragmentRoot root;
+		private boolean requested;
+
+		Entry(IPackageFragmentRoot root, boolean requested) {
+			this.root = root;
+			this.requested = requested;
+		}
+	}
+}
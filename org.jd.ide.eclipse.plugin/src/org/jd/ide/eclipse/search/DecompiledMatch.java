@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.search.ui.text.Match;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Kind;
+
+/**
+ * Term of the full-text index found in a class file. The position of the
+ * term in the decompiled source is not indexed: the match covers the class.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompiledMatch extends Match {
+	private final Kind kind;
+	private final String text;
+
+	public DecompiledMatch(IClassFile classFile, Kind kind, String text) {
+		super(classFile, 0, 0);
+		this.kind = kind;
+		this.text = text;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getText() {
+		return text;
+	}
+}
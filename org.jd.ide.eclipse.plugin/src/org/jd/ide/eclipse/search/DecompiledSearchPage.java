@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import org.eclipse.jface.dialogs.DialogPage;
+import org.eclipse.search.ui.ISearchPage;
+import org.eclipse.search.ui.ISearchPageContainer;
+import org.eclipse.search.ui.NewSearchUI;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+import org.jd.ide.eclipse.util.index.ArchiveIndex;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Kind;
+
+/**
+ * Page of the search dialog searching the string constants, references
+ * and declarations of the decompiled classes of the workspace libraries.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompiledSearchPage extends DialogPage implements ISearchPage {
+	private static final String[] KIND_LABELS = { "String constants", "References", "Declarations" };
+
+	private ISearchPageContainer container;
+	private Text patternText;
+	private Button[] kindButtons;
+	private Button caseSensitiveButton;
+
+	@Override
+	public void createControl(Composite parent) {
+		Composite composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(1, false));
+
+		new Label(composite, SWT.NONE).setText("Search string (* = any string, ? = any character):");
+
+		patternText = new Text(composite, SWT.SINGLE | SWT.BORDER);
+		patternText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		patternText.addModifyListener(e -> updateEnablement());
+
+		Group group = new Group(composite, SWT.NONE);
+		group.setText("Search For");
+		group.setLayout(new GridLayout(KIND_LABELS.length, false));
+		kindButtons = new Button[KIND_LABELS.length];
+
+		for (int i = 0; i < KIND_LABELS.length; i++) {
+			kindButtons[i] = new Button(group, SWT.RADIO);
+			kindButtons[i].setText(KIND_LABELS[i]);
+		}
+		kindButtons[0].setSelection(true);
+
+		caseSensitiveButton = new Button(composite, SWT.CHECK);
+		caseSensitiveButton.setText("Case sensitive");
+
+		Label note = new Label(composite, SWT.WRAP);
+		note.setText("Libraries of the workspace projects are indexed on first search, and when they change.");
+		note.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		setControl(composite);
+	}
+
+	@Override
+	public boolean performAction() {
+		Kind kind = Kind.values()[0];
+
+		for (int i = 0; i < kindButtons.length; i++) {
+			if (kindButtons[i].getSelection()) {
+				kind = Kind.values()[i];
+			}
+		}
+
+		ArchiveIndex.Query query = new ArchiveIndex.Query(kind, patternText.getText(), caseSensitiveButton.getSelection());
+
+		NewSearchUI.runQueryInBackground(new DecompiledSearchQuery(query));
+		return true;
+	}
+
+	@Override
+	public void setContainer(ISearchPageContainer container) {
+		this.container = container;
+	}
+
+	@Override
+	public void setVisible(boolean visible) {
+		super.setVisible(visible);
+
+		if (visible) {
+			patternText.setFocus();
+			updateEnablement();
+		}
+	}
+
+	private void updateEnablement() {
+		if (container != null) {
+			container.setPerformActionEnabled(!patternText.getText().isEmpty());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.internal.core.JrtPackageFragmentRoot;
+import org.eclipse.search.ui.ISearchQuery;
+import org.eclipse.search.ui.ISearchResult;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.editors.JDClassFileEditor;
+import org.jd.ide.eclipse.util.index.ArchiveIndex;
+import org.jd.ide.eclipse.util.index.FullTextIndex;
+
+/**
+ * Searches the full-text indexes of the archives of the workspace
+ * projects. The archives not indexed, or changed since their last index,
+ * are reported and queued to the {@link ArchiveIndexingJob}: the search
+ * does not wait for them, reading their previous index if any.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+@SuppressWarnings("restriction")
+public class DecompiledSearchQuery implements ISearchQuery {
+	// Matches shown at most, per archive
+	private static final int MAX_MATCHES = 1000;
+
+	private final ArchiveIndex.Query query;
+	private final DecompiledSearchResult result;
+
+	public DecompiledSearchQuery(ArchiveIndex.Query query) {
+		this.query = query;
+		this.result = new DecompiledSearchResult(this);
+	}
+
+	@Override
+	public IStatus run(IProgressMonitor monitor) throws OperationCanceledException {
+		result.removeAll();
+		// Listens to the changes of the archives, indexed again in the background
+		JavaDecompilerPlugin.getDefault().getSourceMapperRegistry();
+
+		MultiStatus status = new MultiStatus(JavaDecompilerPlugin.PLUGIN_ID, 0, "Problems while searching archives", null);
+		FullTextIndex fullTextIndex = JavaDecompilerPlugin.getDefault().getFullTextIndex();
+		List<IPackageFragmentRoot> outOfDateRoots = new ArrayList<>();
+
+		try {
+			Collection<IPackageFragmentRoot> roots = getArchiveRoots();
+			SubMonitor progress = SubMonitor.convert(monitor, getLabel(), roots.size());
+
+			for (IPackageFragmentRoot root : roots) {
+				try {
+					File baseFile = JDClassFileEditor.getBaseFile(root);
+					ArchiveIndex index = fullTextIndex.get(baseFile);
+
+					if (!FullTextIndex.isUpToDate(baseFile, index)) {
+						outOfDateRoots.add(root);
+					}
+
+					if (index != null) {
+						for (ArchiveIndex.Match match : index.search(query, MAX_MATCHES)) {
+							result.addMatch(new DecompiledMatch(getClassFile(root, match.getInternalTypeName()),
+									match.getKind(), match.getText()));
+						}
+					}
+				} catch (Exception e) {
+					status.add(new Status(Status.WARNING, JavaDecompilerPlugin.PLUGIN_ID, 0,
+							root.getElementName() + ": " + e.getMessage(), e));
+				}
+
+				progress.worked(1);
+
+				if (progress.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+			}
+		} catch (JavaModelException e) {
+			return e.getStatus();
+		} finally {
+			result.setOutOfDateRoots(outOfDateRoots);
+		}
+
+		if (!outOfDateRoots.isEmpty()) {
+			ArchiveIndexingJob.request(outOfDateRoots);
+		}
+
+		return status.isOK() ? Status.OK_STATUS : status;
+	}
+
+	/**
+	 * @return The archives of the libraries of the workspace projects, once
+	 *         each. Java runtime modules are not indexed.
+	 */
+	private static Collection<IPackageFragmentRoot> getArchiveRoots() throws JavaModelException {
+		Map<IPath, IPackageFragmentRoot> roots = new LinkedHashMap<>();
+
+		for (IJavaProject project : JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects()) {
+			for (IPackageFragmentRoot root : project.getPackageFragmentRoots()) {
+				if (isIndexable(root)) {
+					roots.putIfAbsent(root.getPath(), root);
+				}
+			}
+		}
+
+		return new ArrayList<>(roots.values());
+	}
+
+	static boolean isIndexable(IPackageFragmentRoot root) throws JavaModelException {
+		return (root.getKind() == IPackageFragmentRoot.K_BINARY) && root.isArchive()
+				&& !(root instanceof JrtPackageFragmentRoot);
+	}
+
+	private static IClassFile getClassFile(IPackageFragmentRoot root, String internalTypeName) {
+		int index = internalTypeName.lastIndexOf('/');
+		String packageName = (index == -1) ? "" : internalTypeName.substring(0, index).replace('/', '.');
+
+		return root.getPackageFragment(packageName).getClassFile(internalTypeName.substring(index + 1) + ".class");
+	}
+
+	public ArchiveIndex.Query getQuery() {
+		return query;
+	}
+
+	@Override
+	public String getLabel() {
+		switch (query.getKind()) {
+		case STRING:
+			return "'" + query.getText() + "' - string constants in decompiled classes";
+		case REFERENCE:
+			return "'" + query.getText() + "' - references in decompiled classes";
+		default:
+			return "'" + query.getText() + "' - declarations in decompiled classes";
+		}
+	}
+
+	@Override
+	public boolean canRerun() {
+		return true;
+	}
+
+	@Override
+	public boolean canRunInBackground() {
+		return true;
+	}
+
+	@Override
+	public ISearchResult getSearchResult() {
+		return result;
+	}
+}
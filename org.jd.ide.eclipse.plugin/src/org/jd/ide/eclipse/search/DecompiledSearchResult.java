@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.search.ui.ISearchQuery;
+import org.eclipse.search.ui.text.AbstractTextSearchResult;
+import org.eclipse.search.ui.text.IEditorMatchAdapter;
+import org.eclipse.search.ui.text.IFileMatchAdapter;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+
+/**
+ * Class files matching a {@link DecompiledSearchQuery}.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompiledSearchResult extends AbstractTextSearchResult {
+	private final DecompiledSearchQuery query;
+	// Archives not indexed, or changed since their last index, when searched
+	private volatile List<IPackageFragmentRoot> outOfDateRoots = Collections.emptyList();
+
+	public DecompiledSearchResult(DecompiledSearchQuery query) {
+		this.query = query;
+	}
+
+	@Override
+	public String getLabel() {
+		int count = getMatchCount();
+		int outOfDateCount = outOfDateRoots.size();
+		String label = query.getLabel() + " (" + count + ((count == 1) ? " match" : " matches");
+
+		if (outOfDateCount > 0) {
+			label += ", " + outOfDateCount + ((outOfDateCount == 1) ? " archive" : " archives")
+					+ " not indexed yet, search again once indexed";
+		}
+
+		return label + ')';
+	}
+
+	/**
+	 * @return The archives whose matches are missing or out of date.
+	 */
+	public List<IPackageFragmentRoot> getOutOfDateRoots() {
+		return outOfDateRoots;
+	}
+
+	void setOutOfDateRoots(List<IPackageFragmentRoot> outOfDateRoots) {
+		this.outOfDateRoots = outOfDateRoots;
+	}
+
+	@Override
+	public String getTooltip() {
+		return getLabel();
+	}
+
+	@Override
+	public ImageDescriptor getImageDescriptor() {
+		return ImageDescriptor.createFromURL(JavaDecompilerPlugin.getDefault().getBundle().getEntry("icons/jd_16.png"));
+	}
+
+	@Override
+	public ISearchQuery getQuery() {
+		return query;
+	}
+
+	@Override
+	public IEditorMatchAdapter getEditorMatchAdapter() {
+		// Matches are not located in the decompiled sources
+		return null;
+	}
+
+	@Override
+	public IFileMatchAdapter getFileMatchAdapter() {
+		return null;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.search;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.ui.JavaElementLabelProvider;
+import org.eclipse.jdt.ui.JavaUI;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.search.ui.text.AbstractTextSearchResult;
+import org.eclipse.search.ui.text.AbstractTextSearchViewPage;
+import org.eclipse.search.ui.text.Match;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.ui.PartInitException;
+
+/**
+ * Shows the class files of a {@link DecompiledSearchResult}, with the
+ * terms found. Opening a match opens its class file.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompiledSearchResultPage extends AbstractTextSearchViewPage {
+	// Terms shown at most, per class file
+	private static final int MAX_TERMS = 3;
+
+	private TableViewer viewer;
+
+	public DecompiledSearchResultPage() {
+		super(FLAG_LAYOUT_FLAT);
+	}
+
+	@Override
+	protected void configureTableViewer(TableViewer viewer) {
+		this.viewer = viewer;
+		viewer.setContentProvider(ArrayContentProvider.getInstance());
+		viewer.setLabelProvider(new MatchLabelProvider());
+		viewer.setComparator(new ViewerComparator());
+	}
+
+	@Override
+	protected void configureTreeViewer(TreeViewer viewer) {
+		throw new IllegalStateException("Flat layout only");
+	}
+
+	@Override
+	protected void elementsChanged(Object[] objects) {
+		refresh();
+	}
+
+	@Override
+	protected void clear() {
+		refresh();
+	}
+
+	private void refresh() {
+		if (viewer != null) {
+			AbstractTextSearchResult input = getInput();
+			viewer.setInput((input == null) ? null : input.getElements());
+		}
+	}
+
+	@Override
+	protected void showMatch(Match match, int currentOffset, int currentLength, boolean activate) throws PartInitException {
+		try {
+			JavaUI.openInEditor((IJavaElement) match.getElement(), activate, true);
+		} catch (JavaModelException e) {
+			throw new PartInitException(e.getStatus());
+		}
+	}
+
+	private class MatchLabelProvider extends LabelProvider {
+		private final JavaElementLabelProvider javaElementLabelProvider = new JavaElementLabelProvider(
+				JavaElementLabelProvider.SHOW_DEFAULT | JavaElementLabelProvider.SHOW_POST_QUALIFIED
+						| JavaElementLabelProvider.SHOW_ROOT);
+
+		@Override
+		public String getText(Object element) {
+			Match[] matches = getDisplayedMatches(element);
+			Set<String> texts = new LinkedHashSet<>();
+
+			for (Match match : matches) {
+				if (match instanceof DecompiledMatch) {
+					texts.add(((DecompiledMatch) match).getText());
+				}
+			}
+
+			StringBuilder label = new StringBuilder(javaElementLabelProvider.getText(element)).append(" - ");
+			int count = 0;
+
+			for (String text : texts) {
+				if (count++ == MAX_TERMS) {
+					label.append(", ...");
+					break;
+				}
+				label.append((count == 1) ? "" : ", ").append(text);
+			}
+
+			return label.toString();
+		}
+
+		@Override
+		public Image getImage(Object element) {
+			return javaElementLabelProvider.getImage(element);
+		}
+
+		@Override
+		public void dispose() {
+			javaElementLabelProvider.dispose();
+			super.dispose();
+		}
+	}
+}
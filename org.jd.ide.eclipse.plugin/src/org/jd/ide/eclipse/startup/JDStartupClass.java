@@ -1,27 +0,0 @@
-/*
- * Copyright (c) 2008, 2019 Emmanuel Dupuy.
- * This project is distributed under the GPLv3 license.
- * This is a Copyleft license that gives the user the right to use,
- * copy and modify the code freely for non-commercial purposes.
- */
-
-package org.jd.ide.eclipse.startup;
-
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.ui.IStartup;
-import org.jd.ide.eclipse.SetupClassFileAssociationRunnable;
-
-/**
- * JDStartupClass
- * 
- * @project Java Decompiler Eclipse Plugin
- * @version 0.1.4
- */
-public class JDStartupClass implements IStartup {
-	public void earlyStartup() {
-		Display.getDefault().asyncExec(() -> {
-            new SetupClassFileAssociationRunnable().run();
-            System.out.println("JDStartup: Editor associations configured.");
-        });
-	}
-}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util;
+
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+import org.jd.ide.eclipse.util.cache.SourceCache;
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics;
+import org.jd.ide.eclipse.util.printer.PrinterPool;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Services of the decompilations, free of Eclipse dependencies: created by
+ * the activation of the plugin, and by the startup benchmark without Eclipse.
+ * <p>
+ * The caches and the printers are created with the services, the services
+ * loading the JD-Core classes or starting threads on first use: the archive
+ * registry, the JMX metrics and the decompilation threads. The problems not
+ * preventing the decompilations are reported to {@link #warn(String, Throwable)}.
+ */
+public class DecompilerServices implements AutoCloseable {
+    // Time given to the running decompilations by close()
+    protected static final long TERMINATION_TIMEOUT = 5;
+
+    protected final SourceCache sourceCache;
+    protected final DiskSourceCache diskSourceCache;
+    protected final PrinterPool printerPool;
+    protected final MemoryBudget memoryBudget;
+
+    protected ArchiveRegistry archiveRegistry;
+    protected DecompilationMetrics decompilationMetrics;
+    protected DecompilationScheduler decompilationScheduler;
+
+    /**
+     * @param stateDirectory  Directory of the persistent caches.
+     * @param sourceCacheSize Size of the source cache, in bytes.
+     */
+    public DecompilerServices(File stateDirectory, long sourceCacheSize) {
+        sourceCache = new SourceCache(sourceCacheSize);
+        diskSourceCache = new DiskSourceCache(new File(stateDirectory, "sources"));
+        printerPool = new PrinterPool();
+        memoryBudget = new MemoryBudget();
+        memoryBudget.register("Decompiled sources", sourceCache);
+        memoryBudget.register("Printers", printerPool);
+    }
+
+    /**
+     * Starts shrinking the caches under heap pressure.
+     */
+    public void start() {
+        if (!memoryBudget.start()) {
+            warn("Heap usage thresholds not supported, caches are not shrunk under heap pressure", null);
+        }
+    }
+
+    public SourceCache getSourceCache() {
+        return sourceCache;
+    }
+
+    public DiskSourceCache getDiskSourceCache() {
+        return diskSourceCache;
+    }
+
+    public PrinterPool getPrinterPool() {
+        return printerPool;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized ArchiveRegistry getArchiveRegistry() {
+        if (archiveRegistry == null) {
+            archiveRegistry = new ArchiveRegistry();
+            memoryBudget.register("Archive loaders", archiveRegistry);
+        }
+        return archiveRegistry;
+    }
+
+    /**
+     * @return The metrics, published through JMX by the first call.
+     */
+    public synchronized DecompilationMetrics getDecompilationMetrics() {
+        if (decompilationMetrics == null) {
+            decompilationMetrics = new DecompilationMetrics(sourceCache, diskSourceCache);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(decompilationMetrics,
+                        new ObjectName(DecompilationMetrics.OBJECT_NAME));
+            } catch (JMException e) {
+                warn("Unable to register the decompilation metrics", e);
+            }
+        }
+        return decompilationMetrics;
+    }
+
+    public synchronized DecompilationScheduler getDecompilationScheduler() {
+        if (decompilationScheduler == null) {
+            decompilationScheduler = new DecompilationScheduler();
+        }
+        return decompilationScheduler;
+    }
+
+    /**
+     * Stops the decompilation threads, then releases the caches and the loaders. The
+     * printer pool is kept for the decompilations still running after the timeout.
+     */
+    @Override
+    public void close() {
+        memoryBudget.close();
+
+        DecompilationScheduler scheduler;
+
+        synchronized (this) {
+            scheduler = decompilationScheduler;
+            decompilationScheduler = null;
+        }
+
+        if (scheduler != null) {
+            // Running decompilations stop at their next class file read
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                    warn("Decompilations still running after " + TERMINATION_TIMEOUT + " seconds", null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            if (decompilationMetrics != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(DecompilationMetrics.OBJECT_NAME));
+                } catch (JMException e) {
+                    // Not registered
+                }
+                decompilationMetrics = null;
+            }
+        }
+
+        diskSourceCache.close();
+        sourceCache.clear();
+
+        synchronized (this) {
+            if (archiveRegistry != null) {
+                archiveRegistry.close();
+                archiveRegistry = null;
+            }
+        }
+    }
+
+    /**
+     * Reports a problem not preventing the decompilations, ignored by default.
+     *
+     * @param message Description of the problem.
+     * @param t       Cause, or null.
+     */
+    protected void warn(String message, Throwable t) {}
+}
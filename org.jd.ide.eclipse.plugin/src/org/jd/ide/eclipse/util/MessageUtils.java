@@ -18,6 +18,8 @@ public class MessageUtils extends NLS {
     // Declara los campos estáticos para cada mensaje en el archivo de propiedades
     public static String editor_error_notInClasspath;
     public static String editor_error_to_decompile;
+    public static String editor_decompiling;
+    public static String editor_error_decompiling;
 
     private MessageUtils() {
         // Constructor privado para evitar instanciación
@@ -0,0 +1,749 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.cache;
+
+import org.jd.core.v1.api.loader.LoaderException;
+import org.jd.ide.eclipse.util.loader.StampedLoader;
+import org.jd.ide.eclipse.util.printer.PrinterRecording;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent cache of decompiled sources, addressed by the content of the
+ * class files: identical classes found in different archives share entries.
+ * Sources are kept as printer recordings, rendered with the presentation
+ * options on use.
+ * <p>
+ * Entries are appended, deflated, to segment files. The index is rebuilt
+ * by scanning the segments when the cache is first used; a truncated
+ * record, left by a crash, ends the scan of its segment. Obsolete records
+ * are reclaimed by {@link #compact()}, and the oldest segments are dropped
+ * past the maximum size.
+ */
+public class DiskSourceCache implements Closeable {
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".dat";
+    protected static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    // Records of an older format end the scan of their segment
+    protected static final int RECORD_MAGIC = 0x4A44430C;
+    // Magic, key, payload length ... CRC-32
+    protected static final int RECORD_HEADER_LENGTH = 4 + 16 + 4;
+    protected static final int RECORD_TRAILER_LENGTH = 4;
+    protected static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    protected final File directory;
+    protected final long maxSize;
+
+    protected final Map<Digest, Location> index = new HashMap<>();
+    // Segments by id, oldest first
+    protected final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    protected Segment activeSegment;
+    protected boolean opened;
+    // Set while compact() copies records without the lock, up to the last id it may use
+    protected boolean compacting;
+    protected int reservedSegmentId;
+    protected int closeCount;
+
+    public DiskSourceCache(File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    public DiskSourceCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public synchronized Entry get(Digest key) throws IOException {
+        open();
+
+        Location location = index.get(key);
+
+        if (location == null) {
+            return null;
+        }
+
+        byte[] payload = read(location);
+
+        if (payload == null) {
+            // Corrupted record
+            index.remove(key);
+            location.segment.liveSize -= location.length;
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload)))) {
+            return Entry.read(in);
+        }
+    }
+
+    public synchronized void put(Digest key, Entry entry) throws IOException {
+        open();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * 1024);
+
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            entry.write(out);
+        }
+
+        byte[] payload = bytes.toByteArray();
+
+        if (payload.length > MAX_PAYLOAD_LENGTH) {
+            return;
+        }
+
+        if ((activeSegment == null) || (activeSegment.size >= SEGMENT_SIZE)) {
+            activeSegment = createSegment(nextSegmentId());
+        }
+
+        Location location = append(activeSegment, key, payload);
+        Location previous = index.put(key, location);
+
+        if (previous != null) {
+            previous.segment.liveSize -= previous.length;
+        }
+
+        dropOldestSegments();
+    }
+
+    /**
+     * @return true if enough space is wasted by obsolete records to compact.
+     */
+    public synchronized boolean needsCompaction() {
+        for (Segment segment : segments.values()) {
+            if ((segment != activeSegment) && (segment.liveSize * 2 < segment.size)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies the live records of the half-empty segments into new segments,
+     * then deletes them.
+     * <p>
+     * The live records are listed under the lock, copied without holding
+     * it, so that {@link #get(Digest)} and {@link #put(Digest, Entry)} are
+     * not blocked meanwhile, and the index is switched to the copies under
+     * the lock. Records replaced or dropped during the copy keep their new
+     * location. Concurrent calls return at once.
+     */
+    public void compact() throws IOException {
+        List<Map.Entry<Digest, Location>> records = new ArrayList<>();
+        List<Segment> sparseSegments = new ArrayList<>();
+        Map<Segment, FileChannel> channels = new HashMap<>();
+        int firstId;
+        int closed;
+
+        synchronized (this) {
+            open();
+
+            if (compacting) {
+                return;
+            }
+
+            for (Segment segment : segments.values()) {
+                if ((segment != activeSegment) && (segment.liveSize * 2 < segment.size)) {
+                    sparseSegments.add(segment);
+                    channels.put(segment, segment.channel());
+                }
+            }
+
+            if (sparseSegments.isEmpty()) {
+                return;
+            }
+
+            long liveSize = 0;
+
+            for (Map.Entry<Digest, Location> e : index.entrySet()) {
+                Location location = e.getValue();
+
+                if (channels.containsKey(location.segment)) {
+                    records.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), location));
+                    liveSize += location.length;
+                }
+            }
+
+            // Ids of the copies, a segment being full once it reaches SEGMENT_SIZE
+            firstId = nextSegmentId();
+            reservedSegmentId = firstId + (int) Math.max(0, (liveSize - 1) / SEGMENT_SIZE);
+            compacting = true;
+            closed = closeCount;
+            // Later records replacing earlier ones on scan, the records put during the copy
+            // go to a new segment, after the copies
+            activeSegment = null;
+        }
+
+        // Sequential reads
+        records.sort(Comparator.comparingInt((Map.Entry<Digest, Location> e) -> e.getValue().segment.id)
+                .thenComparingLong(e -> e.getValue().position));
+
+        List<Segment> copies = new ArrayList<>();
+        Map<Location, Location> copied = new HashMap<>();
+
+        try {
+            Segment copy = null;
+
+            for (Map.Entry<Digest, Location> e : records) {
+                Location location = e.getValue();
+                byte[] payload;
+
+                try {
+                    payload = read(channels.get(location.segment), location);
+                } catch (IOException ex) {
+                    // Segment dropped meanwhile: its records are dropped too
+                    continue;
+                }
+
+                if (payload == null) {
+                    // Corrupted record, dropped with its segment
+                    continue;
+                }
+
+                if ((copy == null) || (copy.size >= SEGMENT_SIZE)) {
+                    copy = new Segment(firstId + copies.size(), newSegmentFile(firstId + copies.size()));
+                    copies.add(copy);
+                }
+
+                copied.put(location, append(copy, e.getKey(), payload));
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                compacting = false;
+            }
+            for (Segment copy : copies) {
+                copy.close();
+                copy.file.delete();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            compacting = false;
+
+            if (closeCount != closed) {
+                // Valid segments, indexed by the next scan
+                for (Segment copy : copies) {
+                    copy.close();
+                }
+                return;
+            }
+
+            for (Segment copy : copies) {
+                copy.liveSize = 0;
+                segments.put(copy.id, copy);
+            }
+
+            for (Map.Entry<Digest, Location> e : records) {
+                Location copy = copied.get(e.getValue());
+
+                // Skip the records replaced or dropped meanwhile
+                if ((copy != null) && (index.get(e.getKey()) == e.getValue())) {
+                    index.put(e.getKey(), copy);
+                    e.getValue().segment.liveSize -= copy.length;
+                    copy.segment.liveSize += copy.length;
+                }
+            }
+
+            for (Segment segment : sparseSegments) {
+                if (segments.get(segment.id) == segment) {
+                    deleteSegment(segment);
+                }
+            }
+
+            for (Segment copy : copies) {
+                if (copy.liveSize == 0) {
+                    deleteSegment(copy);
+                }
+            }
+        }
+    }
+
+    public synchronized long getSize() {
+        long size = 0;
+
+        for (Segment segment : segments.values()) {
+            size += segment.size;
+        }
+
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+
+        segments.clear();
+        index.clear();
+        activeSegment = null;
+        opened = false;
+        closeCount++;
+    }
+
+    protected void open() throws IOException {
+        if (opened) {
+            return;
+        }
+
+        opened = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(id, new Segment(id, file));
+                    } catch (NumberFormatException ignore) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            scan(segment);
+        }
+
+        if (!segments.isEmpty()) {
+            activeSegment = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Indexes the records of a segment, later records replacing earlier ones.
+     */
+    protected void scan(Segment segment) throws IOException {
+        FileChannel channel = segment.channel();
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+
+        while (position + RECORD_HEADER_LENGTH + RECORD_TRAILER_LENGTH <= fileSize) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+
+            if (header.getInt() != RECORD_MAGIC) {
+                break;
+            }
+
+            Digest key = new Digest(header.getLong(), header.getLong());
+            int length = header.getInt();
+            int recordLength = RECORD_HEADER_LENGTH + length + RECORD_TRAILER_LENGTH;
+
+            if ((length < 0) || (length > MAX_PAYLOAD_LENGTH) || (position + recordLength > fileSize)) {
+                break;
+            }
+
+            Location location = new Location(segment, position, recordLength);
+            Location previous = index.put(key, location);
+
+            if (previous != null) {
+                previous.segment.liveSize -= previous.length;
+            }
+
+            segment.liveSize += recordLength;
+            position += recordLength;
+        }
+
+        if (position < fileSize) {
+            // Drop the incomplete tail
+            channel.truncate(position);
+        }
+
+        segment.size = position;
+    }
+
+    protected byte[] read(Location location) throws IOException {
+        return read(location.segment.channel(), location);
+    }
+
+    protected byte[] read(FileChannel channel, Location location) throws IOException {
+        int length = (int) location.length - RECORD_HEADER_LENGTH - RECORD_TRAILER_LENGTH;
+        ByteBuffer buffer = ByteBuffer.allocate(length + RECORD_TRAILER_LENGTH);
+
+        readFully(channel, buffer, location.position + RECORD_HEADER_LENGTH);
+        buffer.flip();
+
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        return (buffer.getInt() == (int) crc.getValue()) ? payload : null;
+    }
+
+    protected Location append(Segment segment, Digest key, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payload.length + RECORD_TRAILER_LENGTH);
+        record.putInt(RECORD_MAGIC).putLong(key.high).putLong(key.low).putInt(payload.length);
+        record.put(payload).putInt((int) crc.getValue());
+        record.flip();
+
+        FileChannel channel = segment.channel();
+        long position = segment.size;
+
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+
+        Location location = new Location(segment, segment.size, record.capacity());
+
+        segment.size = position;
+        segment.liveSize += record.capacity();
+
+        return location;
+    }
+
+    protected Segment createSegment(int id) {
+        Segment segment = new Segment(id, newSegmentFile(id));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    protected File newSegmentFile(int id) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return The id of a new segment, after those reserved by a running compaction.
+     */
+    protected int nextSegmentId() {
+        int id = segments.isEmpty() ? 0 : segments.lastKey();
+
+        if (compacting) {
+            id = Math.max(id, reservedSegmentId);
+        }
+
+        return id + 1;
+    }
+
+    protected void deleteSegment(Segment segment) {
+        Iterator<Location> iterator = index.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().segment == segment) {
+                iterator.remove();
+            }
+        }
+
+        segments.remove(segment.id);
+        segment.close();
+        segment.file.delete();
+
+        if (segment == activeSegment) {
+            activeSegment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        }
+    }
+
+    protected void dropOldestSegments() {
+        long size = getSize();
+
+        while ((size > maxSize) && (segments.size() > 1)) {
+            Segment oldest = segments.firstEntry().getValue();
+            size -= oldest.size;
+            deleteSegment(oldest);
+        }
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+
+            position += read;
+        }
+    }
+
+    /**
+     * @return A digest of the content of a class file, salted with the
+     *         decompiler version and the output options.
+     */
+    public static Digest digest(byte[] data, String version, int optionFingerprint) {
+        MessageDigest md = newMessageDigest();
+
+        md.update(data);
+        md.update(version.getBytes(StandardCharsets.UTF_8));
+        md.update(ByteBuffer.allocate(4).putInt(optionFingerprint).array());
+
+        return new Digest(md.digest());
+    }
+
+    public static Digest digest(byte[] data) {
+        return new Digest(newMessageDigest().digest(data));
+    }
+
+    /**
+     * @return A digest of class files decompiled together, a class and its inner classes.
+     */
+    public static Digest digestAll(List<byte[]> data) {
+        MessageDigest md = newMessageDigest();
+
+        for (byte[] d : data) {
+            md.update(d);
+        }
+
+        return new Digest(md.digest());
+    }
+
+    protected static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 128 bits of a SHA-256 digest.
+     */
+    public static final class Digest {
+        protected final long high;
+        protected final long low;
+
+        public Digest(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        protected Digest(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            this.high = buffer.getLong();
+            this.low = buffer.getLong();
+        }
+
+        public long getHigh() { return high; }
+        public long getLow() { return low; }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Digest) && (((Digest) obj).high == high) && (((Digest) obj).low == low);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (high ^ (high >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+
+    /**
+     * Recorded decompilation of a class, with the stamps of the other class
+     * files read by the decompiler, inner classes for instance. The classes
+     * looked up but not found are recorded too, without stamp.
+     */
+    public static class Entry {
+        protected final int majorVersion;
+        protected final int minorVersion;
+        protected final Map<String, Long> dependencies;
+        protected final PrinterRecording recording;
+
+        public Entry(int majorVersion, int minorVersion, Map<String, Long> dependencies, PrinterRecording recording) {
+            this.majorVersion = majorVersion;
+            this.minorVersion = minorVersion;
+            this.dependencies = dependencies;
+            this.recording = recording;
+        }
+
+        public int getMajorVersion() { return majorVersion; }
+        public int getMinorVersion() { return minorVersion; }
+        public Map<String, Long> getDependencies() { return Collections.unmodifiableMap(dependencies); }
+        public PrinterRecording getRecording() { return recording; }
+
+        /**
+         * @return true if the dependencies found by 'loader' did not change,
+         *         and if the ones not found are still missing. The class files
+         *         are not read.
+         */
+        public boolean isValid(StampedLoader loader) throws LoaderException {
+            for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+                if (!Objects.equals(loader.getStamp(dependency.getKey()), dependency.getValue())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        protected void write(DataOutputStream out) throws IOException {
+            out.writeInt(majorVersion);
+            out.writeInt(minorVersion);
+            out.writeInt(dependencies.size());
+
+            for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+                Long stamp = dependency.getValue();
+
+                out.writeUTF(dependency.getKey());
+                out.writeBoolean(stamp != null);
+
+                if (stamp != null) {
+                    out.writeLong(stamp);
+                }
+            }
+
+            recording.write(out);
+        }
+
+        protected static Entry read(DataInputStream in) throws IOException {
+            int majorVersion = in.readInt();
+            int minorVersion = in.readInt();
+            int count = in.readInt();
+            Map<String, Long> dependencies = new LinkedHashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                String internalName = in.readUTF();
+                dependencies.put(internalName, in.readBoolean() ? in.readLong() : null);
+            }
+
+            return new Entry(majorVersion, minorVersion, dependencies, PrinterRecording.read(in));
+        }
+    }
+
+    /**
+     * Loader recording the stamps of the class files loaded, except the
+     * decompiled one, and the classes not found.
+     */
+    public static class TrackingLoader implements StampedLoader {
+        protected final StampedLoader loader;
+        protected final String internalTypeName;
+        // Null stamps for the classes not found
+        protected final Map<String, Long> dependencies = new LinkedHashMap<>();
+
+        public TrackingLoader(StampedLoader loader, String internalTypeName) {
+            this.loader = loader;
+            this.internalTypeName = internalTypeName;
+        }
+
+        public Map<String, Long> getDependencies() { return dependencies; }
+
+        @Override
+        public boolean canLoad(String internalName) {
+            boolean found = loader.canLoad(internalName);
+
+            if (!found && !internalName.equals(internalTypeName)) {
+                dependencies.putIfAbsent(internalName, null);
+            }
+
+            return found;
+        }
+
+        @Override
+        public byte[] load(String internalName) throws LoaderException {
+            byte[] data = loader.load(internalName);
+
+            if (!internalName.equals(internalTypeName)) {
+                dependencies.put(internalName, (data == null) ? null : loader.getStamp(internalName));
+            }
+
+            return data;
+        }
+
+        @Override
+        public Long getStamp(String internalName) throws LoaderException {
+            return loader.getStamp(internalName);
+        }
+    }
+
+    protected static class Segment {
+        protected final int id;
+        protected final File file;
+        protected FileChannel channel;
+        protected long size;
+        protected long liveSize;
+
+        protected Segment(int id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        protected FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            return channel;
+        }
+
+        protected void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                    // Nothing to do
+                }
+
+                channel = null;
+            }
+        }
+    }
+
+    protected static class Location {
+        protected final Segment segment;
+        protected final long position;
+        protected final long length;
+
+        protected Location(Segment segment, long position, long length) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
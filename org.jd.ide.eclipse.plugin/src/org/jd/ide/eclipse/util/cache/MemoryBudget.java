@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.cache;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Heap shared by the caches of the plugin, released under heap pressure.
+ * <p>
+ * A threshold is set on the heap pools supporting one, at a ratio of their
+ * maximum size, on their usage after garbage collection if supported. Each
+ * time a pool is found above it, the registered consumers are shrunk,
+ * largest first, to {@link #SHED_RATIO} of their size: each one releases
+ * its least recently used entries first. Thresholds already set lower by
+ * another component are kept, and restored by {@link #close()}.
+ */
+public class MemoryBudget implements Closeable {
+    public static final double DEFAULT_THRESHOLD_RATIO = 0.8;
+    // Part of its size a consumer keeps after a notification
+    protected static final double SHED_RATIO = 0.5;
+
+    protected final double thresholdRatio;
+    protected final Map<String, Consumer> consumers = new LinkedHashMap<>();
+    // Pools whose threshold was set -> previous threshold
+    protected final Map<MemoryPoolMXBean, Long> pools = new LinkedHashMap<>();
+    protected NotificationListener listener;
+
+    protected long pressureCount;
+    protected long releasedSize;
+
+    public MemoryBudget() {
+        this(DEFAULT_THRESHOLD_RATIO);
+    }
+
+    /**
+     * @param thresholdRatio Part of the maximum size of a heap pool above which caches are shrunk.
+     */
+    public MemoryBudget(double thresholdRatio) {
+        this.thresholdRatio = thresholdRatio;
+    }
+
+    /**
+     * @param name Name of the consumer, shown with its usage.
+     */
+    public synchronized void register(String name, Consumer consumer) {
+        consumers.put(name, consumer);
+    }
+
+    public synchronized void unregister(String name) {
+        consumers.remove(name);
+    }
+
+    /**
+     * Sets the thresholds of the heap pools, and listens to their notifications.
+     *
+     * @return false if no heap pool supports a threshold.
+     */
+    public synchronized boolean start() {
+        if (listener != null) {
+            return true;
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+
+            if ((pool.getType() != MemoryType.HEAP) || !pool.isValid() || (max <= 0)) {
+                continue;
+            }
+
+            long threshold = (long) (max * thresholdRatio);
+
+            if (pool.isCollectionUsageThresholdSupported()) {
+                long previous = pool.getCollectionUsageThreshold();
+
+                if ((previous == 0) || (previous > threshold)) {
+                    pool.setCollectionUsageThreshold(threshold);
+                }
+                pools.put(pool, previous);
+            } else if (pool.isUsageThresholdSupported()) {
+                long previous = pool.getUsageThreshold();
+
+                if ((previous == 0) || (previous > threshold)) {
+                    pool.setUsageThreshold(threshold);
+                }
+                pools.put(pool, previous);
+            }
+        }
+
+        if (pools.isEmpty()) {
+            return false;
+        }
+
+        listener = this::handleNotification;
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+        return true;
+    }
+
+    protected void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type) ||
+                MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)) {
+            shed();
+        }
+    }
+
+    /**
+     * Shrinks the consumers, largest first, to {@link #SHED_RATIO} of their size.
+     *
+     * @return The number of bytes released.
+     */
+    public long shed() {
+        List<Consumer> list;
+
+        synchronized (this) {
+            list = new ArrayList<>(consumers.values());
+        }
+
+        long[] sizes = new long[list.size()];
+        Integer[] order = new Integer[list.size()];
+
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = list.get(i).getRetainedSize();
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (i, j) -> Long.compare(sizes[j], sizes[i]));
+
+        long released = 0;
+
+        for (int i : order) {
+            if (sizes[i] > 0) {
+                released += list.get(i).shrink((long) (sizes[i] * SHED_RATIO));
+            }
+        }
+
+        synchronized (this) {
+            pressureCount++;
+            releasedSize += released;
+        }
+
+        return released;
+    }
+
+    /**
+     * @return The estimated heap retained by each consumer, in bytes, by name.
+     */
+    public Map<String, Long> getUsage() {
+        Map<String, Consumer> copy;
+
+        synchronized (this) {
+            copy = new LinkedHashMap<>(consumers);
+        }
+
+        Map<String, Long> usage = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Consumer> entry : copy.entrySet()) {
+            usage.put(entry.getKey(), entry.getValue().getRetainedSize());
+        }
+
+        return usage;
+    }
+
+    public synchronized boolean isStarted() { return listener != null; }
+    public synchronized long getPressureCount() { return pressureCount; }
+    public synchronized long getReleasedSize() { return releasedSize; }
+
+    @Override
+    public synchronized void close() {
+        if (listener != null) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+            } catch (ListenerNotFoundException ignore) {
+                // Nothing to do, not listening anymore
+            }
+            listener = null;
+        }
+
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : pools.entrySet()) {
+            MemoryPoolMXBean pool = entry.getKey();
+
+            if (pool.isValid()) {
+                if (pool.isCollectionUsageThresholdSupported()) {
+                    pool.setCollectionUsageThreshold(entry.getValue());
+                } else {
+                    pool.setUsageThreshold(entry.getValue());
+                }
+            }
+        }
+
+        pools.clear();
+        consumers.clear();
+    }
+
+    /**
+     * Cache whose entries can be released under heap pressure.
+     */
+    public interface Consumer {
+        /**
+         * @return The estimated heap retained, in bytes.
+         */
+        long getRetainedSize();
+
+        /**
+         * Releases the least recently used entries until at most 'size' bytes are retained.
+         *
+         * @return The number of bytes released.
+         */
+        long shrink(long size);
+    }
+}
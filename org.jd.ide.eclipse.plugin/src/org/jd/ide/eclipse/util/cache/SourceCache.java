@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Byte-bounded LRU cache of decompiled sources.
+ * <p>
+ * Cached arrays are shared: callers must not modify them.
+ */
+public class SourceCache implements MemoryBudget.Consumer {
+    // Approximate footprint of an entry, key and array headers included
+    protected static final int ENTRY_OVERHEAD = 128;
+
+    protected final LinkedHashMap<Key, char[]> map = new LinkedHashMap<>(64, 0.75f, true);
+
+    protected long maxSize;
+    protected long size;
+
+    protected long hitCount;
+    protected long missCount;
+    protected long evictionCount;
+
+    /**
+     * @param maxSize Maximum size in bytes, 0 to disable the cache.
+     */
+    public SourceCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public synchronized char[] get(Key key) {
+        char[] source = map.get(key);
+
+        if (source == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+
+        return source;
+    }
+
+    /**
+     * Checks the presence of an entry, without counting a hit or a miss.
+     */
+    public synchronized boolean contains(Key key) {
+        return map.containsKey(key);
+    }
+
+    public synchronized void put(Key key, char[] source) {
+        long weight = weight(key, source);
+
+        if (weight > maxSize) {
+            return;
+        }
+
+        char[] previous = map.put(key, source);
+
+        if (previous != null) {
+            size -= weight(key, previous);
+        }
+
+        size += weight;
+        trim(maxSize);
+    }
+
+    /**
+     * Removes the entries matching a filter, for instance those of changed classes.
+     *
+     * @return The number of entries removed.
+     */
+    public synchronized int removeIf(Predicate<Key> filter) {
+        Iterator<Map.Entry<Key, char[]>> iterator = map.entrySet().iterator();
+        int count = 0;
+
+        while (iterator.hasNext()) {
+            Map.Entry<Key, char[]> entry = iterator.next();
+
+            if (filter.test(entry.getKey())) {
+                size -= weight(entry.getKey(), entry.getValue());
+                iterator.remove();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized long getRetainedSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized long shrink(long target) {
+        long previousSize = size;
+        trim(target);
+        return previousSize - size;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trim(maxSize);
+    }
+
+    public synchronized long getMaxSize() { return maxSize; }
+    public synchronized long getSize() { return size; }
+    public synchronized int getEntryCount() { return map.size(); }
+    public synchronized long getHitCount() { return hitCount; }
+    public synchronized long getMissCount() { return missCount; }
+    public synchronized long getEvictionCount() { return evictionCount; }
+
+    protected void trim(long limit) {
+        Iterator<Map.Entry<Key, char[]>> iterator = map.entrySet().iterator();
+
+        while ((size > limit) && iterator.hasNext()) {
+            Map.Entry<Key, char[]> entry = iterator.next();
+            size -= weight(entry.getKey(), entry.getValue());
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    protected static long weight(Key key, char[] source) {
+        return ENTRY_OVERHEAD + 2L * (source.length + key.archive.length() + key.internalTypeName.length());
+    }
+
+    /**
+     * Identifies a decompiled source: archive, class and output options.
+     */
+    public static final class Key {
+        protected final String archive;
+        protected final String internalTypeName;
+        protected final int optionFingerprint;
+        protected final int hashCode;
+
+        /**
+         * @param archive           Identity of the archive, changing when the archive is rewritten.
+         * @param internalTypeName  Internal name of the class.
+         * @param optionFingerprint Fingerprint of the options affecting the output.
+         */
+        public Key(String archive, String internalTypeName, int optionFingerprint) {
+            this.archive = archive;
+            this.internalTypeName = internalTypeName;
+            this.optionFingerprint = optionFingerprint;
+            this.hashCode = (31 * archive.hashCode() + internalTypeName.hashCode()) * 31 + optionFingerprint;
+        }
+
+        public String getArchive() { return archive; }
+        public String getInternalTypeName() { return internalTypeName; }
+        public int getOptionFingerprint() { return optionFingerprint; }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return (hashCode == other.hashCode) && (optionFingerprint == other.optionFingerprint) &&
+                    internalTypeName.equals(other.internalTypeName) && archive.equals(other.archive);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
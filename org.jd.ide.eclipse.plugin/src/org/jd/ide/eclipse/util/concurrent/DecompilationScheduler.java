@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Threads running the decompilations, with a foreground lane for the
+ * classes an editor waits for and a background lane for the other work.
+ * <p>
+ * At most one thread per core runs. Queued foreground tasks run before
+ * queued background ones, and background tasks leave one thread to the
+ * foreground lane when there are several cores. Tasks submitted with the
+ * same key while one is queued or running share its computation; a
+ * foreground submission promotes a queued background task.
+ * <p>
+ * Each submission returns its own future: canceling it withdraws the
+ * caller, and the computation is canceled when no caller is left. A
+ * canceled task still running is not shared anymore: a new submission of
+ * its key starts a new task.
+ */
+public class DecompilationScheduler {
+    public enum Priority { FOREGROUND, BACKGROUND }
+
+    public interface Computation<T> {
+        /**
+         * @param canceled true once all the callers withdrew, or the scheduler was shut down.
+         */
+        T compute(BooleanSupplier canceled) throws Exception;
+    }
+
+    protected static final int QUEUED = 0;
+    protected static final int RUNNING = 1;
+    protected static final int DONE = 2;
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition available = lock.newCondition();
+    // Tasks are not removed on promotion or cancellation, but skipped once not queued
+    protected final ArrayDeque<Task<?>> foreground = new ArrayDeque<>();
+    protected final ArrayDeque<Task<?>> background = new ArrayDeque<>();
+    // Queued or running tasks, by key
+    protected final Map<Object, Task<?>> tasks = new HashMap<>();
+    protected final Thread[] workers;
+    protected final int maxBackgroundCount;
+
+    protected int runningBackgroundCount;
+    protected boolean shutdown;
+
+    public DecompilationScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount Maximum number of concurrent decompilations.
+     */
+    public DecompilationScheduler(int threadCount) {
+        this.workers = new Thread[Math.max(1, threadCount)];
+        this.maxBackgroundCount = Math.max(1, workers.length - 1);
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "JD decompiler #" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @param key         Identity of the computation, shared by the concurrent
+     *                    submissions of the same key, or null.
+     * @param priority    Lane of the task.
+     * @param computation Work to run, if no task of the same key is queued or running.
+     * @return The future of this caller.
+     * @throws RejectedExecutionException if the scheduler is shut down.
+     */
+    public <T> Future<T> submit(Object key, Priority priority, Computation<T> computation) {
+        Task<T> task;
+        boolean callerRuns = false;
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Scheduler shut down");
+            }
+
+            @SuppressWarnings("unchecked")
+            Task<T> existing = (key == null) ? null : (Task<T>) tasks.get(key);
+
+            if ((existing != null) && existing.canceled) {
+                // All its callers withdrew: it is ending without result, replaced by a new task
+                existing = null;
+            }
+
+            if (existing != null) {
+                task = existing;
+
+                if ((priority == Priority.FOREGROUND) && (task.priority == Priority.BACKGROUND) && (task.state == QUEUED)) {
+                    task.priority = Priority.FOREGROUND;
+                    foreground.add(task);
+                    available.signal();
+                }
+            } else {
+                task = new Task<>(key, priority, computation);
+
+                if (key != null) {
+                    tasks.put(key, task);
+                }
+
+                if (isWorkerThread()) {
+                    // Waiting for another worker could exhaust the threads: run it now
+                    task.state = RUNNING;
+                    callerRuns = true;
+                } else {
+                    (priority == Priority.FOREGROUND ? foreground : background).add(task);
+                    available.signal();
+                }
+            }
+
+            task.callerCount++;
+        } finally {
+            lock.unlock();
+        }
+
+        if (callerRuns) {
+            run(task);
+        }
+
+        return new Handle<>(task);
+    }
+
+    /**
+     * @return true if the current thread runs the tasks of this scheduler.
+     */
+    public boolean isWorkerThread() {
+        Thread current = Thread.currentThread();
+
+        for (Thread worker : workers) {
+            if (worker == current) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * Cancels the queued tasks and signals the running ones to stop. No task is accepted afterwards.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+
+            for (Task<?> task : tasks.values()) {
+                task.canceled = true;
+            }
+
+            cancelQueued(foreground);
+            cancelQueued(background);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the threads ended before the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (Thread worker : workers) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (millis > 0) {
+                worker.join(millis);
+            }
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected void cancelQueued(ArrayDeque<Task<?>> queue) {
+        for (Task<?> task = queue.poll(); task != null; task = queue.poll()) {
+            if (task.state == QUEUED) {
+                task.state = DONE;
+                task.result.cancel(false);
+            }
+        }
+        tasks.values().removeIf(task -> task.state == DONE);
+    }
+
+    protected void work() {
+        for (;;) {
+            Task<?> task;
+
+            lock.lock();
+            try {
+                while ((task = poll()) == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    available.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            run(task);
+        }
+    }
+
+    /**
+     * @return The next task to run, marked as running, or null. Called with the lock held.
+     */
+    protected Task<?> poll() {
+        Task<?> task;
+
+        while ((task = foreground.poll()) != null) {
+            if (task.state == QUEUED) {
+                task.state = RUNNING;
+                return task;
+            }
+        }
+
+        if (runningBackgroundCount < maxBackgroundCount) {
+            while ((task = background.poll()) != null) {
+                if (task.state == QUEUED) {
+                    task.state = RUNNING;
+                    task.backgroundLane = true;
+                    runningBackgroundCount++;
+                    return task;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    protected <T> void run(Task<T> task) {
+        try {
+            task.result.complete(task.computation.compute(() -> task.canceled));
+        } catch (Throwable t) {
+            task.result.completeExceptionally(t);
+        } finally {
+            lock.lock();
+            try {
+                task.state = DONE;
+
+                if (task.key != null) {
+                    tasks.remove(task.key, task);
+                }
+                if (task.backgroundLane) {
+                    runningBackgroundCount--;
+                    available.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Withdraws a caller, canceling the task when no caller is left.
+     */
+    protected void release(Task<?> task) {
+        lock.lock();
+        try {
+            if ((--task.callerCount == 0) && (task.state != DONE)) {
+                task.canceled = true;
+
+                if (task.state == QUEUED) {
+                    task.state = DONE;
+                    task.result.cancel(false);
+
+                    if (task.key != null) {
+                        tasks.remove(task.key, task);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected static class Task<T> {
+        protected final Object key;
+        protected final Computation<T> computation;
+        protected final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // Guarded by the lock of the scheduler
+        protected Priority priority;
+        protected int state = QUEUED;
+        protected int callerCount;
+        protected boolean backgroundLane;
+        protected volatile boolean canceled;
+
+        Task(Object key, Priority priority, Computation<T> computation) {
+            this.key = key;
+            this.priority = priority;
+            this.computation = computation;
+        }
+    }
+
+    protected class Handle<T> implements Future<T> {
+        protected final Task<T> task;
+        protected volatile boolean canceled;
+
+        Handle(Task<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (canceled || task.result.isDone()) {
+                    return false;
+                }
+                canceled = true;
+            }
+
+            release(task);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return canceled || task.result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return canceled || task.result.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            if (canceled) {
+                throw new CancellationException();
+            }
+            return task.result.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (canceled) {
+                throw new CancellationException();
+            }
+            return task.result.get(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.concurrent;
+
+import java.util.concurrent.Phaser;
+
+/**
+ * Running tasks of a caller sharing resources it releases, a lease or a
+ * builder for instance.
+ * <p>
+ * Canceling the future of a running task does not wait for its end: each
+ * task enters the group when it starts and exits it when it ends, and
+ * {@link #close()} waits for the tasks inside. Tasks starting after the
+ * group was closed are refused.
+ */
+public class TaskGroup {
+    // One party for the owner of the group, plus one per running task
+    protected final Phaser phaser = new Phaser(1);
+
+    /**
+     * @return false if the group is closed: the task must return without running.
+     */
+    public boolean enter() {
+        return phaser.register() >= 0;
+    }
+
+    /**
+     * Called in the finally block of the tasks entered.
+     */
+    public void exit() {
+        phaser.arriveAndDeregister();
+    }
+
+    /**
+     * Waits for the end of the tasks inside the group, and refuses the others.
+     */
+    public void close() {
+        if (!phaser.isTerminated()) {
+            // The phaser terminates once the last party deregistered
+            phaser.awaitAdvance(phaser.arriveAndDeregister());
+        }
+    }
+}
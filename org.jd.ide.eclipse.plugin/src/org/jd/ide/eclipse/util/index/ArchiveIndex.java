@@ -0,0 +1,569 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.index;
+
+import org.jd.ide.eclipse.util.cache.DiskSourceCache.Digest;
+import org.jd.ide.eclipse.util.printer.PrinterRecording;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index of the decompiled classes of an archive: string
+ * constants, declared and referenced names, each mapped to the top level
+ * classes containing it.
+ * <p>
+ * Terms are kept once per archive, and each class keeps the ids of its
+ * terms with the digest of its class files, so that an index can be
+ * updated from the previous one by decompiling only the classes changed.
+ * Indexes are immutable, and can be searched concurrently.
+ * <p>
+ * Names are searched by binary search, in the names sorted from each of
+ * their segments, or in the reversed names for the patterns starting with
+ * '*'. String constants, and names matched by patterns starting and
+ * ending with '*', are scanned.
+ */
+public class ArchiveIndex {
+    public enum Kind { STRING, REFERENCE, DECLARATION }
+
+    protected static final int MAGIC = 0x4A444958;
+    protected static final int FORMAT_VERSION = 2;
+    protected static final int[] NO_IDS = new int[0];
+
+    protected final String identity;
+    protected final String[] classNames;
+    protected final Digest[] digests;
+    // Sorted term ids, per class
+    protected final int[][] classTerms;
+    // Kind and text, see term(Kind, String)
+    protected final String[] terms;
+    // Class ids, per term
+    protected final int[][] postings;
+    protected final Map<String, Integer> classIds;
+    protected final long retainedSize;
+    // Built on first search
+    protected volatile SortedNames sortedNames;
+
+    protected ArchiveIndex(String identity, String[] classNames, Digest[] digests, int[][] classTerms, String[] terms) {
+        this.identity = identity;
+        this.classNames = classNames;
+        this.digests = digests;
+        this.classTerms = classTerms;
+        this.terms = terms;
+        this.postings = invert(classTerms, terms.length);
+        this.classIds = new HashMap<>(classNames.length * 2);
+
+        for (int i = 0; i < classNames.length; i++) {
+            classIds.put(classNames[i], i);
+        }
+
+        this.retainedSize = estimateRetainedSize();
+    }
+
+    /**
+     * @return The approximate heap size of the index: strings, digests,
+     *         id arrays and map entries.
+     */
+    protected long estimateRetainedSize() {
+        long size = 0;
+
+        for (int i = 0; i < classNames.length; i++) {
+            size += 40 + classNames[i].length() + 32 + 16 + 4L * classTerms[i].length + 48;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            size += 40 + terms[i].length() + 16 + 4L * postings[i].length;
+        }
+
+        return size;
+    }
+
+    /**
+     * @return The encoded term, the kind followed by the text.
+     */
+    public static String term(Kind kind, String text) {
+        return (char) ('0' + kind.ordinal()) + text;
+    }
+
+    protected static int[][] invert(int[][] classTerms, int termCount) {
+        int[] counts = new int[termCount];
+
+        for (int[] ids : classTerms) {
+            for (int id : ids) {
+                counts[id]++;
+            }
+        }
+
+        int[][] postings = new int[termCount][];
+
+        for (int i = 0; i < termCount; i++) {
+            postings[i] = (counts[i] == 0) ? NO_IDS : new int[counts[i]];
+            counts[i] = 0;
+        }
+
+        // Class ids are added in order: postings are sorted
+        for (int classId = 0; classId < classTerms.length; classId++) {
+            for (int id : classTerms[classId]) {
+                postings[id][counts[id]++] = classId;
+            }
+        }
+
+        return postings;
+    }
+
+    /**
+     * @return The archive path, size and date the index was built from.
+     */
+    public String getIdentity() {
+        return identity;
+    }
+
+    public int getClassCount() {
+        return classNames.length;
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    public long getRetainedSize() {
+        SortedNames sorted = sortedNames;
+        return retainedSize + ((sorted == null) ? 0 : sorted.getRetainedSize());
+    }
+
+    /**
+     * @return The terms of a class, if its class files did not change, or null.
+     */
+    public Collection<String> getTerms(String internalTypeName, Digest digest) {
+        Integer classId = classIds.get(internalTypeName);
+
+        if ((classId == null) || !digests[classId].equals(digest)) {
+            return null;
+        }
+
+        int[] ids = classTerms[classId];
+        List<String> list = new ArrayList<>(ids.length);
+
+        for (int id : ids) {
+            list.add(terms[id]);
+        }
+
+        return list;
+    }
+
+    /**
+     * Finds the distinct terms matching a query, then reads their postings.
+     *
+     * @param maxCount Maximum number of matches.
+     */
+    public List<Match> search(Query query, int maxCount) {
+        List<Match> matches = new ArrayList<>();
+        char prefix = term(query.kind, "").charAt(0);
+        String text = query.text;
+        int firstWildcard = indexOfWildcard(text);
+        int lastWildcard = lastIndexOfWildcard(text);
+
+        if ((query.kind == Kind.STRING) || text.isEmpty() || ((firstWildcard == 0) && (lastWildcard == text.length() - 1))) {
+            // Substring patterns
+            for (int id = 0; (id < terms.length) && (matches.size() < maxCount); id++) {
+                String term = terms[id];
+
+                if ((term.charAt(0) == prefix) && query.matches(term, 1)) {
+                    addMatches(matches, query.kind, id, maxCount);
+                }
+            }
+        } else {
+            SortedNames sorted = getSortedNames();
+            // A name may match from several of its segments
+            Set<Integer> found = new HashSet<>();
+
+            if (firstWildcard != 0) {
+                // Names, or segments of names, starting with the literal prefix
+                String key = prefix + fold((firstWildcard < 0) ? text : text.substring(0, firstWildcard));
+
+                for (int i = sorted.lowerBound(this, key, false); (i < sorted.ids.length) && (matches.size() < maxCount); i++) {
+                    int id = sorted.ids[i];
+
+                    if (!sorted.key(this, i, false).startsWith(key)) {
+                        break;
+                    }
+                    if (found.add(id) && query.matches(terms[id], 1)) {
+                        addMatches(matches, query.kind, id, maxCount);
+                    }
+                }
+            } else {
+                // Names ending with the literal suffix
+                String key = prefix + reverse(fold(text.substring(lastWildcard + 1)));
+
+                for (int i = sorted.lowerBound(this, key, true); (i < sorted.reversedIds.length) && (matches.size() < maxCount); i++) {
+                    int id = sorted.reversedIds[i];
+
+                    if (!sorted.key(this, i, true).startsWith(key)) {
+                        break;
+                    }
+                    if (found.add(id) && query.matches(terms[id], 1)) {
+                        addMatches(matches, query.kind, id, maxCount);
+                    }
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    protected void addMatches(List<Match> matches, Kind kind, int id, int maxCount) {
+        String text = terms[id].substring(1);
+
+        for (int classId : postings[id]) {
+            if (matches.size() == maxCount) {
+                break;
+            }
+            matches.add(new Match(classNames[classId], kind, text));
+        }
+    }
+
+    protected SortedNames getSortedNames() {
+        SortedNames sorted = sortedNames;
+
+        if (sorted == null) {
+            synchronized (this) {
+                sorted = sortedNames;
+                if (sorted == null) {
+                    sortedNames = sorted = new SortedNames(terms);
+                }
+            }
+        }
+
+        return sorted;
+    }
+
+    protected static int indexOfWildcard(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (isWildcard(text.charAt(i))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    protected static int lastIndexOfWildcard(String text) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            if (isWildcard(text.charAt(i))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    protected static boolean isWildcard(char c) {
+        return (c == '*') || (c == '?');
+    }
+
+    /**
+     * @return The text with its characters folded one by one, as compared by
+     *         the case insensitive patterns: sorted by folded text, the terms
+     *         matched by a literal prefix are contiguous whatever the case.
+     */
+    protected static String fold(String text) {
+        char[] chars = text.toCharArray();
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+
+        return new String(chars);
+    }
+
+    protected static String reverse(String text) {
+        return new StringBuilder(text).reverse().toString();
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, identity);
+        out.writeInt(terms.length);
+
+        for (String term : terms) {
+            writeString(out, term);
+        }
+
+        out.writeInt(classNames.length);
+
+        for (int i = 0; i < classNames.length; i++) {
+            writeString(out, classNames[i]);
+            out.writeLong(digests[i].getHigh());
+            out.writeLong(digests[i].getLow());
+            out.writeInt(classTerms[i].length);
+
+            for (int id : classTerms[i]) {
+                out.writeInt(id);
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the data was written by another version, or is corrupted.
+     */
+    public static ArchiveIndex read(DataInput in) throws IOException {
+        if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) {
+            throw new IOException("Unsupported index format");
+        }
+
+        String identity = readString(in);
+        String[] terms = new String[readCount(in)];
+
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = readString(in);
+        }
+
+        int classCount = readCount(in);
+        String[] classNames = new String[classCount];
+        Digest[] digests = new Digest[classCount];
+        int[][] classTerms = new int[classCount][];
+
+        for (int i = 0; i < classCount; i++) {
+            classNames[i] = readString(in);
+            digests[i] = new Digest(in.readLong(), in.readLong());
+            classTerms[i] = new int[readCount(in)];
+
+            for (int j = 0; j < classTerms[i].length; j++) {
+                int id = in.readInt();
+
+                if ((id < 0) || (id >= terms.length)) {
+                    throw new IOException("Corrupted index");
+                }
+                classTerms[i][j] = id;
+            }
+        }
+
+        return new ArchiveIndex(identity, classNames, digests, classTerms, terms);
+    }
+
+    // Strings longer than the 64 KB of writeUTF(): long string constants
+    protected static void writeString(DataOutput out, String s) throws IOException {
+        // Modified UTF-8: string constants may contain unpaired surrogates
+        PrinterRecording.writeString(out, s);
+    }
+
+    protected static String readString(DataInput in) throws IOException {
+        return PrinterRecording.readString(in);
+    }
+
+    protected static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+
+        if ((count < 0) || (count > 64 * 1024 * 1024)) {
+            throw new IOException("Corrupted index");
+        }
+
+        return count;
+    }
+
+    /**
+     * Collects the terms of the classes of an archive. Classes can be added concurrently.
+     */
+    public static class Builder {
+        protected final String identity;
+        protected final List<String> classNames = new ArrayList<>();
+        protected final List<Digest> digests = new ArrayList<>();
+        protected final List<int[]> classTerms = new ArrayList<>();
+        protected final Map<String, Integer> termIds = new HashMap<>();
+        protected final List<String> terms = new ArrayList<>();
+
+        public Builder(String identity) {
+            this.identity = identity;
+        }
+
+        /**
+         * @param terms Terms encoded by {@link ArchiveIndex#term(Kind, String)}.
+         */
+        public synchronized void add(String internalTypeName, Digest digest, Collection<String> terms) {
+            int[] ids = new int[terms.size()];
+            int i = 0;
+
+            for (String term : terms) {
+                Integer id = termIds.get(term);
+
+                if (id == null) {
+                    id = this.terms.size();
+                    termIds.put(term, id);
+                    this.terms.add(term);
+                }
+
+                ids[i++] = id;
+            }
+
+            Arrays.sort(ids);
+            classNames.add(internalTypeName);
+            digests.add(digest);
+            classTerms.add(ids);
+        }
+
+        public synchronized ArchiveIndex build() {
+            return new ArchiveIndex(identity, classNames.toArray(new String[0]), digests.toArray(new Digest[0]),
+                    classTerms.toArray(new int[0][]), terms.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Text searched in the terms of a kind. '*' matches any sequence of
+     * characters, and '?' any character.
+     * <p>
+     * String constants match if they contain the text. Names match if they
+     * end with the text after a dot: 'format', 'String.format' and
+     * 'java.lang.String.format' all match 'java.lang.String.format'.
+     */
+    public static class Query {
+        protected final Kind kind;
+        protected final String text;
+        protected final Pattern pattern;
+
+        public Query(Kind kind, String text, boolean caseSensitive) {
+            this.kind = kind;
+            this.text = text;
+
+            StringBuilder regex = new StringBuilder((kind == Kind.STRING) ? "" : "(?:.*\\.)?");
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+
+                if (c == '*') {
+                    regex.append(".*");
+                } else if (c == '?') {
+                    regex.append('.');
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+
+            int flags = Pattern.DOTALL | (caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            this.pattern = Pattern.compile(regex.toString(), flags);
+        }
+
+        public Kind getKind() { return kind; }
+        public String getText() { return text; }
+
+        protected boolean matches(String term, int start) {
+            Matcher matcher = pattern.matcher(term).region(start, term.length());
+            return (kind == Kind.STRING) ? matcher.find() : matcher.matches();
+        }
+    }
+
+    /**
+     * Names sorted by kind and folded text from the start of each of their
+     * segments, and by kind and reversed folded text. String constants are
+     * left out.
+     */
+    protected static class SortedNames {
+        // Term id and offset of the segment, per entry
+        protected final int[] ids;
+        protected final int[] offsets;
+        protected final int[] reversedIds;
+
+        protected SortedNames(String[] terms) {
+            char stringPrefix = term(Kind.STRING, "").charAt(0);
+            List<Object[]> segments = new ArrayList<>();
+            List<Object[]> reversed = new ArrayList<>();
+
+            for (int id = 0; id < terms.length; id++) {
+                String term = terms[id];
+
+                if (term.charAt(0) != stringPrefix) {
+                    String folded = fold(term);
+
+                    for (int offset = 1; offset > 0; offset = term.indexOf('.', offset) + 1) {
+                        segments.add(new Object[] { term.charAt(0) + folded.substring(offset), id, offset });
+                    }
+
+                    reversed.add(new Object[] { term.charAt(0) + reverse(folded.substring(1)), id });
+                }
+            }
+
+            Comparator<Object[]> byKey = Comparator.comparing(entry -> (String) entry[0]);
+
+            segments.sort(byKey);
+            reversed.sort(byKey);
+
+            this.ids = new int[segments.size()];
+            this.offsets = new int[segments.size()];
+            this.reversedIds = new int[reversed.size()];
+
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (Integer) segments.get(i)[1];
+                offsets[i] = (Integer) segments.get(i)[2];
+            }
+            for (int i = 0; i < reversedIds.length; i++) {
+                reversedIds[i] = (Integer) reversed.get(i)[1];
+            }
+        }
+
+        protected String key(ArchiveIndex index, int i, boolean reversedKey) {
+            if (reversedKey) {
+                String term = index.terms[reversedIds[i]];
+                return term.charAt(0) + reverse(fold(term.substring(1)));
+            } else {
+                String term = index.terms[ids[i]];
+                return term.charAt(0) + fold(term.substring(offsets[i]));
+            }
+        }
+
+        /**
+         * @return The first entry whose key is not less than 'key'.
+         */
+        protected int lowerBound(ArchiveIndex index, String key, boolean reversedKey) {
+            int low = 0;
+            int high = reversedKey ? reversedIds.length : ids.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (key(index, middle, reversedKey).compareTo(key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        protected long getRetainedSize() {
+            return 16 + 8L * ids.length + 16 + 4L * reversedIds.length;
+        }
+    }
+
+    public static class Match {
+        protected final String internalTypeName;
+        protected final Kind kind;
+        protected final String text;
+
+        public Match(String internalTypeName, Kind kind, String text) {
+            this.internalTypeName = internalTypeName;
+            this.kind = kind;
+            this.text = text;
+        }
+
+        public String getInternalTypeName() { return internalTypeName; }
+        public Kind getKind() { return kind; }
+        public String getText() { return text; }
+    }
+}
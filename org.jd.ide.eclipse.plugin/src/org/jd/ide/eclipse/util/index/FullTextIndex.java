@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.index;
+
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+import org.jd.ide.eclipse.util.loader.ArchiveRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Indexes of the archives, one deflated file per archive, named after
+ * the digest of its canonical path. Indexes are loaded on first use and
+ * kept in memory; under heap pressure, the least recently used ones are
+ * dropped first, to be loaded again on next use.
+ */
+public class FullTextIndex implements MemoryBudget.Consumer {
+    protected static final String FILE_SUFFIX = ".idx";
+    // Marks the archives without index file, to read the directory once
+    protected static final ArchiveIndex MISSING = new ArchiveIndex("", new String[0],
+            new DiskSourceCache.Digest[0], new int[0][], new String[0]);
+
+    protected final File directory;
+    protected final Map<String, ArchiveIndex> indexes = new ConcurrentHashMap<>();
+    // Canonical path -> tick of the last use
+    protected final Map<String, Long> useTicks = new ConcurrentHashMap<>();
+    protected final AtomicLong tick = new AtomicLong();
+
+    public FullTextIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return The last index of an archive, possibly built from a previous
+     *         version of the archive, or null.
+     * @see #isUpToDate(File, ArchiveIndex)
+     */
+    public ArchiveIndex get(File archive) {
+        String path = ArchiveRegistry.canonicalPath(archive);
+        ArchiveIndex index = indexes.computeIfAbsent(path, p -> {
+            ArchiveIndex loaded = load(getFile(p));
+            // Files named after a digest of the path: check the path anyway
+            return ((loaded != null) && loaded.getIdentity().startsWith(p + '@')) ? loaded : MISSING;
+        });
+
+        useTicks.put(path, tick.incrementAndGet());
+        return (index == MISSING) ? null : index;
+    }
+
+    public static boolean isUpToDate(File archive, ArchiveIndex index) {
+        return (index != null) && index.getIdentity().equals(ArchiveRegistry.identity(archive));
+    }
+
+    /**
+     * Replaces the index of an archive, in memory and on disk.
+     */
+    public void put(File archive, ArchiveIndex index) throws IOException {
+        String path = ArchiveRegistry.canonicalPath(archive);
+        File file = getFile(path);
+
+        indexes.put(path, index);
+        useTicks.put(path, tick.incrementAndGet());
+        directory.mkdirs();
+
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(Files.newOutputStream(temporary.toPath()))))) {
+                index.write(out);
+            }
+
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    public void remove(File archive) throws IOException {
+        String path = ArchiveRegistry.canonicalPath(archive);
+
+        indexes.remove(path);
+        useTicks.remove(path);
+        Files.deleteIfExists(getFile(path).toPath());
+    }
+
+    @Override
+    public long getRetainedSize() {
+        long size = 0;
+
+        for (ArchiveIndex index : indexes.values()) {
+            size += index.getRetainedSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Drops the least recently used indexes from memory until at most 'size'
+     * bytes are retained. Their files are kept.
+     */
+    @Override
+    public long shrink(long size) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(useTicks.entrySet());
+        long retainedSize = getRetainedSize();
+        long released = 0;
+
+        entries.sort(Map.Entry.comparingByValue());
+
+        for (Map.Entry<String, Long> entry : entries) {
+            if (retainedSize - released <= size) {
+                break;
+            }
+
+            ArchiveIndex index = indexes.remove(entry.getKey());
+
+            useTicks.remove(entry.getKey());
+            if (index != null) {
+                released += index.getRetainedSize();
+            }
+        }
+
+        return released;
+    }
+
+    protected File getFile(String canonicalPath) {
+        return new File(directory, DiskSourceCache.digest(canonicalPath.getBytes(StandardCharsets.UTF_8)) + FILE_SUFFIX);
+    }
+
+    protected static ArchiveIndex load(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(file.toPath()))))) {
+            return ArchiveIndex.read(in);
+        } catch (IOException e) {
+            // Missing, other version or corrupted: indexed again
+            return null;
+        }
+    }
+}
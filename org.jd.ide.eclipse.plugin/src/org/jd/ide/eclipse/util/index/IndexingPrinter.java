@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.index;
+
+import org.jd.core.v1.api.printer.Printer;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Kind;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Printer collecting the terms of a decompiled class: its string
+ * constants, and the qualified names of the types and members it
+ * declares and references. The text itself is ignored.
+ * <p>
+ * Usually fed by replaying a {@link org.jd.ide.eclipse.util.printer.PrinterRecording},
+ * so that indexing a class does not decompile it again.
+ */
+public class IndexingPrinter implements Printer {
+    protected final Set<String> terms = new LinkedHashSet<>();
+
+    /**
+     * @return The terms collected since the last call to {@link #start(int, int, int)},
+     *         encoded by {@link ArchiveIndex#term(Kind, String)}.
+     */
+    public Set<String> getTerms() {
+        return terms;
+    }
+
+    @Override
+    public void start(int maxLineNumber, int majorVersion, int minorVersion) {
+        terms.clear();
+    }
+
+    @Override
+    public void end() {}
+
+    @Override
+    public void printText(String text) {}
+
+    @Override
+    public void printNumericConstant(String constant) {}
+
+    @Override
+    public void printStringConstant(String constant, String ownerInternalName) {
+        if (constant != null) {
+            // Quoted and escaped by the decompiler
+            if ((constant.length() >= 2) && (constant.charAt(0) == '"') && (constant.charAt(constant.length() - 1) == '"')) {
+                constant = constant.substring(1, constant.length() - 1);
+            }
+            terms.add(ArchiveIndex.term(Kind.STRING, constant));
+        }
+    }
+
+    @Override
+    public void printKeyword(String keyword) {}
+
+    @Override
+    public void printDeclaration(int type, String internalTypeName, String name, String descriptor) {
+        if (internalTypeName != null) {
+            terms.add(ArchiveIndex.term(Kind.DECLARATION, qualifiedName(type, internalTypeName, name)));
+        }
+    }
+
+    @Override
+    public void printReference(int type, String internalTypeName, String name, String descriptor, String ownerInternalName) {
+        if (internalTypeName != null) {
+            terms.add(ArchiveIndex.term(Kind.REFERENCE, qualifiedName(type, internalTypeName, name)));
+        }
+    }
+
+    @Override
+    public void indent() {}
+
+    @Override
+    public void unindent() {}
+
+    @Override
+    public void startLine(int lineNumber) {}
+
+    @Override
+    public void endLine() {}
+
+    @Override
+    public void extraLine(int count) {}
+
+    @Override
+    public void startMarker(int type) {}
+
+    @Override
+    public void endMarker(int type) {}
+
+    /**
+     * @return 'java.util.Map.Entry' for a type, 'java.lang.String.format' for a member.
+     */
+    protected static String qualifiedName(int type, String internalTypeName, String name) {
+        String typeName = internalTypeName.replace('/', '.').replace('$', '.');
+
+        switch (type) {
+            case FIELD:
+            case METHOD:
+            case CONSTRUCTOR:
+                return (name == null) ? typeName : typeName + '.' + name;
+            default:
+                return typeName;
+        }
+    }
+}
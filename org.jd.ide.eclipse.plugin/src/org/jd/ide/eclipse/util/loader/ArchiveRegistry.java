@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.Loader;
+import org.jd.core.v1.api.loader.LoaderException;
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Plugin-wide registry of class loaders, shared by all source mappers.
+ * <p>
+ * Loaders are keyed by canonical path and stamped with the size and the
+ * modification time of the archive: a lease acquired after the archive
+ * changed gets a fresh loader, the stale one being closed once its last
+ * lease is released. Unused loaders are kept open, the least recently used
+ * ones being closed past {@link #DEFAULT_MAX_IDLE_ARCHIVES}. The classes
+ * of the archives are indexed on demand, for {@link ClasspathLoader}.
+ * <p>
+ * The classes of an archive are identified by the CRC-32 and the size of
+ * their class files, read from the central directory: a class keeps its
+ * identity, and its cached decompilations, when other classes of its
+ * archive change.
+ * <p>
+ * Under heap pressure, the least recently used idle loaders are closed
+ * first, see {@link #shrink(long)}.
+ * <p>
+ * The loaders of the class folders watched by {@link ArchiveWatcher} keep
+ * an index of their class files, updated with the changes it reports.
+ */
+public class ArchiveRegistry implements Closeable, MemoryBudget.Consumer {
+    public static final int DEFAULT_MAX_IDLE_ARCHIVES = 32;
+    // Approximate footprint of the stamp of a class, name included
+    protected static final int STAMP_SIZE = 128;
+
+    protected final Map<String, Archive> archives = new LinkedHashMap<>(16, 0.75f, true);
+    protected final int maxIdleArchives;
+    protected final ClasspathIndex index = new ClasspathIndex();
+    // Canonical paths of the class folders watched by ArchiveWatcher
+    protected final Set<String> watchedFolders = new HashSet<>();
+
+    public ArchiveRegistry() {
+        this(DEFAULT_MAX_IDLE_ARCHIVES);
+    }
+
+    public ArchiveRegistry(int maxIdleArchives) {
+        this.maxIdleArchives = maxIdleArchives;
+    }
+
+    /**
+     * @param base Path to a directory or to a jar file.
+     * @return A lease on the shared loader, to be closed after use.
+     */
+    public Lease acquire(File base) throws LoaderException {
+        return acquire(base, canonicalPath(base));
+    }
+
+    /**
+     * @param key Canonical path of 'base', resolved by the caller.
+     */
+    public Lease acquire(File base, String key) throws LoaderException {
+        long length = base.isFile() ? base.length() : 0L;
+        long lastModified = base.lastModified();
+        List<Archive> obsoletes = new ArrayList<>();
+        Archive archive;
+
+        synchronized (this) {
+            archive = archives.get(key);
+
+            if ((archive != null) && ((archive.length != length) || (archive.lastModified != lastModified))) {
+                archives.remove(key);
+                archive.stale = true;
+                if (archive.referenceCount == 0) {
+                    obsoletes.add(archive);
+                }
+                archive = null;
+            }
+
+            if (archive == null) {
+                archive = new Archive(key, length, lastModified, createLoader(base));
+                archives.put(key, archive);
+
+                if ((archive.loader instanceof DirectoryLoader) && watchedFolders.contains(key)) {
+                    ((DirectoryLoader) archive.loader).setWatched(true);
+                }
+            }
+
+            archive.referenceCount++;
+            trimIdleArchives(obsoletes);
+        }
+
+        closeAll(obsoletes);
+
+        return new Lease(archive);
+    }
+
+    /**
+     * Indexes the classes of an archive, unless done for its current content.
+     */
+    public void index(File base) throws LoaderException {
+        index(base, canonicalPath(base));
+    }
+
+    /**
+     * @param path Canonical path of 'base', resolved by the caller.
+     */
+    public void index(File base, String path) throws LoaderException {
+        String identity = path + '@' + base.length() + ':' + base.lastModified();
+
+        if (!index.isIndexed(path, identity)) {
+            try (Lease lease = acquire(base, path)) {
+                if (lease.getLoader() instanceof ListableLoader) {
+                    index.index(path, identity, ((ListableLoader) lease.getLoader()).getInternalNames());
+                }
+            }
+        }
+    }
+
+    public ClasspathIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param base             Path to a directory or to a jar file.
+     * @param internalTypeName Internal name of a top level class.
+     * @return A string identifying the current content of a class: the CRC-32
+     *         and the size of the class file and of its inner classes in an
+     *         archive, the size and the modification time of the class file
+     *         and of its inner classes in a directory.
+     */
+    public String identity(File base, String internalTypeName) {
+        if (!base.isFile()) {
+            return folderIdentity(base, internalTypeName);
+        }
+
+        try (Lease lease = acquire(base)) {
+            if (lease.getLoader() instanceof ZipLoader) {
+                // Called on the UI thread: only the entries of the class are read
+                Long stamp = ((ZipLoader) lease.getLoader()).getClassStamp(internalTypeName);
+                return lease.archive.key + '!' + ((stamp == null) ? "-" : Long.toHexString(stamp));
+            }
+        } catch (LoaderException e) {
+            // Unreadable archive: identified by its size and its modification time
+        }
+
+        return identity(base);
+    }
+
+    /**
+     * @return The stamps of the classes of the current content of an
+     *         archive, by internal name, or null if they are not available.
+     *         Stamps of top level classes include their inner classes.
+     */
+    public Map<String, Long> getClassStamps(File base) throws LoaderException {
+        try (Lease lease = acquire(base)) {
+            return getStamps(lease.archive);
+        }
+    }
+
+    /**
+     * @return The stamps of the classes of an archive, as last computed, even
+     *         if the archive changed since, or null.
+     */
+    public Map<String, Long> getCachedClassStamps(File base) {
+        Archive archive;
+
+        synchronized (this) {
+            archive = archives.get(canonicalPath(base));
+        }
+
+        return (archive == null) ? null : archive.stamps;
+    }
+
+    /**
+     * Drops the loader and the index of an archive, for instance after it
+     * was rewritten in place. Loaders still leased are closed on release.
+     */
+    public void invalidate(File base) {
+        Archive archive;
+        String key = canonicalPath(base);
+
+        index.remove(key);
+
+        synchronized (this) {
+            archive = archives.remove(key);
+            if (archive == null) {
+                return;
+            }
+            archive.stale = true;
+            if (archive.referenceCount > 0) {
+                return;
+            }
+        }
+
+        closeLoader(archive);
+    }
+
+    /**
+     * Called by {@link ArchiveWatcher} when it starts or stops watching a class folder.
+     *
+     * @param path Canonical path of the folder.
+     */
+    public void setWatched(String path, boolean watched) {
+        DirectoryLoader loader;
+
+        synchronized (this) {
+            if (watched) {
+                watchedFolders.add(path);
+            } else {
+                watchedFolders.remove(path);
+            }
+            loader = getDirectoryLoader(path);
+        }
+
+        if (loader != null) {
+            loader.setWatched(watched);
+        }
+    }
+
+    /**
+     * Called by {@link ArchiveWatcher} when a class file of a watched class
+     * folder is created or deleted.
+     */
+    public void classFileChanged(String path, String internalName, boolean exists) {
+        DirectoryLoader loader = getDirectoryLoader(path);
+
+        if (loader != null) {
+            loader.classFileChanged(internalName, exists);
+        }
+    }
+
+    /**
+     * Called by {@link ArchiveWatcher} when a watched class folder changed
+     * in a way not reported class by class.
+     */
+    public void classFolderChanged(String path) {
+        DirectoryLoader loader = getDirectoryLoader(path);
+
+        if (loader != null) {
+            loader.invalidate();
+        }
+    }
+
+    protected synchronized DirectoryLoader getDirectoryLoader(String path) {
+        Archive archive = archives.get(path);
+        return ((archive != null) && (archive.loader instanceof DirectoryLoader)) ? (DirectoryLoader) archive.loader : null;
+    }
+
+    public synchronized int size() {
+        return archives.size();
+    }
+
+    @Override
+    public synchronized long getRetainedSize() {
+        long size = 0;
+
+        for (Archive archive : archives.values()) {
+            size += archive.getRetainedSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Closes the least recently used idle loaders until at most 'size' bytes
+     * are retained. Leased loaders are kept.
+     */
+    @Override
+    public long shrink(long size) {
+        List<Archive> obsoletes = new ArrayList<>();
+        long released = 0;
+
+        synchronized (this) {
+            long retainedSize = getRetainedSize();
+            Iterator<Archive> iterator = archives.values().iterator();
+
+            while ((retainedSize - released > size) && iterator.hasNext()) {
+                Archive archive = iterator.next();
+
+                if (archive.referenceCount == 0) {
+                    iterator.remove();
+                    archive.stale = true;
+                    obsoletes.add(archive);
+                    released += archive.getRetainedSize();
+                }
+            }
+        }
+
+        closeAll(obsoletes);
+        return released;
+    }
+
+    @Override
+    public void close() {
+        List<Archive> all;
+
+        synchronized (this) {
+            all = new ArrayList<>(archives.values());
+            for (Archive archive : all) {
+                archive.stale = true;
+            }
+            archives.clear();
+        }
+
+        index.clear();
+        closeAll(all);
+    }
+
+    protected Map<String, Long> getStamps(Archive archive) throws LoaderException {
+        Map<String, Long> stamps = archive.stamps;
+
+        if ((stamps == null) && (archive.loader instanceof ZipLoader)) {
+            synchronized (archive) {
+                stamps = archive.stamps;
+                if (stamps == null) {
+                    archive.stamps = stamps = Collections.unmodifiableMap(
+                            groupStamps(((ZipLoader) archive.loader).getEntryStamps()));
+                }
+            }
+        }
+
+        return stamps;
+    }
+
+    /**
+     * Mixes the stamps of the inner classes into the stamp of their top
+     * level class, decompiled with them.
+     */
+    protected static Map<String, Long> groupStamps(Map<String, Long> entryStamps) {
+        Map<String, Long> stamps = new HashMap<>(entryStamps);
+
+        for (Map.Entry<String, Long> entry : entryStamps.entrySet()) {
+            String name = entry.getKey();
+            String outer = ListableLoader.getTopLevelTypeName(name, entryStamps.keySet());
+
+            if (!outer.equals(name)) {
+                stamps.merge(outer, mix(name.hashCode() ^ entry.getValue()), Long::sum);
+            }
+        }
+
+        return stamps;
+    }
+
+    protected static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    protected Loader createLoader(File base) throws LoaderException {
+        return base.isFile() ? new NestedZipLoader(base) : new DirectoryLoader(base);
+    }
+
+    protected void release(Archive archive) {
+        synchronized (this) {
+            if (--archive.referenceCount > 0 || !archive.stale) {
+                return;
+            }
+        }
+
+        closeLoader(archive);
+    }
+
+    protected void trimIdleArchives(List<Archive> obsoletes) {
+        int excess = archives.size() - maxIdleArchives;
+        Iterator<Archive> iterator = archives.values().iterator();
+
+        while ((excess > 0) && iterator.hasNext()) {
+            Archive archive = iterator.next();
+
+            if (archive.referenceCount == 0) {
+                iterator.remove();
+                archive.stale = true;
+                obsoletes.add(archive);
+                excess--;
+            }
+        }
+    }
+
+    protected static void closeAll(List<Archive> archives) {
+        for (Archive archive : archives) {
+            closeLoader(archive);
+        }
+    }
+
+    protected static void closeLoader(Archive archive) {
+        if (archive.loader instanceof Closeable) {
+            try {
+                ((Closeable) archive.loader).close();
+            } catch (IOException ignore) {
+                // Nothing to do, the loader is discarded
+            }
+        }
+    }
+
+    /**
+     * @return A string identifying the current content of an archive:
+     *         its canonical path, its size and its modification time.
+     */
+    /**
+     * @return The identity of the class file of a top level class in a class
+     *         folder, mixed with the sizes and the modification times of the
+     *         class files of its inner classes, which the builders may rewrite
+     *         alone.
+     */
+    protected static String folderIdentity(File base, String internalTypeName) {
+        File file = new File(base, internalTypeName + ".class");
+        String prefix = file.getName().substring(0, file.getName().length() - ".class".length()) + '$';
+        File[] innerFiles = file.getParentFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".class"));
+        long stamp = 0;
+
+        if (innerFiles != null) {
+            for (File innerFile : innerFiles) {
+                stamp += mix(innerFile.getName().hashCode() ^ mix(innerFile.length() ^ mix(innerFile.lastModified())));
+            }
+        }
+
+        return identity(file) + '+' + Long.toHexString(stamp);
+    }
+
+    public static String identity(File base) {
+        return canonicalPath(base) + '@' + (base.isFile() ? base.length() : 0L) + ':' + base.lastModified();
+    }
+
+    public static String canonicalPath(File base) {
+        try {
+            return base.getCanonicalPath();
+        } catch (IOException e) {
+            return base.getAbsolutePath();
+        }
+    }
+
+    protected static class Archive {
+        protected final String key;
+        protected final long length;
+        protected final long lastModified;
+        protected final Loader loader;
+        protected int referenceCount;
+        protected boolean stale;
+        // Stamps of the classes, by internal name, computed on first use
+        protected volatile Map<String, Long> stamps;
+
+        protected Archive(String key, long length, long lastModified, Loader loader) {
+            this.key = key;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.loader = loader;
+        }
+
+        protected long getRetainedSize() {
+            Map<String, Long> s = stamps;
+            long size = (s == null) ? 0 : (long) STAMP_SIZE * s.size();
+
+            if (loader instanceof ZipLoader) {
+                size += ((ZipLoader) loader).getRetainedSize();
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * Reference on a shared loader. Closing a lease releases the reference, not the archive.
+     */
+    public class Lease implements StampedLoader, AutoCloseable {
+        protected final Archive archive;
+        protected boolean closed;
+
+        protected Lease(Archive archive) {
+            this.archive = archive;
+        }
+
+        public Loader getLoader() { return archive.loader; }
+
+        @Override
+        public byte[] load(String internalName) throws LoaderException {
+            return archive.loader.load(internalName);
+        }
+
+        @Override
+        public boolean canLoad(String internalName) {
+            return archive.loader.canLoad(internalName);
+        }
+
+        /**
+         * @return The stamp of the loader, or the CRC-32 and the size of the
+         *         class file read by loaders without stamps.
+         */
+        @Override
+        public Long getStamp(String internalName) throws LoaderException {
+            if (archive.loader instanceof StampedLoader) {
+                return ((StampedLoader) archive.loader).getStamp(internalName);
+            }
+
+            byte[] data = archive.loader.load(internalName);
+
+            if (data == null) {
+                return null;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            return (crc.getValue() << 32) | data.length;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(archive);
+            }
+        }
+    }
+}
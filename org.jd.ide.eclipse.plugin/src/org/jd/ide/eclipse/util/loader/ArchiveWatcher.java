@@ -0,0 +1,473 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.LoaderException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches archives and class folders, and reports the classes changed in
+ * them.
+ * <p>
+ * Archives are watched through their parent folder. Once an archive has
+ * been stable for {@link #SETTLE_DELAY} ms, the registry reads its central
+ * directory again, and the changed classes are found by comparing the
+ * CRC-32 and the size of their class files with the previous stamps.
+ * Class folders are watched recursively, their changed class files being
+ * reported directly; the creations and deletions of class files are also
+ * applied at once to the index of their loader, through the registry.
+ * Events are handled by a daemon thread, started with the first watched
+ * root.
+ */
+public class ArchiveWatcher implements Closeable {
+    // Archives being rewritten, by Maven or Gradle for instance, are read once written
+    protected static final long SETTLE_DELAY = 500;
+    protected static final String CLASS_SUFFIX = ".class";
+
+    protected final ArchiveRegistry registry;
+    protected final Listener listener;
+
+    // Canonical path -> watched root
+    protected final Map<String, Root> roots = new HashMap<>();
+    // Watched folder -> roots notified of its events
+    protected final Map<WatchKey, List<Root>> keys = new HashMap<>();
+    protected WatchService watchService;
+    protected Thread thread;
+    protected boolean closed;
+
+    public ArchiveWatcher(ArchiveRegistry registry, Listener listener) {
+        this.registry = registry;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching an archive or a class folder, once per call.
+     */
+    public synchronized void watch(File base) {
+        if (closed) {
+            return;
+        }
+
+        String path = ArchiveRegistry.canonicalPath(base);
+        Root root = roots.get(path);
+
+        if (root != null) {
+            root.watchCount++;
+            return;
+        }
+
+        root = new Root(base, path, new File(path).toPath(), base.isFile());
+        root.watchCount = 1;
+        roots.put(path, root);
+
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                thread = new Thread(this::run, "JD archive watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            if (root.archive) {
+                register(root, root.path.getParent());
+            } else {
+                registerAll(root, root.path, null);
+                registry.setWatched(path, true);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not watched: changes are found when the classes are identified again
+            unregister(root);
+        }
+    }
+
+    /**
+     * Stops watching a root once it has been unwatched as many times as watched.
+     */
+    public synchronized void unwatch(File base) {
+        String path = ArchiveRegistry.canonicalPath(base);
+        Root root = roots.get(path);
+
+        if ((root != null) && (--root.watchCount == 0)) {
+            roots.remove(path);
+            unregister(root);
+        }
+    }
+
+    public synchronized int size() {
+        return roots.size();
+    }
+
+    @Override
+    public void close() {
+        Thread t;
+
+        synchronized (this) {
+            closed = true;
+
+            for (Root root : roots.values()) {
+                if (!root.archive) {
+                    registry.setWatched(root.key, false);
+                }
+            }
+
+            roots.clear();
+            keys.clear();
+            t = thread;
+            thread = null;
+
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException ignore) {
+                    // Nothing to do, the service is discarded
+                }
+                watchService = null;
+            }
+        }
+
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    protected void register(Root root, Path folder) throws IOException {
+        WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        // Folders shared by several roots have one key
+        List<Root> list = keys.computeIfAbsent(key, k -> new ArrayList<>(1));
+
+        if (!list.contains(root)) {
+            list.add(root);
+            root.keys.add(key);
+        }
+    }
+
+    /**
+     * Registers the folders of a class folder, adding their class files to
+     * 'names' if not null.
+     */
+    protected void registerAll(Root root, Path start, Set<String> names) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(root, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if ((names != null) && file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+                    names.add(root.internalName(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    protected void unregister(Root root) {
+        if (!root.archive) {
+            registry.setWatched(root.key, false);
+        }
+
+        for (WatchKey key : root.keys) {
+            List<Root> list = keys.get(key);
+
+            if (list != null) {
+                list.remove(root);
+                if (list.isEmpty()) {
+                    keys.remove(key);
+                    key.cancel();
+                }
+            }
+        }
+
+        root.keys.clear();
+    }
+
+    protected void run() {
+        try {
+            for (;;) {
+                WatchService service;
+                long timeout;
+
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    service = watchService;
+                    timeout = getTimeout(System.currentTimeMillis());
+                }
+
+                WatchKey key = (timeout < 0) ? service.take() : service.poll(timeout, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    synchronized (this) {
+                        applyEvents(key);
+                    }
+                }
+
+                notifySettledRoots();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * @return The time to wait for the next settled root, or -1 if no root changed.
+     */
+    protected long getTimeout(long now) {
+        long timeout = -1;
+
+        for (Root root : roots.values()) {
+            if (root.changeTime != 0) {
+                long remaining = Math.max(1, root.changeTime + SETTLE_DELAY - now);
+
+                if ((timeout < 0) || (remaining < timeout)) {
+                    timeout = remaining;
+                }
+            }
+        }
+
+        return timeout;
+    }
+
+    protected void applyEvents(WatchKey key) {
+        List<Root> list = keys.get(key);
+        Path folder = (Path) key.watchable();
+        long now = System.currentTimeMillis();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (list == null) {
+                continue;
+            }
+
+            for (Root root : list) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost: the whole root may have changed
+                    root.changeTime = now;
+                    if (!root.archive) {
+                        root.changedNames = null;
+                        root.unknownChanges = true;
+                        registry.classFolderChanged(root.key);
+                    }
+                } else {
+                    Path path = folder.resolve((Path) event.context());
+
+                    if (root.archive) {
+                        if (path.equals(root.path)) {
+                            root.changeTime = now;
+                        }
+                    } else {
+                        applyClassFolderEvent(root, event, path, now);
+                    }
+                }
+            }
+        }
+
+        if (!key.reset() && (list != null)) {
+            // Folder deleted
+            keys.remove(key);
+            for (Root root : list) {
+                root.keys.remove(key);
+            }
+        }
+    }
+
+    protected void applyClassFolderEvent(Root root, WatchEvent<?> event, Path path, long now) {
+        String fileName = path.getFileName().toString();
+
+        if (fileName.endsWith(CLASS_SUFFIX)) {
+            String internalName = root.internalName(path);
+
+            root.changeTime = now;
+
+            if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                registry.classFileChanged(root.key, internalName, event.kind() == StandardWatchEventKinds.ENTRY_CREATE);
+            }
+
+            if (root.changedNames != null) {
+                int index = internalName.lastIndexOf('/');
+
+                root.changedNames.add(internalName);
+                while ((index = internalName.indexOf('$', index + 1)) != -1) {
+                    // Decompiled with its outer class, the outer classes of the folder being unknown here
+                    root.changedNames.add(internalName.substring(0, index));
+                }
+            }
+        } else if ((event.kind() == StandardWatchEventKinds.ENTRY_CREATE) && Files.isDirectory(path)) {
+            root.changeTime = now;
+            registry.classFolderChanged(root.key);
+
+            try {
+                registerAll(root, path, root.changedNames);
+            } catch (IOException e) {
+                root.changedNames = null;
+                root.unknownChanges = true;
+            }
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            // Maybe a folder: its classes are not known anymore
+            root.changeTime = now;
+            root.changedNames = null;
+            root.unknownChanges = true;
+            registry.classFolderChanged(root.key);
+        }
+    }
+
+    /**
+     * Reports the changes of the roots stable for {@link #SETTLE_DELAY} ms.
+     */
+    protected void notifySettledRoots() {
+        List<Root> settled = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            for (Root root : roots.values()) {
+                if ((root.changeTime != 0) && (now - root.changeTime >= SETTLE_DELAY)) {
+                    settled.add(root);
+                }
+            }
+        }
+
+        for (Root root : settled) {
+            Set<String> changedNames;
+
+            if (root.archive) {
+                synchronized (this) {
+                    // Changes made while reading the archive are reported later
+                    root.changeTime = 0;
+                }
+                changedNames = getChangedClasses(root);
+            } else {
+                synchronized (this) {
+                    changedNames = root.unknownChanges ? null : root.changedNames;
+                    root.changedNames = new HashSet<>();
+                    root.unknownChanges = false;
+                    root.changeTime = 0;
+                }
+            }
+
+            if ((changedNames == null) || !changedNames.isEmpty()) {
+                listener.changed(root.base, changedNames);
+            }
+        }
+    }
+
+    /**
+     * Reads the central directory of a changed archive again, through the registry.
+     *
+     * @return The classes added, removed or changed, or null if unknown.
+     */
+    protected Set<String> getChangedClasses(Root root) {
+        Map<String, Long> previous = root.stamps;
+        Map<String, Long> current = null;
+
+        if (previous == null) {
+            // Stamps computed before the change, if any class was identified
+            previous = registry.getCachedClassStamps(root.base);
+        }
+
+        if (root.base.isFile()) {
+            try {
+                current = registry.getClassStamps(root.base);
+            } catch (LoaderException e) {
+                // Unreadable archive: all classes changed
+            }
+        }
+
+        root.stamps = current;
+
+        if ((previous == null) || (current == null)) {
+            return (previous == null) ? null : new HashSet<>(previous.keySet());
+        }
+
+        Set<String> changedNames = new HashSet<>();
+
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            if (!Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                changedNames.add(entry.getKey());
+            }
+        }
+
+        for (String name : previous.keySet()) {
+            if (!current.containsKey(name)) {
+                changedNames.add(name);
+            }
+        }
+
+        return changedNames;
+    }
+
+    /**
+     * Receives the changes of the watched roots, on the thread of the watcher.
+     */
+    public interface Listener {
+        /**
+         * @param base          Archive or class folder, as first watched.
+         * @param internalNames Classes added, removed or changed, or null if unknown.
+         */
+        void changed(File base, Set<String> internalNames);
+    }
+
+    protected static class Root {
+        protected final File base;
+        // Canonical path, as a string and as a path
+        protected final String key;
+        protected final Path path;
+        protected final boolean archive;
+        protected final List<WatchKey> keys = new ArrayList<>();
+        protected int watchCount;
+        // Time of the last event, 0 if no change is pending
+        protected long changeTime;
+        // Class folders: classes changed since the last report
+        protected Set<String> changedNames = new HashSet<>();
+        protected boolean unknownChanges;
+        // Archives: stamps of the classes at the last report
+        protected Map<String, Long> stamps;
+
+        protected Root(File base, String key, Path path, boolean archive) {
+            this.base = base;
+            this.key = key;
+            this.path = path;
+            this.archive = archive;
+        }
+
+        protected String internalName(Path file) {
+            String name = path.relativize(file).toString().replace(File.separatorChar, '/');
+            return name.substring(0, name.length() - CLASS_SUFFIX.length());
+        }
+    }
+}
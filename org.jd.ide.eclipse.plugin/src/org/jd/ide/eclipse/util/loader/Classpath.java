@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.LoaderException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Roots of a classpath, shared by the {@link ClasspathLoader}s of its
+ * classes.
+ * <p>
+ * The canonical paths of the roots are resolved once. The positions of
+ * the archives are set by {@link #index()}, which lists the classes of the
+ * archives not indexed yet by the registry: it is meant to run in
+ * background, the loaders asking the roots directly until it is done.
+ * {@link #invalidate()} drops the positions when an archive of the
+ * classpath changed, until the next {@link #index()}.
+ */
+public class Classpath {
+    protected final ArchiveRegistry registry;
+    protected final List<File> files;
+
+    // Resolved on first use
+    protected volatile List<Root> roots;
+    protected volatile Map<String, Root> rootsByPath;
+    // Canonical path of the indexed archives -> position of the root, null until indexed
+    protected volatile Map<String, Integer> positions;
+    // Incremented by invalidate(), so that an indexing started before is not published
+    protected int generation;
+
+    /**
+     * @param files Roots of the classpath, archives or class folders, in order.
+     */
+    public Classpath(ArchiveRegistry registry, List<File> files) {
+        this.registry = registry;
+        this.files = files;
+    }
+
+    public ArchiveRegistry getRegistry() {
+        return registry;
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return The roots of the classpath, with their canonical paths.
+     */
+    public List<Root> getRoots() {
+        List<Root> list = roots;
+
+        if (list == null) {
+            Map<String, Root> map = new HashMap<>();
+
+            list = new ArrayList<>(files.size());
+
+            for (File file : files) {
+                if (file.isFile() || file.isDirectory()) {
+                    Root root = new Root(file, ArchiveRegistry.canonicalPath(file), file.isFile(), list.size());
+
+                    if (map.putIfAbsent(root.path, root) == null) {
+                        list.add(root);
+                    }
+                }
+            }
+
+            rootsByPath = map;
+            roots = list = Collections.unmodifiableList(list);
+        }
+
+        return list;
+    }
+
+    /**
+     * @return The root of a canonical path, or null.
+     */
+    public Root getRoot(String path) {
+        getRoots();
+        return rootsByPath.get(path);
+    }
+
+    /**
+     * @return true if a canonical path is a root of the classpath, or if the
+     *         roots are not resolved yet.
+     */
+    public boolean contains(String path) {
+        Map<String, Root> map = rootsByPath;
+        return (map == null) || map.containsKey(path);
+    }
+
+    /**
+     * @return The positions of the indexed archives in the roots of the
+     *         classpath, by canonical path, or null until {@link #index()}
+     *         is done. Class folders are not indexed.
+     */
+    public Map<String, Integer> getPositions() {
+        return positions;
+    }
+
+    public boolean isIndexed() {
+        return positions != null;
+    }
+
+    /**
+     * Indexes the archives of the classpath not indexed yet, or changed
+     * since. Unreadable archives are left out.
+     */
+    public void index() {
+        int start;
+
+        synchronized (this) {
+            start = generation;
+        }
+
+        Map<String, Integer> map = new HashMap<>();
+
+        for (Root root : getRoots()) {
+            if (root.archive) {
+                try {
+                    registry.index(root.file, root.path);
+                    map.put(root.path, root.position);
+                } catch (LoaderException e) {
+                    // Unreadable archive: classes not found in it
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (generation == start) {
+                positions = map;
+            }
+        }
+    }
+
+    /**
+     * Drops the positions, after an archive of the classpath changed.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        positions = null;
+    }
+
+    public static class Root {
+        protected final File file;
+        protected final String path;
+        protected final boolean archive;
+        // Index in the roots of the classpath
+        protected final int position;
+
+        protected Root(File file, String path, boolean archive, int position) {
+            this.file = file;
+            this.path = path;
+            this.archive = archive;
+            this.position = position;
+        }
+
+        public File getFile() { return file; }
+        public String getPath() { return path; }
+        public boolean isArchive() { return archive; }
+        public int getPosition() { return position; }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the classes of the archives, from internal name to the
+ * canonical paths of the archives containing the class.
+ * <p>
+ * Roots are indexed once per content, identified as by
+ * {@link ArchiveRegistry#identity(java.io.File)}, and the index is shared
+ * by all the classpaths using them. Most classes being in one root, the
+ * value of a class is the path of its root, or an array of paths.
+ */
+public class ClasspathIndex {
+    protected static final String[] NO_ROOTS = new String[0];
+
+    // Internal name -> String or String[]
+    protected final Map<String, Object> types = new ConcurrentHashMap<>();
+    // Canonical path -> indexed root
+    protected final Map<String, Root> roots = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if the root was indexed with the given content identity.
+     */
+    public boolean isIndexed(String path, String identity) {
+        Root root = roots.get(path);
+        return (root != null) && root.identity.equals(identity);
+    }
+
+    /**
+     * Indexes the classes of a root, replacing those of a previous content.
+     */
+    public synchronized void index(String path, String identity, Collection<String> internalNames) {
+        if (isIndexed(path, identity)) {
+            return;
+        }
+
+        remove(path);
+
+        String[] names = internalNames.toArray(new String[0]);
+
+        for (String name : names) {
+            types.merge(name, path, ClasspathIndex::add);
+        }
+
+        roots.put(path, new Root(identity, names));
+    }
+
+    public synchronized void remove(String path) {
+        Root root = roots.remove(path);
+
+        if (root != null) {
+            for (String name : root.internalNames) {
+                types.computeIfPresent(name, (n, value) -> subtract(value, path));
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        types.clear();
+        roots.clear();
+    }
+
+    /**
+     * @return The canonical paths of the indexed roots containing a class.
+     */
+    public String[] find(String internalName) {
+        Object value = types.get(internalName);
+
+        if (value == null) {
+            return NO_ROOTS;
+        } else if (value instanceof String) {
+            return new String[] { (String) value };
+        } else {
+            return (String[]) value;
+        }
+    }
+
+    /**
+     * @param positions Positions of the roots in a classpath.
+     * @return The path of the first root of the classpath containing a
+     *         class, or null.
+     */
+    public String find(String internalName, Map<String, Integer> positions) {
+        Object value = types.get(internalName);
+
+        if (value instanceof String) {
+            return positions.containsKey(value) ? (String) value : null;
+        } else if (value == null) {
+            return null;
+        }
+
+        String first = null;
+        int firstPosition = Integer.MAX_VALUE;
+
+        for (String path : (String[]) value) {
+            Integer position = positions.get(path);
+
+            if ((position != null) && (position < firstPosition)) {
+                first = path;
+                firstPosition = position;
+            }
+        }
+
+        return first;
+    }
+
+    public int getRootCount() {
+        return roots.size();
+    }
+
+    public int getTypeCount() {
+        return types.size();
+    }
+
+    protected static Object add(Object value, Object path) {
+        if (value instanceof String) {
+            return value.equals(path) ? value : new String[] { (String) value, (String) path };
+        }
+
+        String[] paths = (String[]) value;
+
+        for (String p : paths) {
+            if (p.equals(path)) {
+                return value;
+            }
+        }
+
+        String[] result = Arrays.copyOf(paths, paths.length + 1);
+        result[paths.length] = (String) path;
+        return result;
+    }
+
+    protected static Object subtract(Object value, String path) {
+        if (value instanceof String) {
+            return value.equals(path) ? null : value;
+        }
+
+        String[] paths = (String[]) value;
+        int index = Arrays.asList(paths).indexOf(path);
+
+        if (index < 0) {
+            return value;
+        } else if (paths.length == 2) {
+            return paths[1 - index];
+        }
+
+        String[] result = new String[paths.length - 1];
+        System.arraycopy(paths, 0, result, 0, index);
+        System.arraycopy(paths, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    protected static class Root {
+        protected final String identity;
+        protected final String[] internalNames;
+
+        protected Root(String identity, String[] internalNames) {
+            this.identity = identity;
+            this.internalNames = internalNames;
+        }
+    }
+}
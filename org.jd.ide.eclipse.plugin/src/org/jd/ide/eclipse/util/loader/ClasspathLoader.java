@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.Loader;
+import org.jd.core.v1.api.loader.LoaderException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loader of the classes of a classpath, for the decompilation of one class.
+ * <p>
+ * Classes are searched in the archive of the decompiled class first, then
+ * in the other roots of the classpath, in order. Once the classpath is
+ * indexed, archives are looked up in the index of the registry, and only
+ * the class folders preceding the archive found are asked directly; until
+ * then, all the roots are asked directly. Leases on the other roots are acquired on first use and
+ * released by {@link #close()}.
+ */
+public class ClasspathLoader implements StampedLoader, AutoCloseable {
+    protected final ArchiveRegistry registry;
+    protected final ArchiveRegistry.Lease primary;
+    protected final Classpath classpath;
+    protected final Map<String, ArchiveRegistry.Lease> leases = new HashMap<>();
+
+    /**
+     * @param primary   Lease on the root of the decompiled class, released with this loader.
+     * @param classpath Roots of the classpath, archives or class folders.
+     */
+    public ClasspathLoader(Classpath classpath, ArchiveRegistry.Lease primary) {
+        this.registry = classpath.getRegistry();
+        this.primary = primary;
+        this.classpath = classpath;
+    }
+
+    @Override
+    public boolean canLoad(String internalName) {
+        if (primary.canLoad(internalName)) {
+            return true;
+        }
+
+        try {
+            return findLoader(internalName) != null;
+        } catch (LoaderException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public byte[] load(String internalName) throws LoaderException {
+        byte[] data = primary.load(internalName);
+
+        if (data == null) {
+            Loader loader = findLoader(internalName);
+
+            if (loader != null) {
+                data = loader.load(internalName);
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * @return The stamp of the class file loaded by {@link #load(String)}, or null.
+     */
+    @Override
+    public Long getStamp(String internalName) throws LoaderException {
+        Long stamp = primary.getStamp(internalName);
+
+        if (stamp == null) {
+            ArchiveRegistry.Lease lease = findLoader(internalName);
+
+            if (lease != null) {
+                stamp = lease.getStamp(internalName);
+            }
+        }
+
+        return stamp;
+    }
+
+    /**
+     * @return The loader of the first other root of the classpath containing a class, or null.
+     */
+    protected ArchiveRegistry.Lease findLoader(String internalName) throws LoaderException {
+        String primaryPath = primary.archive.key;
+        Map<String, Integer> positions = classpath.getPositions();
+        Classpath.Root found = null;
+
+        if (positions != null) {
+            String path = registry.getIndex().find(internalName, positions);
+
+            if ((path != null) && !path.equals(primaryPath)) {
+                found = classpath.getRoot(path);
+            }
+        }
+
+        for (Classpath.Root root : classpath.getRoots()) {
+            if ((found != null) && (root.position >= found.position)) {
+                // No class folder before the archive found by the index
+                return lease(found);
+            }
+            if (root.archive && (positions != null)) {
+                // Not in the archives, or found by the index
+                continue;
+            }
+            if (!root.path.equals(primaryPath)) {
+                ArchiveRegistry.Lease loader;
+
+                try {
+                    loader = lease(root);
+                } catch (LoaderException e) {
+                    // Unreadable archive: classes not found in it
+                    continue;
+                }
+
+                if (loader.canLoad(internalName)) {
+                    return loader;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    protected ArchiveRegistry.Lease lease(Classpath.Root root) throws LoaderException {
+        ArchiveRegistry.Lease lease = leases.get(root.path);
+
+        if (lease == null) {
+            lease = registry.acquire(root.file, root.path);
+            leases.put(root.path, lease);
+        }
+
+        return lease;
+    }
+
+    @Override
+    public void close() {
+        for (ArchiveRegistry.Lease lease : leases.values()) {
+            lease.close();
+        }
+
+        leases.clear();
+        primary.close();
+    }
+}
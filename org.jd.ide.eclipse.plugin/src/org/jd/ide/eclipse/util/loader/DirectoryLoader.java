@@ -7,42 +7,202 @@
 
 package org.jd.ide.eclipse.util.loader;
 
-import org.jd.core.v1.api.loader.Loader;
 import org.jd.core.v1.api.loader.LoaderException;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads class files from a class folder.
+ * <p>
+ * While the folder is watched by {@link ArchiveWatcher}, the class files
+ * are indexed on first use, so that {@link #canLoad(String)} does not touch
+ * the file system, and the watcher keeps the index up to date through the
+ * registry, see {@link ArchiveRegistry#classFileChanged(String, String, boolean)}.
+ * Otherwise, lookups fall back to a file stat.
+ */
+public class DirectoryLoader implements ListableLoader, StampedLoader, Closeable {
+    protected static final String CLASS_SUFFIX = ".class";
+
+    protected File root;
+    protected Path rootPath;
+
+    protected volatile boolean watched;
+    // Internal names of the class files, null until built, after unknown changes or when not watched
+    protected volatile Set<String> index;
+    // Incremented on each change, so that an index built meanwhile is not published
+    protected int changeCount;
 
-public class DirectoryLoader implements Loader {
-	protected File root;
-	
     public  DirectoryLoader(File root) throws LoaderException {
-    	this.root = root;
+        this.root = root;
+        this.rootPath = root.toPath();
     }
 
     @Override
     public byte[] load(String internalName) throws LoaderException {
-    	File file = new File(root, internalName + ".class");
-
-    	try (FileInputStream in=new FileInputStream(file); ByteArrayOutputStream out=new ByteArrayOutputStream()) {
-            byte[] buffer = new byte[1024];
-            int read = in.read(buffer);
+        try {
+            return Files.readAllBytes(rootPath.resolve(internalName + CLASS_SUFFIX));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new LoaderException(e);
+        }
+    }
 
-            while (read > 0) {
-                out.write(buffer, 0, read);
-                read = in.read(buffer);
-            }
+    /**
+     * @return A stamp of the size and of the modification time of a class file, or null.
+     */
+    @Override
+    public Long getStamp(String internalName) throws LoaderException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(rootPath.resolve(internalName + CLASS_SUFFIX), BasicFileAttributes.class);
 
-            return out.toByteArray();
+            return ArchiveRegistry.mix(attributes.size() ^ ArchiveRegistry.mix(attributes.lastModifiedTime().toMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
         } catch (IOException e) {
             throw new LoaderException(e);
-        }    	
+        }
     }
 
     @Override
     public boolean canLoad(String internalName) {
-        return new File(root, internalName + ".class").exists();
+        Set<String> names = getIndex();
+
+        if (names == null) {
+            return Files.isRegularFile(rootPath.resolve(internalName + CLASS_SUFFIX));
+        }
+
+        return names.contains(internalName);
+    }
+
+    @Override
+    public List<String> getInternalNames() throws LoaderException {
+        Set<String> names = getIndex();
+
+        if (names == null) {
+            names = ConcurrentHashMap.newKeySet();
+
+            try {
+                addClassFiles(rootPath, names);
+            } catch (IOException e) {
+                throw new LoaderException(e);
+            }
+        }
+
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * @param watched true if the changes of the folder are reported to this loader.
+     */
+    public synchronized void setWatched(boolean watched) {
+        this.watched = watched;
+        invalidate();
+    }
+
+    /**
+     * Applies the creation or the deletion of a class file to the index.
+     */
+    public synchronized void classFileChanged(String internalName, boolean exists) {
+        Set<String> names = index;
+
+        changeCount++;
+
+        if (names != null) {
+            if (exists) {
+                names.add(internalName);
+            } else {
+                names.remove(internalName);
+            }
+        }
+    }
+
+    /**
+     * Drops the index, after changes not reported class by class, like the
+     * creation or the deletion of a folder. It is rebuilt on next use.
+     */
+    public synchronized void invalidate() {
+        changeCount++;
+        index = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        watched = false;
+        index = null;
+    }
+
+    /**
+     * @return The up to date index, or null if the folder is not watched.
+     */
+    protected Set<String> getIndex() {
+        Set<String> names = index;
+
+        if ((names != null) || !watched) {
+            return names;
+        }
+
+        int start;
+
+        synchronized (this) {
+            start = changeCount;
+        }
+
+        names = ConcurrentHashMap.newKeySet();
+
+        try {
+            addClassFiles(rootPath, names);
+        } catch (IOException e) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (!watched || (changeCount != start)) {
+                // Changed meanwhile: rebuilt on next use
+                return null;
+            }
+
+            index = names;
+        }
+
+        return names;
+    }
+
+    /**
+     * Adds the class files under 'start' to 'names'.
+     */
+    protected void addClassFiles(Path start, Set<String> names) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+                    names.add(internalName(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Deleted meanwhile, or unreadable: not loadable
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    protected String internalName(Path file) {
+        String name = rootPath.relativize(file).toString().replace(File.separatorChar, '/');
+        return name.substring(0, name.length() - CLASS_SUFFIX.length());
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.Loader;
+import org.jd.core.v1.api.loader.LoaderException;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loader able to enumerate the class files it contains.
+ */
+public interface ListableLoader extends Loader {
+    /**
+     * @return Internal names of all the class files, inner classes included.
+     */
+    List<String> getInternalNames() throws LoaderException;
+
+    /**
+     * @return The class decompiled with a class file: its outermost class
+     *         in 'internalNames', a prefix of its name ending before a '$'
+     *         of its simple name, or the class itself when there is none,
+     *         as for the classes generated with a '$' in their name.
+     */
+    static String getTopLevelTypeName(String internalName, Set<String> internalNames) {
+        int index = internalName.lastIndexOf('/');
+
+        while ((index = internalName.indexOf('$', index + 1)) != -1) {
+            String outerName = internalName.substring(0, index);
+
+            if (internalNames.contains(outerName)) {
+                return outerName;
+            }
+        }
+
+        return internalName;
+    }
+}
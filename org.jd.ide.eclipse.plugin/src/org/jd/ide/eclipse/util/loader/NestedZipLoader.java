@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.LoaderException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads class files from an archive and from the archives nested in it,
+ * like the class folders and libraries of Spring Boot fat jars and of
+ * web archives.
+ * <p>
+ * Nested archives are not extracted: the central directory of a stored
+ * inner jar is read in place, in the mapped outer archive. Deflated inner
+ * jars are inflated once in memory. Classes are searched in the outer
+ * archive, in its class folders, then in the inner jars in archive order.
+ * Only the jars of the library folders are searched, as by the class
+ * loaders of fat jars and of web containers, and each one is opened when
+ * a class is first missing from the outer archive, from its class folders
+ * and from the jars before it.
+ */
+public class NestedZipLoader extends ZipLoader {
+    protected static final String[] CLASS_FOLDERS = { "BOOT-INF/classes/", "WEB-INF/classes/" };
+    protected static final String[] LIB_FOLDERS = { "BOOT-INF/lib/", "WEB-INF/lib/" };
+    protected static final byte[] JAR_SUFFIX = ".jar".getBytes(StandardCharsets.UTF_8);
+
+    protected volatile Contents contents;
+
+    public  NestedZipLoader(File zip) throws LoaderException {
+        super(zip);
+    }
+
+    protected Contents getContents() throws IOException {
+        Contents c = contents;
+
+        if (c == null) {
+            synchronized (this) {
+                c = contents;
+                if (c == null) {
+                    contents = c = new Contents(getDirectory());
+                }
+            }
+        }
+
+        return c;
+    }
+
+    @Override
+    public byte[] load(String internalName) throws LoaderException {
+        return readArchive(() -> {
+            int hash = Directory.hash(internalName, CLASS_SUFFIX);
+            Directory directory = getContents().find(internalName, hash);
+
+            return (directory == null) ? null : read(directory, directory.find(internalName, CLASS_SUFFIX, hash));
+        });
+    }
+
+    @Override
+    public ByteBuffer loadBuffer(String internalName) throws LoaderException {
+        return readArchive(() -> {
+            int hash = Directory.hash(internalName, CLASS_SUFFIX);
+            Directory directory = getContents().find(internalName, hash);
+
+            return (directory == null) ? null : directory.content(directory.find(internalName, CLASS_SUFFIX, hash));
+        });
+    }
+
+    @Override
+    public boolean canLoad(String internalName) {
+        try {
+            return readArchive(() -> getContents().find(internalName, Directory.hash(internalName, CLASS_SUFFIX)) != null);
+        } catch (LoaderException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The classes of the outer archive, of its class folders and of
+     *         its inner jars, without duplicates. Classes of the class folders
+     *         are named relatively to their folder. All the inner jars are opened.
+     */
+    @Override
+    public List<String> getInternalNames() throws LoaderException {
+        return readArchive(() -> {
+            Set<String> internalNames = new LinkedHashSet<>();
+
+            for (Directory directory : getContents().getAll()) {
+                for (int i = 0; i < directory.count; i++) {
+                    String name = directory.getName(i);
+
+                    if (name.endsWith(CLASS_SUFFIX) && !inClassFolder(name)) {
+                        internalNames.add(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+                    }
+                }
+            }
+
+            return new ArrayList<>(internalNames);
+        });
+    }
+
+    /**
+     * @return The CRC-32 and the size of the class files listed by
+     *         {@link #getInternalNames()}, the first entry of a class winning.
+     */
+    @Override
+    public Map<String, Long> getEntryStamps() throws LoaderException {
+        return readArchive(() -> {
+            Map<String, Long> stamps = new HashMap<>();
+
+            for (Directory directory : getContents().getAll()) {
+                for (int i = 0; i < directory.count; i++) {
+                    String name = directory.getName(i);
+
+                    if (name.endsWith(CLASS_SUFFIX) && !inClassFolder(name)) {
+                        stamps.putIfAbsent(name.substring(0, name.length() - CLASS_SUFFIX.length()), directory.stamp(i));
+                    }
+                }
+            }
+
+            return stamps;
+        });
+    }
+
+    /**
+     * @return The stamp of a class, in the first directory containing the class.
+     */
+    @Override
+    public Long getStamp(String internalName) throws LoaderException {
+        return readArchive(() -> {
+            int hash = Directory.hash(internalName, CLASS_SUFFIX);
+            Directory directory = getContents().find(internalName, hash);
+
+            return (directory == null) ? null : directory.stamp(directory.find(internalName, CLASS_SUFFIX, hash));
+        });
+    }
+
+    /**
+     * @return The stamp of a class and of its inner classes, in the first
+     *         directory containing the class.
+     */
+    @Override
+    public Long getClassStamp(String internalTypeName) throws LoaderException {
+        return readArchive(() -> {
+            Directory directory = getContents().find(internalTypeName, Directory.hash(internalTypeName, CLASS_SUFFIX));
+
+            return (directory == null) ? null : directory.groupStamp(internalTypeName);
+        });
+    }
+
+    /**
+     * @return true for the entries of the outer archive listed by the class folder views.
+     */
+    protected static boolean inClassFolder(String name) {
+        for (String folder : CLASS_FOLDERS) {
+            if (name.startsWith(folder)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true for the inner jars searched: the jars directly in a library folder.
+     */
+    protected static boolean isLibrary(Directory outer, int index) {
+        if (!outer.endsWith(index, JAR_SUFFIX)) {
+            return false;
+        }
+
+        String name = outer.getName(index);
+
+        for (String folder : LIB_FOLDERS) {
+            if (name.startsWith(folder) && (name.indexOf('/', folder.length()) < 0)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        Contents c = contents;
+        return (c == null) ? super.getRetainedSize() : c.getRetainedSize();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        contents = null;
+        super.close();
+    }
+
+    /**
+     * Directories of the outer archive and of its class folders, and inner
+     * jars, opened on demand.
+     */
+    protected static class Contents {
+        protected final Directory outer;
+        // Outer archive and class folders, in search order
+        protected final Directory[] directories;
+        // Entries of the inner jars in the outer archive, in archive order
+        protected final int[] jarEntries;
+        // Written under the lock: directories of the opened inner jars, and unreadable ones
+        protected final Directory[] jars;
+        protected final boolean[] unreadable;
+
+        protected Contents(Directory outer) {
+            List<Directory> list = new ArrayList<>();
+
+            list.add(outer);
+
+            for (String folder : CLASS_FOLDERS) {
+                Directory view = new Directory(outer, folder);
+
+                if (view.count > 0) {
+                    list.add(view);
+                }
+            }
+
+            int[] entries = new int[outer.count];
+            int n = 0;
+
+            for (int i = 0; i < outer.count; i++) {
+                if (isLibrary(outer, i)) {
+                    entries[n++] = i;
+                }
+            }
+
+            this.outer = outer;
+            this.directories = list.toArray(new Directory[0]);
+            this.jarEntries = Arrays.copyOf(entries, n);
+            this.jars = new Directory[n];
+            this.unreadable = new boolean[n];
+        }
+
+        /**
+         * @return The first directory containing a class, opening the inner
+         *         jars in order until found, or null.
+         */
+        protected Directory find(String internalName, int hash) {
+            for (Directory directory : directories) {
+                if (directory.find(internalName, CLASS_SUFFIX, hash) >= 0) {
+                    return directory;
+                }
+            }
+
+            for (int i = 0; i < jarEntries.length; i++) {
+                Directory jar = getJar(i);
+
+                if ((jar != null) && (jar.find(internalName, CLASS_SUFFIX, hash) >= 0)) {
+                    return jar;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return All the directories in search order, the inner jars being opened.
+         */
+        protected List<Directory> getAll() {
+            List<Directory> all = new ArrayList<>(Arrays.asList(directories));
+
+            for (int i = 0; i < jarEntries.length; i++) {
+                Directory jar = getJar(i);
+
+                if (jar != null) {
+                    all.add(jar);
+                }
+            }
+
+            return all;
+        }
+
+        /**
+         * @return The directory of an inner jar, or null if it is not a valid archive.
+         */
+        protected Directory getJar(int i) {
+            // Directories are immutable: an opened jar may be read without the lock
+            Directory jar = jars[i];
+
+            if (jar != null) {
+                return jar;
+            }
+
+            synchronized (this) {
+                if ((jars[i] == null) && !unreadable[i]) {
+                    int entry = jarEntries[i];
+
+                    try {
+                        ByteBuffer content = outer.content(entry);
+                        jars[i] = new Directory(content);
+                    } catch (IOException e) {
+                        // Not a valid archive: ignored, like by the class loaders of fat jars
+                        unreadable[i] = true;
+                    }
+                }
+
+                return jars[i];
+            }
+        }
+
+        protected synchronized long getRetainedSize() {
+            long size = 0;
+
+            for (Directory directory : directories) {
+                size += directory.getRetainedSize();
+            }
+            for (Directory jar : jars) {
+                if (jar != null) {
+                    size += jar.getRetainedSize();
+                }
+            }
+
+            return size;
+        }
+    }
+}
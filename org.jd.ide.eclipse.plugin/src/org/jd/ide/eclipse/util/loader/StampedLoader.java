@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.Loader;
+import org.jd.core.v1.api.loader.LoaderException;
+
+/**
+ * Loader able to tell whether a class file changed without reading it.
+ */
+public interface StampedLoader extends Loader {
+    /**
+     * @return A stamp changing with the class file, as its CRC-32 and its
+     *         size in an archive, or null if the class is not found.
+     */
+    Long getStamp(String internalName) throws LoaderException;
+}
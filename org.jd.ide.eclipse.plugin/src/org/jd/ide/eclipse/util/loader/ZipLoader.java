@@ -7,55 +7,874 @@
 
 package org.jd.ide.eclipse.util.loader;
 
-import org.jd.core.v1.api.loader.Loader;
 import org.jd.core.v1.api.loader.LoaderException;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-public class ZipLoader implements Loader {
-    protected HashMap<String, byte[]> map = new HashMap<>();
+/**
+ * Loads class files from a jar or zip archive.
+ * <p>
+ * The central directory of the archive is read on first use and parsed
+ * once into an open-addressing index. Entries are then read straight from
+ * a memory mapping of the archive: only the requested classes are
+ * inflated, and stored entries are exposed without copying by
+ * {@link #loadBuffer(String)}.
+ * <p>
+ * On Windows, a mapped file stays locked until the garbage collector
+ * releases the mapping, so that it cannot be replaced or deleted. Entries
+ * are read through a file channel there, released by {@link #close()}.
+ * <p>
+ * An archive truncated by another process while mapped makes the reads of
+ * the mapping fault with an {@link InternalError}, possibly raised after
+ * the read. The size of the archive is checked before reading an entry,
+ * the errors raised anyway being reported as {@link LoaderException}s.
+ * The buffers returned by {@link #loadBuffer(String)} are not checked.
+ */
+public class ZipLoader implements ListableLoader, StampedLoader, Closeable {
+    protected static final String CLASS_SUFFIX = ".class";
+    protected static final byte[] CLASS_SUFFIX_BYTES = CLASS_SUFFIX.getBytes(StandardCharsets.UTF_8);
 
-    public  ZipLoader(File zip) throws LoaderException {
-        byte[] buffer = new byte[1024 * 2];
+    protected static final int STORED = 0;
+    protected static final int DEFLATED = 8;
 
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zip))) {
-            ZipEntry ze = zis.getNextEntry();
+    protected static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    protected static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    protected static final int END_SIGNATURE = 0x06054b50;
+    protected static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    protected static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    protected static final int ZIP64_EXTRA_ID = 0x0001;
 
-            while (ze != null) {
-                if (ze.isDirectory() == false) {
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    int read = zis.read(buffer);
+    protected static final int END_HEADER_LENGTH = 22;
+    protected static final int ZIP64_LOCATOR_LENGTH = 20;
+    protected static final int ZIP64_END_HEADER_LENGTH = 56;
+    protected static final int CENTRAL_HEADER_LENGTH = 46;
+    protected static final int LOCAL_HEADER_LENGTH = 30;
 
-                    while (read > 0) {
-                        out.write(buffer, 0, read);
-                        read = zis.read(buffer);
-                    }
+    // A mapped file stays locked on Windows until the mapping is garbage collected
+    protected static final boolean MAP_ENTRIES = (File.separatorChar != '\\');
+
+    protected File zip;
+    protected volatile Directory directory;
+    // Set by close(), the archive being not opened again
+    protected boolean closed;
+
+    public  ZipLoader(File zip) throws LoaderException {
+        this.zip = zip;
+    }
+
+    /**
+     * @param buffer Archive content, for instance a region of a mapped file.
+     */
+    protected ZipLoader(ByteBuffer buffer) throws LoaderException {
+        this.directory = readArchive(() -> new Directory(buffer));
+    }
+
+    /**
+     * @throws IOException if the loader is closed.
+     */
+    protected Directory getDirectory() throws IOException {
+        Directory d = directory;
 
-                    map.put(ze.getName(), out.toByteArray());
+        if (d == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Archive closed: " + zip);
                 }
 
-                ze = zis.getNextEntry();
+                d = directory;
+                if (d == null) {
+                    directory = d = open(zip);
+                }
             }
+        }
 
-            zis.closeEntry();
-        } catch (IOException e) {
+        return d;
+    }
+
+    /**
+     * Runs a read of the archive, reporting the I/O errors and the faults
+     * of a mapping truncated meanwhile as {@link LoaderException}s.
+     */
+    protected static <T> T readArchive(ArchiveRead<T> read) throws LoaderException {
+        try {
+            return read.run();
+        } catch (IOException | InternalError e) {
+            // InternalError: archive truncated while mapped
             throw new LoaderException(e);
         }
     }
 
+    /**
+     * Reads the central directory of an archive into the heap, then maps the
+     * archive, except on Windows. The channel is kept open, to read the
+     * entries or to check the size of the archive before reading them.
+     */
+    protected static Directory open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large to be mapped: " + file);
+            }
+
+            int origin = findCentralDirectory(channel, (int) size);
+            ByteBuffer centralDirectory = readFully(channel, origin, (int) size - origin);
+            ByteBuffer mapping = MAP_ENTRIES ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+
+            return new Directory(centralDirectory, origin, mapping, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The position of the central directory, read from the end
+     *         records. It is checked when the directory is parsed.
+     */
+    protected static int findCentralDirectory(FileChannel channel, int size) throws IOException {
+        // Enough for the end records with the longest comment
+        int length = Math.min(size, END_HEADER_LENGTH + 0xFFFF + ZIP64_LOCATOR_LENGTH + ZIP64_END_HEADER_LENGTH);
+        ByteBuffer tail = readFully(channel, size - length, length).order(ByteOrder.LITTLE_ENDIAN);
+        int end = Directory.findEnd(tail, length);
+        long cdSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        int cdEnd = end;
+        int zip64End = end - ZIP64_LOCATOR_LENGTH - ZIP64_END_HEADER_LENGTH;
+
+        if ((zip64End >= 0) && (tail.getInt(end - ZIP64_LOCATOR_LENGTH) == ZIP64_LOCATOR_SIGNATURE)
+                && (tail.getInt(zip64End) == ZIP64_END_SIGNATURE)) {
+            cdSize = tail.getLong(zip64End + 40);
+            cdEnd = zip64End;
+        }
+
+        long origin = size - length + cdEnd - cdSize;
+
+        if ((cdSize < 0) || (origin < 0)) {
+            throw new IOException("Invalid central directory");
+        }
+
+        return (int) origin;
+    }
+
+    protected static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated archive");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
     @Override
     public byte[] load(String internalName) throws LoaderException {
-        return map.get(internalName + ".class");
+        return readArchive(() -> {
+            Directory d = getDirectory();
+            int index = d.find(internalName, CLASS_SUFFIX);
+
+            return (index < 0) ? null : read(d, index);
+        });
+    }
+
+    protected static byte[] read(Directory d, int index) throws IOException {
+        if (d.methods[index] == STORED) {
+            byte[] bytes = new byte[d.sizes[index]];
+            d.data(index).get(bytes);
+            return bytes;
+        }
+
+        return d.inflate(index);
+    }
+
+    /**
+     * Returns the content of a class file without copying it when the entry
+     * is stored. The returned buffer is read-only and must not outlive the loader.
+     */
+    public ByteBuffer loadBuffer(String internalName) throws LoaderException {
+        return readArchive(() -> {
+            Directory d = getDirectory();
+            int index = d.find(internalName, CLASS_SUFFIX);
+
+            return (index < 0) ? null : d.content(index);
+        });
     }
 
     @Override
     public boolean canLoad(String internalName) {
-        return map.containsKey(internalName + ".class");
+        try {
+            return readArchive(() -> getDirectory().find(internalName, CLASS_SUFFIX) >= 0);
+        } catch (LoaderException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> getInternalNames() throws LoaderException {
+        return readArchive(() -> {
+            Directory d = getDirectory();
+            List<String> internalNames = new ArrayList<>(d.count);
+
+            for (int i = 0; i < d.count; i++) {
+                String name = d.getName(i);
+
+                if (name.endsWith(CLASS_SUFFIX)) {
+                    internalNames.add(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+                }
+            }
+
+            return internalNames;
+        });
+    }
+
+    /**
+     * @return The CRC-32 and the size of the class files, by internal name,
+     *         read from the central directory only.
+     */
+    public Map<String, Long> getEntryStamps() throws LoaderException {
+        return readArchive(() -> {
+            Directory d = getDirectory();
+            Map<String, Long> stamps = new HashMap<>(d.count * 2);
+
+            for (int i = 0; i < d.count; i++) {
+                String name = d.getName(i);
+
+                if (name.endsWith(CLASS_SUFFIX)) {
+                    stamps.putIfAbsent(name.substring(0, name.length() - CLASS_SUFFIX.length()), d.stamp(i));
+                }
+            }
+
+            return stamps;
+        });
+    }
+
+    /**
+     * @return The CRC-32 and the size of a class file, read from the
+     *         central directory, or null if the archive has no such class.
+     */
+    @Override
+    public Long getStamp(String internalName) throws LoaderException {
+        return readArchive(() -> {
+            Directory d = getDirectory();
+            int index = d.find(internalName, CLASS_SUFFIX);
+
+            return (index < 0) ? null : d.stamp(index);
+        });
+    }
+
+    /**
+     * @return The stamp of a top level class, mixed with the stamps of its
+     *         inner classes as by {@link #getEntryStamps()} and
+     *         {@link ArchiveRegistry#getClassStamps(File)}, or null if the
+     *         archive has no such class. Only the entries of the class are read.
+     */
+    public Long getClassStamp(String internalTypeName) throws LoaderException {
+        return readArchive(() -> getDirectory().groupStamp(internalTypeName));
+    }
+
+    /**
+     * @return The estimated heap retained by the loader, in bytes. Mapped
+     *         regions are not counted.
+     */
+    public long getRetainedSize() {
+        Directory d = directory;
+        return (d == null) ? 0 : d.getRetainedSize();
+    }
+
+    /**
+     * Releases the archive. The loader cannot be used afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Directory d = directory;
+
+        // Mapped regions are released by the garbage collector
+        directory = null;
+        closed = true;
+
+        if ((d != null) && (d.channel != null)) {
+            d.channel.close();
+        }
+    }
+
+    /**
+     * Read of the archive, run by {@link #readArchive(ArchiveRead)}.
+     */
+    protected interface ArchiveRead<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Central directory of an archive, indexed by entry name. Names are not
+     * decoded: they are hashed and compared in place, as UTF-8 sequences.
+     */
+    protected static class Directory {
+        // Archive content from 'origin', holding at least the central directory
+        protected final ByteBuffer buffer;
+        protected final int origin;
+        // Whole archive content, or null to read the entries through 'channel'
+        protected final ByteBuffer data;
+        // Channel of the archive file, or null for an archive in memory
+        protected final FileChannel channel;
+        // true for the views on the entries of another directory, sharing its buffer
+        protected final boolean view;
+        protected final int count;
+        protected final int[] hashes;
+        protected final int[] nameOffsets;
+        protected final int[] nameLengths;
+        protected final int[] headerOffsets;
+        protected final int[] compressedSizes;
+        protected final int[] sizes;
+        protected final int[] crcs;
+        protected final byte[] methods;
+        protected final int[] table;
+        protected final int mask;
+
+        /**
+         * @param content Whole archive content.
+         */
+        protected Directory(ByteBuffer content) throws IOException {
+            this(content, 0, null, null);
+        }
+
+        /**
+         * @param buffer  Archive content from 'origin' to the end.
+         * @param data    Whole archive content, or null to read the entries
+         *                through 'channel', or from 'buffer' without channel.
+         * @param channel Archive channel, or null.
+         */
+        protected Directory(ByteBuffer buffer, int origin, ByteBuffer data, FileChannel channel) throws IOException {
+            this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            this.origin = origin;
+            this.data = (data != null) ? data.order(ByteOrder.LITTLE_ENDIAN) : (channel != null) ? null : this.buffer;
+            this.channel = channel;
+            this.view = false;
+
+            // Positions in the archive, 'origin' being the first byte of the buffer
+            int limit = origin + this.buffer.limit();
+            int end = findEnd(this.buffer, this.buffer.limit());
+            long total = u16(end + 10);
+            long cdSize = u32(end + 12);
+            long cdOffset = u32(end + 16);
+            long shift = origin + end - cdSize - cdOffset;
+
+            if ((total == 0xFFFF) || (cdSize == 0xFFFFFFFFL) || (cdOffset == 0xFFFFFFFFL)) {
+                int locator = end - 20;
+
+                if ((locator >= 0) && (this.buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE)) {
+                    long zip64End = this.buffer.getLong(locator + 8) - origin;
+
+                    if ((zip64End < 0) || (zip64End > this.buffer.limit() - 56) || (this.buffer.getInt((int) zip64End) != ZIP64_END_SIGNATURE)) {
+                        throw new IOException("Invalid zip64 end of central directory");
+                    }
+
+                    total = this.buffer.getLong((int) zip64End + 32);
+                    cdSize = this.buffer.getLong((int) zip64End + 40);
+                    cdOffset = this.buffer.getLong((int) zip64End + 48);
+                    shift = origin + locator - 56 - cdSize - cdOffset;
+                }
+            }
+
+            if ((total < 0) || (total > Integer.MAX_VALUE / 2) || (shift < 0) || (cdOffset + shift < origin)
+                    || (cdOffset + shift + cdSize > limit)) {
+                throw new IOException("Invalid central directory");
+            }
+
+            int capacity = (int) total;
+            int[] hashes = new int[capacity];
+            int[] nameOffsets = new int[capacity];
+            int[] nameLengths = new int[capacity];
+            int[] headerOffsets = new int[capacity];
+            int[] compressedSizes = new int[capacity];
+            int[] sizes = new int[capacity];
+            int[] crcs = new int[capacity];
+            byte[] methods = new byte[capacity];
+            int position = (int) (cdOffset + shift - origin);
+            int cdEnd = (int) (position + cdSize);
+            int n = 0;
+
+            for (int i = 0; i < capacity; i++) {
+                if ((position + CENTRAL_HEADER_LENGTH > cdEnd) || (this.buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE)) {
+                    throw new IOException("Invalid central directory entry");
+                }
+
+                int method = u16(position + 10);
+                int crc = this.buffer.getInt(position + 16);
+                long compressedSize = u32(position + 20);
+                long size = u32(position + 24);
+                int nameLength = u16(position + 28);
+                int extraLength = u16(position + 30);
+                int commentLength = u16(position + 32);
+                long headerOffset = u32(position + 42);
+                int nameOffset = position + CENTRAL_HEADER_LENGTH;
+
+                if (nameOffset + nameLength + extraLength + commentLength > cdEnd) {
+                    throw new IOException("Invalid central directory entry");
+                }
+
+                if ((size == 0xFFFFFFFFL) || (compressedSize == 0xFFFFFFFFL) || (headerOffset == 0xFFFFFFFFL)) {
+                    // Read the actual values from the zip64 extended information
+                    int extra = nameOffset + nameLength;
+                    int extraEnd = extra + extraLength;
+
+                    while (extra + 4 <= extraEnd) {
+                        int id = u16(extra);
+                        int fieldEnd = extra + 4 + u16(extra + 2);
+
+                        if (fieldEnd > extraEnd) {
+                            throw new IOException("Invalid extra field");
+                        }
+
+                        if (id == ZIP64_EXTRA_ID) {
+                            int field = extra + 4;
+                            if (size == 0xFFFFFFFFL) { size = u64(field, fieldEnd); field += 8; }
+                            if (compressedSize == 0xFFFFFFFFL) { compressedSize = u64(field, fieldEnd); field += 8; }
+                            if (headerOffset == 0xFFFFFFFFL) { headerOffset = u64(field, fieldEnd); }
+                            break;
+                        }
+
+                        extra = fieldEnd;
+                    }
+                }
+
+                // Skip directories
+                if ((nameLength > 0) && (this.buffer.get(nameOffset + nameLength - 1) != '/')) {
+                    if ((size < 0) || (size > Integer.MAX_VALUE) || (compressedSize < 0) || (compressedSize > Integer.MAX_VALUE)
+                            || (headerOffset < 0) || (headerOffset + shift > limit)) {
+                        throw new IOException("Invalid central directory entry");
+                    }
+
+                    hashes[n] = hashUtf8(this.buffer, nameOffset, nameLength);
+                    nameOffsets[n] = nameOffset;
+                    nameLengths[n] = nameLength;
+                    headerOffsets[n] = (int) (headerOffset + shift);
+                    compressedSizes[n] = (int) compressedSize;
+                    sizes[n] = (int) size;
+                    crcs[n] = crc;
+                    methods[n] = (byte) method;
+                    n++;
+                }
+
+                position = nameOffset + nameLength + extraLength + commentLength;
+            }
+
+            this.count = n;
+            this.hashes = hashes;
+            this.nameOffsets = nameOffsets;
+            this.nameLengths = nameLengths;
+            this.headerOffsets = headerOffsets;
+            this.compressedSizes = compressedSizes;
+            this.sizes = sizes;
+            this.crcs = crcs;
+            this.methods = methods;
+            this.table = buildTable(hashes, n);
+            this.mask = table.length - 1;
+        }
+
+        /**
+         * View on the entries of 'parent' whose name starts with 'prefix',
+         * named relatively to it. Names and data are shared with 'parent'.
+         */
+        protected Directory(Directory parent, String prefix) {
+            byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+            int n = 0;
+
+            for (int i = 0; i < parent.count; i++) {
+                if ((parent.nameLengths[i] > bytes.length) && parent.startsWith(i, bytes)) {
+                    n++;
+                }
+            }
+
+            this.buffer = parent.buffer;
+            this.origin = parent.origin;
+            this.data = parent.data;
+            this.channel = parent.channel;
+            this.view = true;
+            this.count = n;
+            this.hashes = new int[n];
+            this.nameOffsets = new int[n];
+            this.nameLengths = new int[n];
+            this.headerOffsets = new int[n];
+            this.compressedSizes = new int[n];
+            this.sizes = new int[n];
+            this.crcs = new int[n];
+            this.methods = new byte[n];
+
+            for (int i = 0, j = 0; j < n; i++) {
+                if ((parent.nameLengths[i] > bytes.length) && parent.startsWith(i, bytes)) {
+                    nameOffsets[j] = parent.nameOffsets[i] + bytes.length;
+                    nameLengths[j] = parent.nameLengths[i] - bytes.length;
+                    hashes[j] = hashUtf8(buffer, nameOffsets[j], nameLengths[j]);
+                    headerOffsets[j] = parent.headerOffsets[i];
+                    compressedSizes[j] = parent.compressedSizes[i];
+                    sizes[j] = parent.sizes[i];
+                    crcs[j] = parent.crcs[i];
+                    methods[j] = parent.methods[i];
+                    j++;
+                }
+            }
+
+            this.table = buildTable(hashes, n);
+            this.mask = table.length - 1;
+        }
+
+        /**
+         * Linear probing, slots hold index + 1. On duplicate names, the first entry wins.
+         */
+        protected static int[] buildTable(int[] hashes, int n) {
+            int tableLength = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+            int mask = tableLength - 1;
+            int[] table = new int[tableLength];
+
+            for (int i = 0; i < n; i++) {
+                int slot = hashes[i] & mask;
+
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+
+                table[slot] = i + 1;
+            }
+
+            return table;
+        }
+
+        protected static int findEnd(ByteBuffer buffer, int limit) throws IOException {
+            int lowest = Math.max(0, limit - END_HEADER_LENGTH - 0xFFFF);
+
+            for (int position = limit - END_HEADER_LENGTH; position >= lowest; position--) {
+                if (buffer.getInt(position) == END_SIGNATURE) {
+                    return position;
+                }
+            }
+
+            throw new IOException("End of central directory not found");
+        }
+
+        protected int u16(int position) {
+            return buffer.getShort(position) & 0xFFFF;
+        }
+
+        protected long u32(int position) {
+            return buffer.getInt(position) & 0xFFFFFFFFL;
+        }
+
+        /**
+         * @return The 8-byte value at 'position', in a field ending at 'end'.
+         */
+        protected long u64(int position, int end) throws IOException {
+            if (position + 8 > end) {
+                throw new IOException("Truncated zip64 extended information");
+            }
+            return buffer.getLong(position);
+        }
+
+        /**
+         * @return Index of the entry named 'name + suffix', or -1.
+         */
+        protected int find(String name, String suffix) {
+            return find(name, suffix, hash(name, suffix));
+        }
+
+        /**
+         * @param hash {@link #hash(String, String)} of 'name' and 'suffix', shared by all directories.
+         */
+        protected int find(String name, String suffix, int hash) {
+            int slot = hash & mask;
+            int entry;
+
+            while ((entry = table[slot]) != 0) {
+                int index = entry - 1;
+
+                if ((hashes[index] == hash) && equalsUtf8(buffer, nameOffsets[index], nameLengths[index], name, suffix)) {
+                    return index;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return -1;
+        }
+
+        protected boolean startsWith(int index, byte[] prefix) {
+            int offset = nameOffsets[index];
+
+            for (int i = 0; i < prefix.length; i++) {
+                if (buffer.get(offset + i) != prefix[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        protected boolean endsWith(int index, byte[] suffix) {
+            int length = nameLengths[index];
+            int offset = nameOffsets[index] + length - suffix.length;
+
+            if (length < suffix.length) {
+                return false;
+            }
+
+            for (int i = 0; i < suffix.length; i++) {
+                if (buffer.get(offset + i) != suffix[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return The estimated heap retained by the index, and by the content
+         *         read into the heap, as the central directories of the
+         *         archives and the inflated inner jars.
+         */
+        protected long getRetainedSize() {
+            long size = 28L * hashes.length + methods.length + 4L * table.length;
+            return (view || buffer.isDirect()) ? size : size + buffer.capacity();
+        }
+
+        /**
+         * @return The CRC-32 of an entry in the high bits, its size in the low bits.
+         */
+        protected long stamp(int index) {
+            return ((long) crcs[index] << 32) | (sizes[index] & 0xFFFFFFFFL);
+        }
+
+        /**
+         * @return The stamp of the entry of a class mixed with the stamps of
+         *         the entries of its inner classes, or null.
+         */
+        protected Long groupStamp(String internalTypeName) {
+            int index = find(internalTypeName, CLASS_SUFFIX);
+
+            if (index < 0) {
+                return null;
+            }
+
+            byte[] prefix = (internalTypeName + '$').getBytes(StandardCharsets.UTF_8);
+            long stamp = stamp(index);
+
+            for (int i = 0; i < count; i++) {
+                if ((nameLengths[i] > prefix.length) && startsWith(i, prefix) && endsWith(i, CLASS_SUFFIX_BYTES)) {
+                    String name = getName(i);
+
+                    name = name.substring(0, name.length() - CLASS_SUFFIX.length());
+                    stamp += ArchiveRegistry.mix(name.hashCode() ^ stamp(i));
+                }
+            }
+
+            return stamp;
+        }
+
+        protected String getName(int index) {
+            byte[] name = new byte[nameLengths[index]];
+            ByteBuffer view = buffer.duplicate();
+            view.position(nameOffsets[index]);
+            view.get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return Read-only view on the raw data of an entry.
+         */
+        protected ByteBuffer data(int index) throws IOException {
+            int header = headerOffsets[index];
+            int length = (methods[index] == STORED) ? sizes[index] : compressedSizes[index];
+
+            if (data == null) {
+                ByteBuffer local = readFully(channel, header, LOCAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+                if (local.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new IOException("Invalid local header");
+                }
+
+                int start = header + LOCAL_HEADER_LENGTH + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+                return readFully(channel, start, length).asReadOnlyBuffer();
+            }
+
+            // Reading a mapped archive beyond its current size would fault
+            long limit = (channel == null) ? data.limit() : Math.min(data.limit(), channel.size());
+
+            if ((header + LOCAL_HEADER_LENGTH > limit) || (data.getInt(header) != LOCAL_HEADER_SIGNATURE)) {
+                throw new IOException("Invalid local header");
+            }
+
+            int start = header + LOCAL_HEADER_LENGTH + (data.getShort(header + 26) & 0xFFFF) + (data.getShort(header + 28) & 0xFFFF);
+
+            if (start + length > limit) {
+                throw new IOException("Truncated entry");
+            }
+
+            ByteBuffer view = data.duplicate();
+            view.position(start).limit(start + length);
+            return view.slice().asReadOnlyBuffer();
+        }
+
+        /**
+         * @return Read-only view on a stored entry, or the inflated content of the entry.
+         */
+        protected ByteBuffer content(int index) throws IOException {
+            return (methods[index] == STORED) ? data(index) : ByteBuffer.wrap(inflate(index)).asReadOnlyBuffer();
+        }
+
+        protected byte[] inflate(int index) throws IOException {
+            if (methods[index] != DEFLATED) {
+                throw new IOException("Unsupported compression method: " + methods[index]);
+            }
+
+            byte[] bytes = new byte[sizes[index]];
+            Inflater inflater = new Inflater(true);
+
+            try {
+                inflater.setInput(data(index));
+
+                int offset = 0;
+
+                while (offset < bytes.length) {
+                    int read = inflater.inflate(bytes, offset, bytes.length - offset);
+
+                    if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflated entry");
+                    }
+
+                    offset += read;
+                }
+
+                return bytes;
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        protected static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        protected static int hash(String name, String suffix) {
+            int h = 0;
+
+            for (int i = 0, length = name.length(); i < length; i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            for (int i = 0, length = suffix.length(); i < length; i++) {
+                h = 31 * h + suffix.charAt(i);
+            }
+
+            return mix(h);
+        }
+
+        /**
+         * Same hash as {@link #hash(String, String)}, computed on the UTF-16
+         * code units of an UTF-8 encoded name.
+         */
+        protected static int hashUtf8(ByteBuffer buffer, int offset, int length) {
+            int h = 0;
+            int end = offset + length;
+
+            while (offset < end) {
+                int b = buffer.get(offset++);
+
+                if (b >= 0) {
+                    h = 31 * h + b;
+                } else {
+                    int codePoint = decode(buffer, b, offset, end);
+                    offset += trailingByteCount(b);
+
+                    if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                        h = 31 * h + Character.highSurrogate(codePoint);
+                        h = 31 * h + Character.lowSurrogate(codePoint);
+                    } else {
+                        h = 31 * h + codePoint;
+                    }
+                }
+            }
+
+            return mix(h);
+        }
+
+        protected static boolean equalsUtf8(ByteBuffer buffer, int offset, int length, String name, String suffix) {
+            int nameLength = name.length();
+            int totalLength = nameLength + suffix.length();
+            int end = offset + length;
+            int i = 0;
+
+            while (offset < end) {
+                int b = buffer.get(offset++);
+
+                if (b >= 0) {
+                    if ((i >= totalLength) || (charAt(name, suffix, nameLength, i++) != b)) {
+                        return false;
+                    }
+                } else {
+                    int codePoint = decode(buffer, b, offset, end);
+                    offset += trailingByteCount(b);
+
+                    if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                        if ((i + 1 >= totalLength) ||
+                            (charAt(name, suffix, nameLength, i++) != Character.highSurrogate(codePoint)) ||
+                            (charAt(name, suffix, nameLength, i++) != Character.lowSurrogate(codePoint))) {
+                            return false;
+                        }
+                    } else if ((i >= totalLength) || (charAt(name, suffix, nameLength, i++) != codePoint)) {
+                        return false;
+                    }
+                }
+            }
+
+            return i == totalLength;
+        }
+
+        protected static char charAt(String name, String suffix, int nameLength, int i) {
+            return (i < nameLength) ? name.charAt(i) : suffix.charAt(i - nameLength);
+        }
+
+        protected static int trailingByteCount(int b) {
+            if ((b & 0xE0) == 0xC0) {
+                return 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                return 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                return 3;
+            } else {
+                return 0;
+            }
+        }
+
+        protected static int decode(ByteBuffer buffer, int b, int offset, int end) {
+            int count = trailingByteCount(b);
+
+            if (offset + count > end) {
+                return 0xFFFD;
+            }
+
+            int codePoint = b & (0x3F >> count);
+
+            for (int i = 0; i < count; i++) {
+                codePoint = (codePoint << 6) | (buffer.get(offset + i) & 0x3F);
+            }
+
+            return (count == 0) ? 0xFFFD : codePoint;
+        }
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.metrics;
+
+/**
+ * Snapshot of the decompilations of the classes of an archive or class folder.
+ */
+public class ArchiveStatistics {
+    protected final String archive;
+    protected final long decompilationCount;
+    protected final long failureCount;
+    protected final long totalMillis;
+    protected final long maxMillis;
+
+    public ArchiveStatistics(String archive, long decompilationCount, long failureCount, long totalNanos, long maxNanos) {
+        this.archive = archive;
+        this.decompilationCount = decompilationCount;
+        this.failureCount = failureCount;
+        this.totalMillis = totalNanos / 1000000;
+        this.maxMillis = maxNanos / 1000000;
+    }
+
+    public String getArchive() { return archive; }
+    public long getDecompilationCount() { return decompilationCount; }
+    public long getFailureCount() { return failureCount; }
+    public long getTotalMillis() { return totalMillis; }
+    public long getMaxMillis() { return maxMillis; }
+
+    public long getMeanMillis() {
+        return (decompilationCount == 0) ? 0 : totalMillis / decompilationCount;
+    }
+}
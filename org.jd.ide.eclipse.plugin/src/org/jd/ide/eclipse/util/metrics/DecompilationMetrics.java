@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.SourceCache;
+
+/**
+ * Latencies of the decompilation phases, and counters per archive.
+ * <p>
+ * Recording takes no lock and allocates nothing, except the counters of
+ * an archive on its first decompilation, so it stays enabled.
+ */
+public class DecompilationMetrics implements DecompilationMetricsMXBean {
+    public static final String OBJECT_NAME = "org.jd.ide.eclipse:type=DecompilationMetrics";
+
+    // Archives past this count are not tracked individually
+    protected static final int MAX_ARCHIVE_COUNT = 256;
+
+    public enum Phase {
+        LOADER("Loader creation"),
+        LOAD("Class load"),
+        DISK_CACHE("Disk cache lookup"),
+        DECOMPILE("JD-Core decompile"),
+        PRINT("Printing"),
+        RENDER("Rendering"),
+        METADATA("Metadata"),
+        EDITOR("Editor buffer setup");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+    }
+
+    protected final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    protected final Map<String, ArchiveCounters> archives = new ConcurrentHashMap<>();
+
+    protected final LongAdder decompilationCount = new LongAdder();
+    protected final LongAdder failureCount = new LongAdder();
+    protected final LongAdder cancellationCount = new LongAdder();
+    protected final LongAdder diskCacheHitCount = new LongAdder();
+    protected final LongAdder diskCacheMissCount = new LongAdder();
+
+    protected final SourceCache sourceCache;
+    protected final DiskSourceCache diskSourceCache;
+
+    /**
+     * @param sourceCache     Memory cache reported by the statistics, or null.
+     * @param diskSourceCache Disk cache reported by the statistics, or null.
+     */
+    public DecompilationMetrics(SourceCache sourceCache, DiskSourceCache diskSourceCache) {
+        this.sourceCache = sourceCache;
+        this.diskSourceCache = diskSourceCache;
+
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the time elapsed since 'startTime'.
+     *
+     * @return The current time, start of the next phase.
+     */
+    public long recordSince(Phase phase, long startTime) {
+        long now = System.nanoTime();
+        histograms[phase.ordinal()].record(now - startTime);
+        return now;
+    }
+
+    /**
+     * Records a decompilation missing the memory cache, all phases included.
+     */
+    public void recordDecompilation(String archive, long nanos, boolean failed) {
+        decompilationCount.increment();
+        if (failed) {
+            failureCount.increment();
+        }
+
+        ArchiveCounters counters = archives.get(archive);
+
+        if ((counters == null) && (archives.size() < MAX_ARCHIVE_COUNT)) {
+            counters = archives.computeIfAbsent(archive, a -> new ArchiveCounters());
+        }
+
+        if (counters != null) {
+            counters.record(nanos, failed);
+        }
+    }
+
+    public void recordCancellation() {
+        cancellationCount.increment();
+    }
+
+    public void recordDiskCacheLookup(boolean hit) {
+        if (hit) {
+            diskCacheHitCount.increment();
+        } else {
+            diskCacheMissCount.increment();
+        }
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    // --- DecompilationMetricsMXBean --- //
+    @Override
+    public List<PhaseStatistics> getPhases() {
+        List<PhaseStatistics> phases = new ArrayList<>(histograms.length);
+
+        for (Phase phase : Phase.values()) {
+            phases.add(new PhaseStatistics(phase.getLabel(), histograms[phase.ordinal()]));
+        }
+
+        return phases;
+    }
+
+    @Override
+    public List<ArchiveStatistics> getArchives() {
+        List<ArchiveStatistics> list = new ArrayList<>(archives.size());
+
+        archives.forEach((archive, counters) -> list.add(new ArchiveStatistics(archive, counters.count.sum(),
+                counters.failures.sum(), counters.total.sum(), counters.max.get())));
+        list.sort((s1, s2) -> Long.compare(s2.getTotalMillis(), s1.getTotalMillis()));
+
+        return list;
+    }
+
+    @Override public long getDecompilationCount() { return decompilationCount.sum(); }
+    @Override public long getFailureCount() { return failureCount.sum(); }
+    @Override public long getCancellationCount() { return cancellationCount.sum(); }
+
+    @Override public long getMemoryCacheHitCount() { return (sourceCache == null) ? 0 : sourceCache.getHitCount(); }
+    @Override public long getMemoryCacheMissCount() { return (sourceCache == null) ? 0 : sourceCache.getMissCount(); }
+    @Override public long getMemoryCacheEvictionCount() { return (sourceCache == null) ? 0 : sourceCache.getEvictionCount(); }
+    @Override public long getMemoryCacheSize() { return (sourceCache == null) ? 0 : sourceCache.getSize(); }
+
+    @Override public long getDiskCacheHitCount() { return diskCacheHitCount.sum(); }
+    @Override public long getDiskCacheMissCount() { return diskCacheMissCount.sum(); }
+    @Override public long getDiskCacheSize() { return (diskSourceCache == null) ? 0 : diskSourceCache.getSize(); }
+
+    /**
+     * Clears the latencies and the counters. The statistics of the caches,
+     * owned by the caches, are kept.
+     */
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+
+        archives.clear();
+        decompilationCount.reset();
+        failureCount.reset();
+        cancellationCount.reset();
+        diskCacheHitCount.reset();
+        diskCacheMissCount.reset();
+    }
+
+    protected static class ArchiveCounters {
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder failures = new LongAdder();
+        protected final LongAdder total = new LongAdder();
+        protected final AtomicLong max = new AtomicLong();
+
+        protected void record(long nanos, boolean failed) {
+            count.increment();
+            if (failed) {
+                failures.increment();
+            }
+            total.add(nanos);
+
+            long current = max.get();
+            while ((nanos > current) && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link DecompilationMetrics}, registered as
+ * {@value DecompilationMetrics#OBJECT_NAME}.
+ */
+public interface DecompilationMetricsMXBean {
+    List<PhaseStatistics> getPhases();
+
+    List<ArchiveStatistics> getArchives();
+
+    long getDecompilationCount();
+    long getFailureCount();
+    long getCancellationCount();
+
+    long getMemoryCacheHitCount();
+    long getMemoryCacheMissCount();
+    long getMemoryCacheEvictionCount();
+    long getMemoryCacheSize();
+
+    long getDiskCacheHitCount();
+    long getDiskCacheMissCount();
+    long getDiskCacheSize();
+
+    void reset();
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.metrics;
+
+/**
+ * Snapshot of the latencies of a decompilation phase, in microseconds.
+ */
+public class PhaseStatistics {
+    protected final String name;
+    protected final long count;
+    protected final long mean;
+    protected final long p50;
+    protected final long p90;
+    protected final long p99;
+    protected final long max;
+
+    public PhaseStatistics(String name, LatencyHistogram histogram) {
+        this.name = name;
+        this.count = histogram.getCount();
+        this.mean = histogram.getMean() / 1000;
+        this.p50 = histogram.getPercentile(50) / 1000;
+        this.p90 = histogram.getPercentile(90) / 1000;
+        this.p99 = histogram.getPercentile(99) / 1000;
+        this.max = histogram.getMax() / 1000;
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return count; }
+    public long getMeanMicros() { return mean; }
+    public long getP50Micros() { return p50; }
+    public long getP90Micros() { return p90; }
+    public long getP99Micros() { return p99; }
+    public long getMaxMicros() { return max; }
+}
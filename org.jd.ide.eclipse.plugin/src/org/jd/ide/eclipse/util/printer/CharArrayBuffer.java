@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.printer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Growable char array, the output of the printers. Unlike StringBuilder,
+ * the content is handed out as a char array with a single copy.
+ */
+public class CharArrayBuffer implements Appendable, CharSequence {
+    protected static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    protected char[] chars;
+    protected int length;
+
+    public CharArrayBuffer(int capacity) {
+        this.chars = new char[capacity];
+    }
+
+    public void ensureCapacity(int minimumCapacity) {
+        if (minimumCapacity > chars.length) {
+            int newCapacity = chars.length + (chars.length >> 1);
+            chars = Arrays.copyOf(chars, Math.max(newCapacity, minimumCapacity));
+        }
+    }
+
+    @Override
+    public CharArrayBuffer append(char c) {
+        if (length == chars.length) {
+            ensureCapacity(length + 1);
+        }
+        chars[length++] = c;
+        return this;
+    }
+
+    @Override
+    public CharArrayBuffer append(CharSequence s) {
+        if (s == null) {
+            return append("null");
+        }
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public CharArrayBuffer append(CharSequence s, int start, int end) {
+        if (s instanceof String) {
+            return append((String) s, start, end);
+        }
+        ensureCapacity(length + end - start);
+        for (int i = start; i < end; i++) {
+            chars[length++] = s.charAt(i);
+        }
+        return this;
+    }
+
+    public CharArrayBuffer append(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        return append(s, 0, s.length());
+    }
+
+    /**
+     * Appends the chars of 's' from 'start' (inclusive) to 'end' (exclusive).
+     */
+    public CharArrayBuffer append(String s, int start, int end) {
+        int count = end - start;
+        ensureCapacity(length + count);
+        s.getChars(start, end, chars, length);
+        length += count;
+        return this;
+    }
+
+    public CharArrayBuffer append(char[] s) {
+        return append(s, 0, s.length);
+    }
+
+    public CharArrayBuffer append(char[] s, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(s, offset, chars, length, count);
+        length += count;
+        return this;
+    }
+
+    /**
+     * Appends the escape sequence of 'c': a backslash, 'u' and 4 hexadecimal digits.
+     */
+    public CharArrayBuffer appendUnicodeEscape(char c) {
+        ensureCapacity(length + 6);
+        chars[length++] = '\\';
+        chars[length++] = 'u';
+        chars[length++] = HEX_DIGITS[c >> 12];
+        chars[length++] = HEX_DIGITS[(c >> 8) & 0xF];
+        chars[length++] = HEX_DIGITS[(c >> 4) & 0xF];
+        chars[length++] = HEX_DIGITS[c & 0xF];
+        return this;
+    }
+
+    public CharArrayBuffer append(int i) {
+        return append(Integer.toString(i));
+    }
+
+    @Override
+    public int length() { return length; }
+
+    public int capacity() { return chars.length; }
+
+    public void setLength(int length) {
+        ensureCapacity(length);
+        if (length > this.length) {
+            Arrays.fill(chars, this.length, length, '\0');
+        }
+        this.length = length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    /**
+     * @return A copy of the content, with its exact length.
+     */
+    public char[] toCharArray() {
+        return Arrays.copyOf(chars, length);
+    }
+
+    /**
+     * @return A copy of the content followed by 'suffix', with the exact
+     *         length, as the source followed by its metadata comment.
+     */
+    public char[] toCharArray(CharSequence suffix) {
+        int suffixLength = suffix.length();
+        char[] result = Arrays.copyOf(chars, length + suffixLength);
+
+        if (suffix instanceof String) {
+            ((String) suffix).getChars(0, suffixLength, result, length);
+        } else if (suffix instanceof StringBuilder) {
+            ((StringBuilder) suffix).getChars(0, suffixLength, result, length);
+        } else {
+            for (int i = 0; i < suffixLength; i++) {
+                result[length + i] = suffix.charAt(i);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the content without copying it.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(chars, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
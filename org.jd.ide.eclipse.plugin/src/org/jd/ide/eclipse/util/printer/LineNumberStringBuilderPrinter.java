@@ -7,32 +7,104 @@
 
 package org.jd.ide.eclipse.util.printer;
 
+import java.util.Arrays;
+
+/**
+ * Printer prefixing each line with its number, in a "/* 123 *&#47; " gutter.
+ * <p>
+ * Gutters are rendered once into a table indexed by line number, and copied
+ * from it for each line. The table is filled by incrementing the previous
+ * gutter, and kept across calls to start() while the number of digits does
+ * not change.
+ */
 public class LineNumberStringBuilderPrinter extends StringBuilderPrinter {
+	protected static final String LINE_NUMBER_BEGIN = "/* ";
+	protected static final String LINE_NUMBER_END = " */ ";
+	// Lines above are rendered without the table, to bound its size
+	protected static final int MAX_GUTTER_COUNT = 1 << 16;
+
 	protected boolean showLineNumbers = false;
 
 	protected int maxLineNumber = 0;
 	protected int digitCount = 0;
+	protected int maxPrintableLineNumber = 0;
 
-	protected String lineNumberBeginPrefix;
-	protected String lineNumberEndPrefix;
-	protected String unknownLineNumberPrefix;
+	// Gutters of the lines 0 (unknown line) to 'gutterCount - 1', 'gutterWidth' chars each
+	protected char[] gutters = new char[0];
+	protected int gutterWidth = 0;
+	protected int gutterCount = 0;
 
 	public void setShowLineNumbers(boolean showLineNumbers) {
 		this.showLineNumbers = showLineNumbers;
 	}
 
-	protected int printDigit(int dcv, int lineNumber, int divisor, int left) {
-		if (digitCount >= dcv) {
-			if (lineNumber < divisor) {
-				stringBuffer.append(' ');
-			} else {
-				int e = (lineNumber - left) / divisor;
-				stringBuffer.append((char) ('0' + e));
-				left += e * divisor;
+	@Override
+	public long getRetainedSize() {
+		return super.getRetainedSize() + 2L * gutters.length;
+	}
+
+	/**
+	 * Releases the buffer and the gutter table if their capacity exceeds 'maxCapacity' chars.
+	 */
+	@Override
+	public void trim(int maxCapacity) {
+		super.trim(maxCapacity);
+
+		if (gutters.length > maxCapacity) {
+			gutters = new char[0];
+			gutterCount = 0;
+		}
+	}
+
+	/**
+	 * Renders the gutters up to 'lineNumber' into the table, each one
+	 * being the previous one incremented.
+	 */
+	protected void fillGutters(int lineNumber) {
+		int length = (lineNumber + 1) * gutterWidth;
+
+		if (gutters.length < length) {
+			gutters = Arrays.copyOf(gutters, Math.max(length, Math.min(gutters.length << 1, MAX_GUTTER_COUNT * gutterWidth)));
+		}
+
+		if (gutterCount == 0) {
+			// Line 0: the unknown line, digits left blank
+			int offset = 0;
+
+			LINE_NUMBER_BEGIN.getChars(0, LINE_NUMBER_BEGIN.length(), gutters, offset);
+			offset += LINE_NUMBER_BEGIN.length();
+			Arrays.fill(gutters, offset, offset + digitCount, ' ');
+			offset += digitCount;
+			LINE_NUMBER_END.getChars(0, LINE_NUMBER_END.length(), gutters, offset);
+			gutterCount = 1;
+		}
+
+		int lastDigit = LINE_NUMBER_BEGIN.length() + digitCount - 1;
+
+		for (int offset = gutterCount * gutterWidth; gutterCount <= lineNumber; gutterCount++, offset += gutterWidth) {
+			System.arraycopy(gutters, offset - gutterWidth, gutters, offset, gutterWidth);
+
+			int i = offset + lastDigit;
+
+			while (gutters[i] == '9') {
+				gutters[i--] = '0';
 			}
+
+			gutters[i] = (gutters[i] == ' ') ? '1' : (char) (gutters[i] + 1);
 		}
+	}
+
+	/**
+	 * Renders the gutter of a line outside the table.
+	 */
+	protected void printGutter(int lineNumber) {
+		char[] gutter = Arrays.copyOf(gutters, gutterWidth);
 
-		return left;
+		for (int i = LINE_NUMBER_BEGIN.length() + digitCount - 1; lineNumber > 0; i--, lineNumber /= 10) {
+			gutter[i] = (char) ('0' + (lineNumber % 10));
+		}
+
+		buffer.append(gutter);
 	}
 
 	// --- Printer --- //
@@ -40,57 +112,49 @@ public class LineNumberStringBuilderPrinter extends StringBuilderPrinter {
 	public void start(int maxLineNumber, int majorVersion, int minorVersion) {
 		super.start(maxLineNumber, majorVersion, minorVersion);
 
-		if (showLineNumbers) {
-			this.maxLineNumber = maxLineNumber;
-
-			if (maxLineNumber > 0) {
-				digitCount = 1;
-				unknownLineNumberPrefix = " ";
-				int maximum = 9;
+		if (showLineNumbers && (maxLineNumber > 0)) {
+			int count = 1;
+			int maximum = 9;
 
-				while (maximum < maxLineNumber) {
-					digitCount++;
-					unknownLineNumberPrefix += ' ';
-					maximum = maximum * 10 + 9;
-				}
+			while (maximum < maxLineNumber) {
+				count++;
+				maximum = (maximum > (Integer.MAX_VALUE - 9) / 10) ? Integer.MAX_VALUE : maximum * 10 + 9;
+			}
 
-				lineNumberBeginPrefix = "/* ";
-				lineNumberEndPrefix = " */ ";
-			} else {
-				unknownLineNumberPrefix = "";
-				lineNumberBeginPrefix = "";
-				lineNumberEndPrefix = "";
+			if (digitCount != count) {
+				digitCount = count;
+				maxPrintableLineNumber = maximum;
+				gutterWidth = LINE_NUMBER_BEGIN.length() + count + LINE_NUMBER_END.length();
+				gutterCount = 0;
 			}
+
+			this.maxLineNumber = maxLineNumber;
+			fillGutters(0);
 		} else {
 			this.maxLineNumber = 0;
-			unknownLineNumberPrefix = "";
-			lineNumberBeginPrefix = "";
-			lineNumberEndPrefix = "";
 		}
 	}
 
 	@Override
 	public void startLine(int lineNumber) {
 		if (maxLineNumber > 0) {
-			stringBuffer.append(lineNumberBeginPrefix);
+			if ((lineNumber < 0) || (lineNumber > maxPrintableLineNumber)) {
+				// Out of the range announced by start(): keep the column aligned
+				lineNumber = UNKNOWN_LINE_NUMBER;
+			}
 
-			if (lineNumber == UNKNOWN_LINE_NUMBER) {
-				stringBuffer.append(unknownLineNumberPrefix);
+			if (lineNumber < gutterCount) {
+				buffer.append(gutters, lineNumber * gutterWidth, gutterWidth);
+			} else if (lineNumber < MAX_GUTTER_COUNT) {
+				fillGutters(lineNumber);
+				buffer.append(gutters, lineNumber * gutterWidth, gutterWidth);
 			} else {
-				int left = 0;
-
-				left = printDigit(5, lineNumber, 10000, left);
-				left = printDigit(4, lineNumber, 1000, left);
-				left = printDigit(3, lineNumber, 100, left);
-				left = printDigit(2, lineNumber, 10, left);
-				stringBuffer.append((char) ('0' + (lineNumber - left)));
+				printGutter(lineNumber);
 			}
-
-			stringBuffer.append(lineNumberEndPrefix);
 		}
 
 		for (int i = 0; i < indentationCount; i++) {
-			stringBuffer.append(TAB);
+			buffer.append(TAB);
 		}
 	}
 
@@ -99,12 +163,10 @@ public class LineNumberStringBuilderPrinter extends StringBuilderPrinter {
 		if (realignmentLineNumber) {
 			while (count-- > 0) {
 				if (maxLineNumber > 0) {
-					stringBuffer.append(lineNumberBeginPrefix);
-					stringBuffer.append(unknownLineNumberPrefix);
-					stringBuffer.append(lineNumberEndPrefix);
+					buffer.append(gutters, 0, gutterWidth);
 				}
 
-				stringBuffer.append(NEWLINE);
+				buffer.append(NEWLINE);
 			}
 		}
 	}
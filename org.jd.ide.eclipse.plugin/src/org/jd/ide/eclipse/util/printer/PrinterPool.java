@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.printer;
+
+import org.jd.ide.eclipse.util.cache.MemoryBudget;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of printers, giving each decompilation its own printer.
+ * Released printers get their buffer trimmed, so that a large class does
+ * not pin a large buffer for the life of the pool. Under heap pressure,
+ * the printers idle for the longest time are dropped first.
+ */
+public class PrinterPool implements MemoryBudget.Consumer {
+    public static final int DEFAULT_MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    protected final BlockingQueue<LineNumberStringBuilderPrinter> printers;
+    protected final int maxRetainedCapacity;
+
+    public PrinterPool() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_RETAINED_CAPACITY);
+    }
+
+    /**
+     * @param maxSize             Maximum number of idle printers.
+     * @param maxRetainedCapacity Maximum capacity, in chars, of the buffer of an idle printer.
+     */
+    public PrinterPool(int maxSize, int maxRetainedCapacity) {
+        this.printers = new ArrayBlockingQueue<>(Math.max(1, maxSize));
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    public LineNumberStringBuilderPrinter acquire() {
+        LineNumberStringBuilderPrinter printer = printers.poll();
+        return (printer != null) ? printer : new LineNumberStringBuilderPrinter();
+    }
+
+    public void release(LineNumberStringBuilderPrinter printer) {
+        printer.trim(maxRetainedCapacity);
+        printers.offer(printer);
+    }
+
+    public int getIdleCount() {
+        return printers.size();
+    }
+
+    @Override
+    public long getRetainedSize() {
+        long size = 0;
+
+        for (LineNumberStringBuilderPrinter printer : printers) {
+            size += printer.getRetainedSize();
+        }
+
+        return size;
+    }
+
+    @Override
+    public long shrink(long size) {
+        long retainedSize = getRetainedSize();
+        long released = 0;
+
+        // Released printers are queued last: the head is the coldest one
+        while (retainedSize - released > size) {
+            LineNumberStringBuilderPrinter printer = printers.poll();
+
+            if (printer == null) {
+                break;
+            }
+
+            released += printer.getRetainedSize();
+        }
+
+        return released;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.printer;
+
+import org.jd.core.v1.api.printer.Printer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Calls made by the decompiler to a printer, recorded by
+ * {@link RecordingPrinter}, and replayed to any printer.
+ * <p>
+ * Each call is an opcode followed by its arguments: integers are encoded
+ * as unsigned varints, strings as varint indexes into a table of the
+ * distinct strings, 0 standing for null. Recordings are immutable, and
+ * can be replayed concurrently.
+ */
+public class PrinterRecording {
+    protected static final byte START = 1;
+    protected static final byte END = 2;
+    protected static final byte TEXT = 3;
+    protected static final byte NUMERIC_CONSTANT = 4;
+    protected static final byte STRING_CONSTANT = 5;
+    protected static final byte KEYWORD = 6;
+    protected static final byte DECLARATION = 7;
+    protected static final byte REFERENCE = 8;
+    protected static final byte INDENT = 9;
+    protected static final byte UNINDENT = 10;
+    protected static final byte START_LINE = 11;
+    protected static final byte END_LINE = 12;
+    protected static final byte EXTRA_LINE = 13;
+    protected static final byte START_MARKER = 14;
+    protected static final byte END_MARKER = 15;
+
+    protected static final int FORMAT_VERSION = 2;
+    // Characters per modified UTF-8 chunk, of at most 3 bytes each
+    protected static final int CHUNK_LENGTH = 0xFFFF / 3;
+    // Approximate footprint of the arrays and strings headers
+    protected static final int STRING_OVERHEAD = 56;
+
+    protected final byte[] events;
+    protected final int length;
+    protected final String[] strings;
+
+    /**
+     * @param events  Encoded calls, from 0 to 'length'.
+     * @param strings Table of strings, at index 'i - 1' for the encoded index 'i'.
+     */
+    protected PrinterRecording(byte[] events, int length, String[] strings) {
+        this.events = events;
+        this.length = length;
+        this.strings = strings;
+    }
+
+    /**
+     * @return The approximate size of the recording in memory, in bytes.
+     */
+    public long getSize() {
+        long size = length;
+
+        for (String s : strings) {
+            size += STRING_OVERHEAD + 2L * s.length();
+        }
+
+        return size;
+    }
+
+    /**
+     * Makes to 'printer' the calls recorded, in the same order.
+     *
+     * @throws IllegalStateException if the recording is corrupted.
+     */
+    public void replay(Printer printer) {
+        Reader reader = new Reader();
+
+        try {
+            while (reader.position < length) {
+                byte opcode = events[reader.position++];
+
+                switch (opcode) {
+                    case START:
+                        printer.start(reader.readInt(), reader.readInt(), reader.readInt());
+                        break;
+                    case END:
+                        printer.end();
+                        break;
+                    case TEXT:
+                        printer.printText(reader.readString());
+                        break;
+                    case NUMERIC_CONSTANT:
+                        printer.printNumericConstant(reader.readString());
+                        break;
+                    case STRING_CONSTANT:
+                        printer.printStringConstant(reader.readString(), reader.readString());
+                        break;
+                    case KEYWORD:
+                        printer.printKeyword(reader.readString());
+                        break;
+                    case DECLARATION:
+                        printer.printDeclaration(reader.readInt(), reader.readString(), reader.readString(), reader.readString());
+                        break;
+                    case REFERENCE:
+                        printer.printReference(reader.readInt(), reader.readString(), reader.readString(), reader.readString(), reader.readString());
+                        break;
+                    case INDENT:
+                        printer.indent();
+                        break;
+                    case UNINDENT:
+                        printer.unindent();
+                        break;
+                    case START_LINE:
+                        printer.startLine(reader.readInt());
+                        break;
+                    case END_LINE:
+                        printer.endLine();
+                        break;
+                    case EXTRA_LINE:
+                        printer.extraLine(reader.readInt());
+                        break;
+                    case START_MARKER:
+                        printer.startMarker(reader.readInt());
+                        break;
+                    case END_MARKER:
+                        printer.endMarker(reader.readInt());
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown printer event " + opcode + " at " + (reader.position - 1));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("Truncated printer recording", e);
+        }
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(strings.length);
+
+        for (String s : strings) {
+            writeString(out, s);
+        }
+
+        out.writeInt(length);
+        out.write(events, 0, length);
+    }
+
+    public static PrinterRecording read(DataInput in) throws IOException {
+        int version = in.readInt();
+
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported printer recording version " + version);
+        }
+
+        String[] strings = new String[checkLength(in.readInt())];
+
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        byte[] events = new byte[checkLength(in.readInt())];
+        in.readFully(events);
+
+        return new PrinterRecording(events, events.length, strings);
+    }
+
+    /**
+     * Writes a string of any length in modified UTF-8, in chunks of
+     * {@link #CHUNK_LENGTH} characters. Unlike UTF-8, modified UTF-8 keeps
+     * the unpaired surrogates of the string constants, even when a chunk
+     * splits a pair.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        int length = s.length();
+
+        out.writeInt(length);
+
+        for (int start = 0; start < length; start += CHUNK_LENGTH) {
+            out.writeUTF(s.substring(start, Math.min(start + CHUNK_LENGTH, length)));
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = checkLength(in.readInt());
+        StringBuilder sb = new StringBuilder(Math.min(length, CHUNK_LENGTH));
+
+        while (sb.length() < length) {
+            String chunk = in.readUTF();
+
+            if (chunk.isEmpty()) {
+                throw new IOException("Invalid string chunk");
+            }
+            sb.append(chunk);
+        }
+
+        if (sb.length() != length) {
+            throw new IOException("Invalid string length " + sb.length() + ", expected " + length);
+        }
+
+        return sb.toString();
+    }
+
+    protected static int checkLength(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    protected class Reader {
+        protected int position;
+
+        protected int readInt() {
+            byte b = events[position++];
+
+            if (b >= 0) {
+                // 1 byte: most line numbers, types, counts
+                return b;
+            }
+
+            int value = b & 0x7F;
+
+            for (int shift = 7; ; shift += 7) {
+                b = events[position++];
+                value |= (b & 0x7F) << shift;
+
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        protected String readString() {
+            int index = readInt();
+
+            if (index == 0) {
+                return null;
+            }
+
+            try {
+                return strings[index - 1];
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IllegalStateException("Invalid string index " + index, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.printer;
+
+import org.jd.core.v1.api.printer.Printer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.jd.ide.eclipse.util.printer.PrinterRecording.*;
+
+/**
+ * Printer recording the calls of the decompiler, to render the source
+ * later with any presentation options: see {@link PrinterRecording}.
+ * <p>
+ * The output depends only on the options given to the decompiler, the
+ * line realignment, not on the unicode escape or the line numbers.
+ */
+public class RecordingPrinter implements Printer {
+    protected static final int INITIAL_CAPACITY = 4*1024;
+    // Estimated encoded calls per line, used to size the buffer from the maximum line number
+    protected static final int AVERAGE_LINE_LENGTH = 16;
+
+    protected byte[] events = new byte[INITIAL_CAPACITY];
+    protected int length;
+
+    protected final Map<String, Integer> stringIndexes = new HashMap<>();
+    protected String[] strings = new String[256];
+
+    protected int majorVersion = 0;
+    protected int minorVersion = 0;
+
+    // System.nanoTime() at start() and end(), JD-Core printing the source between both
+    protected long startTime;
+    protected long endTime;
+
+    public int getMajorVersion() { return majorVersion; }
+    public int getMinorVersion() { return minorVersion; }
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return endTime; }
+
+    /**
+     * @return The calls recorded since the last call to start().
+     */
+    public PrinterRecording toRecording() {
+        return new PrinterRecording(Arrays.copyOf(events, length), length, Arrays.copyOf(strings, stringIndexes.size()));
+    }
+
+    protected void ensureCapacity(int minCapacity) {
+        if (events.length < minCapacity) {
+            events = Arrays.copyOf(events, Math.max(minCapacity, events.length << 1));
+        }
+    }
+
+    protected void write(byte opcode) {
+        ensureCapacity(length + 1);
+        events[length++] = opcode;
+    }
+
+    protected void write(byte opcode, int value) {
+        ensureCapacity(length + 6);
+        events[length++] = opcode;
+        writeInt(value);
+    }
+
+    protected void write(byte opcode, String s) {
+        ensureCapacity(length + 6);
+        events[length++] = opcode;
+        writeString(s);
+    }
+
+    protected void writeInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            events[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        events[length++] = (byte) value;
+    }
+
+    protected void writeString(String s) {
+        if (s == null) {
+            writeInt(0);
+            return;
+        }
+
+        Integer index = stringIndexes.get(s);
+
+        if (index == null) {
+            int count = stringIndexes.size();
+
+            if (count == strings.length) {
+                strings = Arrays.copyOf(strings, count << 1);
+            }
+
+            strings[count] = s;
+            index = count + 1;
+            stringIndexes.put(s, index);
+        }
+
+        writeInt(index);
+    }
+
+    // --- Printer --- //
+    @Override
+    public void start(int maxLineNumber, int majorVersion, int minorVersion) {
+        this.startTime = System.nanoTime();
+        this.length = 0;
+        Arrays.fill(this.strings, 0, this.stringIndexes.size(), null);
+        this.stringIndexes.clear();
+        ensureCapacity(maxLineNumber * AVERAGE_LINE_LENGTH);
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+
+        ensureCapacity(1 + 3*5);
+        events[length++] = START;
+        writeInt(maxLineNumber);
+        writeInt(majorVersion);
+        writeInt(minorVersion);
+    }
+
+    @Override
+    public void end() {
+        write(END);
+        this.endTime = System.nanoTime();
+    }
+
+    @Override public void printText(String text) { write(TEXT, text); }
+    @Override public void printNumericConstant(String constant) { write(NUMERIC_CONSTANT, constant); }
+    @Override public void printKeyword(String keyword) { write(KEYWORD, keyword); }
+
+    @Override
+    public void printStringConstant(String constant, String ownerInternalName) {
+        ensureCapacity(length + 1 + 2*5);
+        events[length++] = STRING_CONSTANT;
+        writeString(constant);
+        writeString(ownerInternalName);
+    }
+
+    @Override
+    public void printDeclaration(int type, String internalTypeName, String name, String descriptor) {
+        ensureCapacity(length + 1 + 4*5);
+        events[length++] = DECLARATION;
+        writeInt(type);
+        writeString(internalTypeName);
+        writeString(name);
+        writeString(descriptor);
+    }
+
+    @Override
+    public void printReference(int type, String internalTypeName, String name, String descriptor, String ownerInternalName) {
+        ensureCapacity(length + 1 + 5*5);
+        events[length++] = REFERENCE;
+        writeInt(type);
+        writeString(internalTypeName);
+        writeString(name);
+        writeString(descriptor);
+        writeString(ownerInternalName);
+    }
+
+    @Override public void indent() { write(INDENT); }
+    @Override public void unindent() { write(UNINDENT); }
+
+    @Override public void startLine(int lineNumber) { write(START_LINE, lineNumber); }
+    @Override public void endLine() { write(END_LINE); }
+    @Override public void extraLine(int count) { write(EXTRA_LINE, count); }
+
+    @Override public void startMarker(int type) { write(START_MARKER, type); }
+    @Override public void endMarker(int type) { write(END_MARKER, type); }
+}
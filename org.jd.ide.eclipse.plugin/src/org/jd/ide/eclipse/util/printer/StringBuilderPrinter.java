@@ -12,8 +12,11 @@ import org.jd.core.v1.api.printer.Printer;
 public class StringBuilderPrinter implements Printer {
     protected static final String TAB = "  ";
     protected static final String NEWLINE = "\n";
+    protected static final int INITIAL_CAPACITY = 10*1024;
+    // Estimated output per line, used to size the buffer from the maximum line number
+    protected static final int AVERAGE_LINE_LENGTH = 48;
 
-    protected StringBuilder stringBuffer = new StringBuilder(10*1024);
+    protected CharArrayBuffer buffer = new CharArrayBuffer(INITIAL_CAPACITY);
 
     protected boolean unicodeEscape = true;
     protected boolean realignmentLineNumber = false;
@@ -22,63 +25,97 @@ public class StringBuilderPrinter implements Printer {
     protected int minorVersion = 0;
     protected int indentationCount;
 
+    // System.nanoTime() at start() and end(), JD-Core printing the source between both
+    protected long startTime;
+    protected long endTime;
+
     public void setUnicodeEscape(boolean unicodeEscape) { this.unicodeEscape = unicodeEscape; }
     public void setRealignmentLineNumber(boolean realignmentLineNumber) { this.realignmentLineNumber = realignmentLineNumber; }
 
     public int getMajorVersion() { return majorVersion; }
     public int getMinorVersion() { return minorVersion; }
-    public StringBuilder getStringBuffer() { return stringBuffer; }
+    public CharArrayBuffer getBuffer() { return buffer; }
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return endTime; }
+
+    /**
+     * @return A copy of the output, with its exact length.
+     */
+    public char[] toCharArray() { return buffer.toCharArray(); }
+
+    /**
+     * @return The estimated heap retained by the buffers, in bytes.
+     */
+    public long getRetainedSize() {
+        return 2L * buffer.capacity();
+    }
+
+    /**
+     * Releases the buffer if its capacity exceeds 'maxCapacity' chars.
+     */
+    public void trim(int maxCapacity) {
+        if (buffer.capacity() > maxCapacity) {
+            buffer = new CharArrayBuffer(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+    }
 
+    /**
+     * Appends 's', escaping the control and non-ASCII characters if enabled.
+     * Runs of characters needing no escape are appended as ranges.
+     */
     protected void escape(String s) {
-        if (unicodeEscape && (s != null)) {
-            int length = s.length();
+        if (!unicodeEscape || (s == null)) {
+            buffer.append(s);
+            return;
+        }
 
-            for (int i=0; i<length; i++) {
-                char c = s.charAt(i);
+        int length = s.length();
+        int start = 0;
 
-                if (c == '\t') {
-                    stringBuffer.append(c);
-                } else if (c < 32) {
-                    // Write octal format
-                    stringBuffer.append("\\0");
-                    stringBuffer.append((char) ('0' + (c >> 3)));
-                    stringBuffer.append((char) ('0' + (c & 0x7)));
-                } else if (c > 127) {
+        for (int i=0; i<length; i++) {
+            char c = s.charAt(i);
+
+            if ((c > 127) || ((c < 32) && (c != '\t'))) {
+                if (start < i) {
+                    buffer.append(s, start, i);
+                }
+
+                if (c < 32) {
                     // Write octal format
-                    stringBuffer.append("\\u");
-
-                    int z = (c >> 12);
-                    stringBuffer.append((char) ((z <= 9) ? ('0' + z) : (('A' - 10) + z)));
-                    z = ((c >> 8) & 0xF);
-                    stringBuffer.append((char) ((z <= 9) ? ('0' + z) : (('A' - 10) + z)));
-                    z = ((c >> 4) & 0xF);
-                    stringBuffer.append((char) ((z <= 9) ? ('0' + z) : (('A' - 10) + z)));
-                    z = (c & 0xF);
-                    stringBuffer.append((char) ((z <= 9) ? ('0' + z) : (('A' - 10) + z)));
+                    buffer.append('\\').append('0').append((char) ('0' + (c >> 3))).append((char) ('0' + (c & 0x7)));
                 } else {
-                    stringBuffer.append(c);
+                    // Write unicode escape sequence
+                    buffer.appendUnicodeEscape(c);
                 }
+
+                start = i + 1;
             }
-        } else {
-            stringBuffer.append(s);
+        }
+
+        if (start < length) {
+            buffer.append(s, start, length);
         }
     }
 
     // --- Printer --- //
     @Override
     public void start(int maxLineNumber, int majorVersion, int minorVersion) {
-        this.stringBuffer.setLength(0);
+        this.startTime = System.nanoTime();
+        this.buffer.setLength(0);
+        this.buffer.ensureCapacity(maxLineNumber * AVERAGE_LINE_LENGTH);
         this.majorVersion = majorVersion;
         this.minorVersion = minorVersion;
         this.indentationCount = 0;
     }
 
-    @Override public void end() {}
+    @Override public void end() { this.endTime = System.nanoTime(); }
 
     @Override public void printText(String text) { escape(text); }
     @Override public void printNumericConstant(String constant) { escape(constant); }
     @Override public void printStringConstant(String constant, String ownerInternalName) { escape(constant); }
-    @Override public void printKeyword(String keyword) { stringBuffer.append(keyword); }
+    @Override public void printKeyword(String keyword) { buffer.append(keyword); }
 
     @Override public void printDeclaration(int type, String internalTypeName, String name, String descriptor) { escape(name); }
     @Override public void printReference(int type, String internalTypeName, String name, String descriptor, String ownerInternalName) { escape(name); }
@@ -86,9 +123,9 @@ public class StringBuilderPrinter implements Printer {
     @Override public void indent() { indentationCount++; }
     @Override public void unindent() { if (indentationCount > 0) indentationCount--; }
 
-    @Override public void startLine(int lineNumber) { for (int i=0; i<indentationCount; i++) stringBuffer.append(TAB); }
-    @Override public void endLine() { stringBuffer.append(NEWLINE); }
-    @Override public void extraLine(int count) { if (realignmentLineNumber) while (count-- > 0) stringBuffer.append(NEWLINE); }
+    @Override public void startLine(int lineNumber) { for (int i=0; i<indentationCount; i++) buffer.append(TAB); }
+    @Override public void endLine() { buffer.append(NEWLINE); }
+    @Override public void extraLine(int count) { if (realignmentLineNumber) while (count-- > 0) buffer.append(NEWLINE); }
 
     @Override public void startMarker(int type) {}
     @Override public void endMarker(int type) {}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.views;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.ui.part.ViewPart;
+import org.jd.ide.eclipse.JavaDecompilerPlugin;
+import org.jd.ide.eclipse.util.metrics.ArchiveStatistics;
+import org.jd.ide.eclipse.util.metrics.DecompilationMetrics;
+import org.jd.ide.eclipse.util.metrics.PhaseStatistics;
+
+/**
+ * Shows the latencies of the decompilation phases, the statistics of the
+ * source caches and the decompilations per archive. Refreshed every two
+ * seconds while open.
+ *
+ * @project Java Decompiler Eclipse Plugin
+ * @version 2.0.0
+ */
+public class DecompilationMetricsView extends ViewPart {
+	public static final String ID = "org.jd.ide.eclipse.views.DecompilationMetricsView";
+
+	private static final int REFRESH_INTERVAL = 2000;
+
+	private Label summary;
+	private Table phases;
+	private Table archives;
+
+	private final Runnable refresher = new Runnable() {
+		@Override
+		public void run() {
+			if (!phases.isDisposed()) {
+				refresh();
+				phases.getDisplay().timerExec(REFRESH_INTERVAL, this);
+			}
+		}
+	};
+
+	@Override
+	public void createPartControl(Composite parent) {
+		parent.setLayout(new GridLayout(1, false));
+
+		summary = new Label(parent, SWT.WRAP);
+		summary.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+
+		phases = createTable(parent, "Phase", "Count", "Mean (\u00B5s)", "p50 (\u00B5s)", "p90 (\u00B5s)", "p99 (\u00B5s)", "Max (\u00B5s)");
+		archives = createTable(parent, "Archive", "Decompilations", "Failures", "Total (ms)", "Mean (ms)", "Max (ms)");
+
+		IToolBarManager toolBar = getViewSite().getActionBars().getToolBarManager();
+
+		toolBar.add(new Action("Refresh") {
+			@Override
+			public void run() {
+				refresh();
+			}
+		});
+		toolBar.add(new Action("Reset") {
+			@Override
+			public void run() {
+				DecompilationMetrics metrics = JavaDecompilerPlugin.getDefault().getDecompilationMetrics();
+
+				if (metrics != null) {
+					metrics.reset();
+					refresh();
+				}
+			}
+		});
+
+		refresher.run();
+	}
+
+	private static Table createTable(Composite parent, String... titles) {
+		Table table = new Table(parent, SWT.BORDER | SWT.FULL_SELECTION);
+
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+		for (int i = 0; i < titles.length; i++) {
+			TableColumn column = new TableColumn(table, (i == 0) ? SWT.LEFT : SWT.RIGHT);
+			column.setText(titles[i]);
+			column.setWidth((i == 0) ? 260 : 90);
+		}
+
+		return table;
+	}
+
+	protected void refresh() {
+		DecompilationMetrics metrics = JavaDecompilerPlugin.getDefault().getDecompilationMetrics();
+
+		if ((metrics == null) || phases.isDisposed()) {
+			return;
+		}
+
+		summary.setText(String.format(
+				"Decompilations: %d, failures: %d, cancellations: %d%n"
+						+ "Memory cache: %d hits, %d misses, %d evictions, %d KB%n"
+						+ "Disk cache: %d hits, %d misses, %d KB",
+				metrics.getDecompilationCount(), metrics.getFailureCount(), metrics.getCancellationCount(),
+				metrics.getMemoryCacheHitCount(), metrics.getMemoryCacheMissCount(),
+				metrics.getMemoryCacheEvictionCount(), metrics.getMemoryCacheSize() / 1024,
+				metrics.getDiskCacheHitCount(), metrics.getDiskCacheMissCount(), metrics.getDiskCacheSize() / 1024));
+
+		phases.removeAll();
+		for (PhaseStatistics statistics : metrics.getPhases()) {
+			new TableItem(phases, SWT.NONE).setText(new String[] { statistics.getName(),
+					Long.toString(statistics.getCount()), Long.toString(statistics.getMeanMicros()),
+					Long.toString(statistics.getP50Micros()), Long.toString(statistics.getP90Micros()),
+					Long.toString(statistics.getP99Micros()), Long.toString(statistics.getMaxMicros()) });
+		}
+
+		archives.removeAll();
+		for (ArchiveStatistics statistics : metrics.getArchives()) {
+			new TableItem(archives, SWT.NONE).setText(new String[] { statistics.getArchive(),
+					Long.toString(statistics.getDecompilationCount()), Long.toString(statistics.getFailureCount()),
+					Long.toString(statistics.getTotalMillis()), Long.toString(statistics.getMeanMillis()),
+					Long.toString(statistics.getMaxMillis()) });
+		}
+
+		summary.getParent().layout();
+	}
+
+	@Override
+	public void setFocus() {
+		phases.setFocus();
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.cache;
+
+import org.jd.ide.eclipse.util.loader.StampedLoader;
+import org.jd.ide.eclipse.util.printer.RecordingPrinter;
+import org.jd.ide.eclipse.util.printer.StringBuilderPrinter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DiskSourceCacheTest {
+    protected File directory;
+    protected DiskSourceCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jd-cache-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void testEntriesSurviveReopening() throws Exception {
+        Map<String, Long> dependencies = new LinkedHashMap<>();
+        dependencies.put("p/A$Inner", 0x1234_5678_9ABC_DEF0L);
+        dependencies.put("p/Missing", null);
+
+        cache = new DiskSourceCache(directory);
+        cache.put(key("A"), newEntry("class A {}", dependencies));
+        cache.put(key("B"), newEntry("class B {}", new LinkedHashMap<>()));
+        cache.close();
+
+        cache = new DiskSourceCache(directory);
+        DiskSourceCache.Entry entry = cache.get(key("A"));
+
+        assertEquals(2, cache.getEntryCount());
+        assertNotNull(entry);
+        assertEquals(52, entry.getMajorVersion());
+        assertEquals(3, entry.getMinorVersion());
+        assertEquals(dependencies, entry.getDependencies());
+        assertEquals(Arrays.asList("p/A$Inner", "p/Missing"), Arrays.asList(entry.getDependencies().keySet().toArray()));
+        assertEquals("class A {}", render(entry));
+        assertEquals("class B {}", render(cache.get(key("B"))));
+        assertNull(cache.get(key("C")));
+    }
+
+    @Test
+    public void testLaterRecordReplacesEarlier() throws Exception {
+        cache = new DiskSourceCache(directory);
+        cache.put(key("A"), newEntry("first", new LinkedHashMap<>()));
+        cache.put(key("A"), newEntry("second", new LinkedHashMap<>()));
+        cache.close();
+
+        cache = new DiskSourceCache(directory);
+
+        assertEquals("second", render(cache.get(key("A"))));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testTruncatedRecordEndsScan() throws Exception {
+        cache = new DiskSourceCache(directory);
+        cache.put(key("A"), newEntry("class A {}", new LinkedHashMap<>()));
+        long end = cache.getSize();
+        cache.put(key("B"), newEntry("class B {}", new LinkedHashMap<>()));
+        cache.close();
+
+        File segment = getSegmentFile();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Crash while appending the second record
+            file.setLength(file.length() - 3);
+        }
+
+        cache = new DiskSourceCache(directory);
+
+        assertEquals("class A {}", render(cache.get(key("A"))));
+        assertNull(cache.get(key("B")));
+        assertEquals(1, cache.getEntryCount());
+        // The incomplete tail is dropped, the next records appended after the first one
+        assertEquals(end, segment.length());
+
+        cache.put(key("C"), newEntry("class C {}", new LinkedHashMap<>()));
+        cache.close();
+
+        cache = new DiskSourceCache(directory);
+
+        assertEquals("class C {}", render(cache.get(key("C"))));
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void testCorruptedPayloadIsDropped() throws Exception {
+        cache = new DiskSourceCache(directory);
+        cache.put(key("A"), newEntry("class A {}", new LinkedHashMap<>()));
+        cache.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(), "rw")) {
+            long position = DiskSourceCache.RECORD_HEADER_LENGTH + 2;
+
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+
+        cache = new DiskSourceCache(directory);
+
+        assertNull(cache.get(key("A")));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testRecordOfOtherFormatEndsScan() throws Exception {
+        cache = new DiskSourceCache(directory);
+        cache.put(key("A"), newEntry("class A {}", new LinkedHashMap<>()));
+        cache.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(), "rw")) {
+            file.writeInt(DiskSourceCache.RECORD_MAGIC - 1);
+        }
+
+        cache = new DiskSourceCache(directory);
+
+        assertNull(cache.get(key("A")));
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testCompactionKeepsLiveRecords() throws Exception {
+        cache = new DiskSourceCache(directory);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("A"), newEntry("class A" + i + " {}", new LinkedHashMap<>()));
+        }
+        cache.put(key("B"), newEntry("class B {}", new LinkedHashMap<>()));
+
+        long size = cache.getSize();
+
+        cache.compact();
+
+        assertTrue(cache.getSize() <= size);
+        assertEquals("class A9 {}", render(cache.get(key("A"))));
+        assertEquals("class B {}", render(cache.get(key("B"))));
+        cache.close();
+
+        cache = new DiskSourceCache(directory);
+
+        assertEquals("class A9 {}", render(cache.get(key("A"))));
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void testTrackedDependencies() throws Exception {
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put("p/A", new byte[] { 1 });
+        classes.put("p/A$Inner", new byte[] { 2, 3 });
+
+        StampedLoader loader = newLoader(classes);
+        DiskSourceCache.TrackingLoader trackingLoader = new DiskSourceCache.TrackingLoader(loader, "p/A");
+
+        assertNotNull(trackingLoader.load("p/A"));
+        assertNotNull(trackingLoader.load("p/A$Inner"));
+        assertNull(trackingLoader.load("p/Missing"));
+        assertFalse(trackingLoader.canLoad("p/Unknown"));
+        assertTrue(trackingLoader.canLoad("p/A$Inner"));
+
+        Map<String, Long> dependencies = trackingLoader.getDependencies();
+
+        assertEquals(Arrays.asList("p/A$Inner", "p/Missing", "p/Unknown"), Arrays.asList(dependencies.keySet().toArray()));
+        assertEquals(loader.getStamp("p/A$Inner"), dependencies.get("p/A$Inner"));
+        assertNull(dependencies.get("p/Missing"));
+
+        DiskSourceCache.Entry entry = newEntry("class A {}", dependencies);
+
+        assertTrue(entry.isValid(loader));
+
+        // A class missing at the decompilation appears
+        classes.put("p/Unknown", new byte[0]);
+        assertFalse(entry.isValid(loader));
+        classes.remove("p/Unknown");
+        assertTrue(entry.isValid(loader));
+
+        // An inner class changes
+        classes.put("p/A$Inner", new byte[] { 4 });
+        assertFalse(entry.isValid(loader));
+
+        // An inner class is deleted
+        classes.remove("p/A$Inner");
+        assertFalse(entry.isValid(loader));
+    }
+
+    protected File getSegmentFile() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(DiskSourceCache.SEGMENT_PREFIX));
+
+        assertNotNull(files);
+        assertEquals(1, files.length);
+
+        return files[0];
+    }
+
+    protected static DiskSourceCache.Digest key(String name) {
+        return DiskSourceCache.digest(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static DiskSourceCache.Entry newEntry(String source, Map<String, Long> dependencies) {
+        RecordingPrinter printer = new RecordingPrinter();
+
+        printer.start(1, 52, 3);
+        printer.printText(source);
+        printer.end();
+
+        return new DiskSourceCache.Entry(52, 3, dependencies, printer.toRecording());
+    }
+
+    protected static String render(DiskSourceCache.Entry entry) {
+        StringBuilderPrinter printer = new StringBuilderPrinter();
+
+        entry.getRecording().replay(printer);
+
+        return new String(printer.toCharArray());
+    }
+
+    protected static StampedLoader newLoader(Map<String, byte[]> classes) {
+        return new StampedLoader() {
+            @Override
+            public boolean canLoad(String internalName) {
+                return classes.containsKey(internalName);
+            }
+
+            @Override
+            public byte[] load(String internalName) {
+                return classes.get(internalName);
+            }
+
+            @Override
+            public Long getStamp(String internalName) {
+                byte[] data = classes.get(internalName);
+                return (data == null) ? null : (long) Arrays.hashCode(data);
+            }
+        };
+    }
+}
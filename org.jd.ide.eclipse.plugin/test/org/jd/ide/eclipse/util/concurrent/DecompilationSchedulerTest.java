@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.concurrent;
+
+import org.jd.ide.eclipse.util.concurrent.DecompilationScheduler.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DecompilationSchedulerTest {
+    private static final long TIMEOUT = 10;
+
+    protected DecompilationScheduler scheduler;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testSameKeySharesComputation() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        AtomicInteger count = new AtomicInteger();
+        DecompilationScheduler.Computation<String> computation = canceled -> {
+            count.incrementAndGet();
+            return "source";
+        };
+
+        Future<String> first = scheduler.submit("key", Priority.BACKGROUND, computation);
+        Future<String> second = scheduler.submit("key", Priority.FOREGROUND, computation);
+
+        assertNotSame(first, second);
+        release.countDown();
+
+        assertEquals("source", first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("source", second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testForegroundRunsBeforeBackground() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Future<String> background = scheduler.submit("background", Priority.BACKGROUND, record(order, "background"));
+        Future<String> foreground = scheduler.submit("foreground", Priority.FOREGROUND, record(order, "foreground"));
+
+        release.countDown();
+        background.get(TIMEOUT, TimeUnit.SECONDS);
+        foreground.get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("foreground", "background"), order);
+    }
+
+    @Test
+    public void testForegroundSubmissionPromotesQueuedTask() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Future<String> first = scheduler.submit("first", Priority.BACKGROUND, record(order, "first"));
+        Future<String> second = scheduler.submit("second", Priority.BACKGROUND, record(order, "second"));
+        Future<String> promoted = scheduler.submit("second", Priority.FOREGROUND, record(order, "unexpected"));
+
+        release.countDown();
+        assertEquals("first", first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("second", second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("second", promoted.get(TIMEOUT, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("second", "first"), order);
+    }
+
+    @Test
+    public void testCancelQueuedTaskOfLastCaller() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        AtomicInteger count = new AtomicInteger();
+        Future<String> future = scheduler.submit("key", Priority.FOREGROUND, canceled -> {
+            count.incrementAndGet();
+            return "source";
+        });
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(false));
+
+        release.countDown();
+        // Runs after the canceled task, which is skipped
+        scheduler.submit("other", Priority.FOREGROUND, canceled -> null).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(0, count.get());
+
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCancelOneOfSeveralCallers() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        DecompilationScheduler.Computation<String> computation = canceled -> canceled.getAsBoolean() ? null : "source";
+
+        Future<String> withdrawn = scheduler.submit("key", Priority.FOREGROUND, computation);
+        Future<String> remaining = scheduler.submit("key", Priority.FOREGROUND, computation);
+
+        assertTrue(withdrawn.cancel(false));
+        release.countDown();
+
+        assertEquals("source", remaining.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(withdrawn.isCancelled());
+        assertFalse(remaining.isCancelled());
+    }
+
+    @Test
+    public void testCancelRunningTaskSignalsComputation() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Future<String> future = scheduler.submit("key", Priority.FOREGROUND, canceled -> {
+            started.countDown();
+            while (!canceled.getAsBoolean()) {
+                Thread.sleep(1);
+            }
+            stopped.countDown();
+            return null;
+        });
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+        assertTrue(stopped.await(TIMEOUT, TimeUnit.SECONDS));
+
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+            // Expected, without waiting for the end of the computation
+        }
+    }
+
+    @Test
+    public void testSubmitAfterCancellationOfRunningTaskStartsNewTask() throws Exception {
+        scheduler = new DecompilationScheduler(2);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(1);
+        Future<String> canceledFuture = scheduler.submit("key", Priority.FOREGROUND, canceled -> {
+            started.countDown();
+            // Still running when the same key is submitted again
+            end.await();
+            return canceled.getAsBoolean() ? null : "stale";
+        });
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(canceledFuture.cancel(false));
+
+        try {
+            Future<String> future = scheduler.submit("key", Priority.FOREGROUND, canceled -> "source");
+
+            assertEquals("source", future.get(TIMEOUT, TimeUnit.SECONDS));
+        } finally {
+            end.countDown();
+        }
+    }
+
+    @Test
+    public void testSubmitFromWorkerThreadRunsInline() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        Future<String> future = scheduler.submit("outer", Priority.FOREGROUND, canceled -> {
+            assertTrue(scheduler.isWorkerThread());
+            // A single thread: waiting for a queued task would never end
+            return scheduler.submit("inner", Priority.FOREGROUND, c -> "inner").get() + " in outer";
+        });
+
+        assertEquals("inner in outer", future.get(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(scheduler.isWorkerThread());
+    }
+
+    @Test
+    public void testComputationFailure() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        Future<String> future = scheduler.submit("key", Priority.FOREGROUND, canceled -> {
+            throw new IllegalStateException("failure");
+        });
+
+        try {
+            future.get(TIMEOUT, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testShutdownCancelsQueuedTasksAndRejectsNewOnes() throws Exception {
+        scheduler = new DecompilationScheduler(1);
+
+        CountDownLatch release = block();
+        Future<String> queued = scheduler.submit("key", Priority.BACKGROUND, canceled -> "source");
+
+        scheduler.shutdown();
+        release.countDown();
+
+        assertTrue(queued.isCancelled());
+
+        try {
+            scheduler.submit("other", Priority.FOREGROUND, canceled -> "source");
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Occupies the worker thread of a scheduler of one thread, so that the
+     * tasks submitted next stay queued.
+     *
+     * @return The latch to count down to release the thread.
+     */
+    protected CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit(null, Priority.FOREGROUND, canceled -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        return release;
+    }
+
+    protected static DecompilationScheduler.Computation<String> record(List<String> order, String name) {
+        return canceled -> {
+            order.add(name);
+            return name;
+        };
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.index;
+
+import org.jd.ide.eclipse.util.cache.DiskSourceCache;
+import org.jd.ide.eclipse.util.cache.DiskSourceCache.Digest;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Kind;
+import org.jd.ide.eclipse.util.index.ArchiveIndex.Query;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ArchiveIndexTest {
+    @Test
+    public void testWrittenIndexReadsTheSame() throws IOException {
+        ArchiveIndex index = newIndex();
+        ArchiveIndex copy = read(write(index));
+
+        assertEquals(index.getIdentity(), copy.getIdentity());
+        assertEquals(3, copy.getClassCount());
+        assertEquals(index.getTermCount(), copy.getTermCount());
+
+        for (String name : Arrays.asList("p/A", "p/B", "q/C")) {
+            assertEquals(index.getTerms(name, digest(name)), copy.getTerms(name, digest(name)));
+            assertNotNull(copy.getTerms(name, digest(name)));
+            // Class files changed
+            assertNull(copy.getTerms(name, digest(name + "'")));
+        }
+        assertNull(copy.getTerms("p/Unknown", digest("p/Unknown")));
+
+        for (Query query : queries()) {
+            assertEquals(query.getText(), toStrings(index.search(query, 100)), toStrings(copy.search(query, 100)));
+        }
+    }
+
+    @Test
+    public void testLongAndUnpairedStringsSurvive() throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        // Longer than the 64 KB of writeUTF()
+        while (sb.length() < 70_000) {
+            sb.append("\u00E9\uD83D\uDE00");
+        }
+        sb.append('\uD800').append('\0');
+
+        ArchiveIndex.Builder builder = new ArchiveIndex.Builder("\uDC00 identity");
+        builder.add("p/A", digest("p/A"), Arrays.asList(ArchiveIndex.term(Kind.STRING, sb.toString())));
+
+        ArchiveIndex copy = read(write(builder.build()));
+
+        assertEquals("\uDC00 identity", copy.getIdentity());
+        assertEquals(Collections.singletonList(ArchiveIndex.term(Kind.STRING, sb.toString())),
+                copy.getTerms("p/A", digest("p/A")));
+    }
+
+    @Test
+    public void testSearch() {
+        ArchiveIndex index = newIndex();
+
+        // Names end with the text after a dot, whatever the case
+        assertEquals(Arrays.asList("p/A:REFERENCE:java.lang.String.format", "p/B:REFERENCE:java.lang.String.format"),
+                toStrings(index.search(new Query(Kind.REFERENCE, "string.FORMAT", false), 100)));
+        assertEquals(Collections.emptyList(),
+                toStrings(index.search(new Query(Kind.REFERENCE, "string.FORMAT", true), 100)));
+        // Prefix, suffix and substring patterns
+        assertEquals(Arrays.asList("p/A:DECLARATION:p.A.run"),
+                toStrings(index.search(new Query(Kind.DECLARATION, "A.r*", false), 100)));
+        assertEquals(Arrays.asList("q/C:DECLARATION:q.C.render"),
+                toStrings(index.search(new Query(Kind.DECLARATION, "*der", false), 100)));
+        assertEquals(Arrays.asList("p/B:DECLARATION:p.B.parse"),
+                toStrings(index.search(new Query(Kind.DECLARATION, "*ars*", false), 100)));
+        // String constants contain the text
+        assertEquals(Arrays.asList("q/C:STRING:Hello, World"),
+                toStrings(index.search(new Query(Kind.STRING, "lo, w", false), 100)));
+        // Kinds are kept apart, matches are limited
+        assertEquals(Collections.emptyList(),
+                toStrings(index.search(new Query(Kind.STRING, "format", false), 100)));
+        assertEquals(1, index.search(new Query(Kind.REFERENCE, "format", false), 1).size());
+    }
+
+    @Test
+    public void testOtherFormatIsRejected() throws IOException {
+        byte[] bytes = write(newIndex());
+
+        for (int position : new int[] { 0, 7 }) {
+            byte[] copy = bytes.clone();
+            copy[position]++;
+
+            try {
+                read(copy);
+                fail("Header not checked at " + position);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("format"));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedIndexIsRejected() throws IOException {
+        byte[] bytes = write(newIndex());
+
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                read(Arrays.copyOf(bytes, length));
+                fail("Truncated at " + length);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidIdsAndCountsAreRejected() throws IOException {
+        // The last term id of the last class, out of range
+        byte[] bytes = write(newIndex());
+        bytes[bytes.length - 4] = 0x7F;
+        assertCorrupted(bytes);
+
+        // Negative term count
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            data.writeInt(ArchiveIndex.MAGIC);
+            data.writeInt(ArchiveIndex.FORMAT_VERSION);
+            ArchiveIndex.writeString(data, "identity");
+            data.writeInt(-1);
+        }
+
+        assertCorrupted(out.toByteArray());
+    }
+
+    protected static void assertCorrupted(byte[] bytes) {
+        try {
+            read(bytes);
+            fail("Corrupted index read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Corrupted"));
+        }
+    }
+
+    protected static ArchiveIndex newIndex() {
+        ArchiveIndex.Builder builder = new ArchiveIndex.Builder("/tmp/test.jar 1234 5678");
+
+        builder.add("p/A", digest("p/A"), Arrays.asList(
+                ArchiveIndex.term(Kind.DECLARATION, "p.A"),
+                ArchiveIndex.term(Kind.DECLARATION, "p.A.run"),
+                ArchiveIndex.term(Kind.REFERENCE, "java.lang.String.format")));
+        builder.add("p/B", digest("p/B"), Arrays.asList(
+                ArchiveIndex.term(Kind.DECLARATION, "p.B"),
+                ArchiveIndex.term(Kind.DECLARATION, "p.B.parse"),
+                ArchiveIndex.term(Kind.REFERENCE, "java.lang.String.format"),
+                ArchiveIndex.term(Kind.STRING, "%d items")));
+        builder.add("q/C", digest("q/C"), Arrays.asList(
+                ArchiveIndex.term(Kind.DECLARATION, "q.C"),
+                ArchiveIndex.term(Kind.DECLARATION, "q.C.render"),
+                ArchiveIndex.term(Kind.STRING, "Hello, World")));
+
+        return builder.build();
+    }
+
+    protected static List<Query> queries() {
+        return Arrays.asList(
+                new Query(Kind.REFERENCE, "format", false),
+                new Query(Kind.DECLARATION, "p.*", false),
+                new Query(Kind.DECLARATION, "*e", true),
+                new Query(Kind.DECLARATION, "*.?", false),
+                new Query(Kind.STRING, "items", false));
+    }
+
+    protected static List<String> toStrings(List<ArchiveIndex.Match> matches) {
+        List<String> strings = new ArrayList<>(matches.size());
+
+        for (ArchiveIndex.Match match : matches) {
+            strings.add(match.getInternalTypeName() + ':' + match.getKind() + ':' + match.getText());
+        }
+
+        Collections.sort(strings);
+        return strings;
+    }
+
+    protected static Digest digest(String name) {
+        return DiskSourceCache.digest(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static byte[] write(ArchiveIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.write(out);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    protected static ArchiveIndex read(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return ArchiveIndex.read(in);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.loader;
+
+import org.jd.core.v1.api.loader.LoaderException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipLoaderTest {
+    protected File directory;
+    protected List<ZipLoader> loaders = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jd-zip-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (ZipLoader loader : loaders) {
+            loader.close();
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws Exception {
+        Map<String, byte[]> classes = newClasses(20);
+        ZipLoader loader = open(writeJar("classes.jar", classes, null, 0, false));
+
+        assertClasses(classes, loader);
+        assertNull(loader.load("p/Missing"));
+        assertFalse(loader.canLoad("p/Missing"));
+        assertNull(loader.getStamp("p/Missing"));
+    }
+
+    @Test
+    public void testCommentAndPrefix() throws Exception {
+        Map<String, byte[]> classes = newClasses(5);
+        char[] comment = new char[60000];
+
+        Arrays.fill(comment, 'c');
+
+        // The end record is searched before the longest comment, entry offsets are shifted by the prefix
+        assertClasses(classes, open(writeJar("comment.jar", classes, new String(comment), 0, false)));
+        assertClasses(classes, open(writeJar("prefix.jar", classes, null, 1000, false)));
+    }
+
+    @Test
+    public void testEmptyArchive() throws Exception {
+        ZipLoader loader = open(writeJar("empty.jar", Collections.emptyMap(), null, 0, false));
+
+        assertTrue(loader.getInternalNames().isEmpty());
+        assertNull(loader.load("p/A"));
+    }
+
+    @Test
+    public void testZip64EndRecords() throws Exception {
+        // More than 0xFFFF entries: the entry count is read from the zip64 end record
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (int i = 0; i < 70000; i++) {
+            classes.put("p/C" + i, new byte[] { (byte) i });
+        }
+
+        ZipLoader loader = open(writeJar("zip64.jar", classes, null, 0, true));
+
+        assertEquals(classes.size(), loader.getInternalNames().size());
+        assertArrayEquals(classes.get("p/C0"), loader.load("p/C0"));
+        assertArrayEquals(classes.get("p/C69999"), loader.load("p/C69999"));
+    }
+
+    @Test
+    public void testZip64ExtendedInformation() throws Exception {
+        byte[] data = "class file".getBytes(StandardCharsets.UTF_8);
+        ZipLoader loader = open(writeZip64Entry("extended.jar", "p/A.class", data, 16));
+
+        assertArrayEquals(data, loader.load("p/A"));
+        assertEquals(stamp(data), (long) loader.getStamp("p/A"));
+    }
+
+    @Test
+    public void testTruncatedZip64ExtendedInformation() throws Exception {
+        byte[] data = "class file".getBytes(StandardCharsets.UTF_8);
+
+        // Both sizes are in the extended information, only one is present
+        assertFails(open(writeZip64Entry("truncated.jar", "p/A.class", data, 8)));
+    }
+
+    @Test
+    public void testCorruptedCentralDirectory() throws Exception {
+        Map<String, byte[]> classes = newClasses(3);
+        File jar = writeJar("corrupted.jar", classes, null, 0, false);
+        byte[] bytes = Files.readAllBytes(jar.toPath());
+        int position = lastIndexOf(bytes, ZipLoader.CENTRAL_HEADER_SIGNATURE);
+
+        // Name length beyond the central directory
+        bytes[position + 28] = (byte) 0xFF;
+        bytes[position + 29] = (byte) 0x7F;
+        Files.write(jar.toPath(), bytes);
+
+        assertFails(open(jar));
+    }
+
+    @Test
+    public void testTruncatedArchive() throws Exception {
+        File jar = writeJar("truncated.jar", newClasses(200), null, 0, false);
+
+        try (RandomAccessFile file = new RandomAccessFile(jar, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        // No end record
+        assertFails(open(jar));
+    }
+
+    @Test
+    public void testArchiveTruncatedWhileOpen() throws Exception {
+        Map<String, byte[]> classes = newClasses(2000);
+        File jar = writeJar("shrinking.jar", classes, null, 0, false);
+        ZipLoader loader = open(jar);
+        List<String> internalNames = loader.getInternalNames();
+
+        try (RandomAccessFile file = new RandomAccessFile(jar, "rw")) {
+            file.setLength(4096);
+        }
+
+        int failures = 0;
+
+        for (String internalName : internalNames) {
+            try {
+                assertArrayEquals(classes.get(internalName), loader.load(internalName));
+            } catch (LoaderException e) {
+                failures++;
+            }
+        }
+
+        // Entries beyond the end of the file are reported, not read from the mapping
+        assertTrue(failures > internalNames.size() / 2);
+    }
+
+    @Test
+    public void testClosedLoaderIsNotReopened() throws Exception {
+        Map<String, byte[]> classes = newClasses(3);
+        ZipLoader loader = open(writeJar("closed.jar", classes, null, 0, false));
+
+        assertArrayEquals(classes.get("p/C0"), loader.load("p/C0"));
+        loader.close();
+
+        assertFalse(loader.canLoad("p/C0"));
+        assertFails(loader);
+    }
+
+    @Test
+    public void testNestedArchives() throws Exception {
+        Map<String, byte[]> inner = newClasses(3);
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        byte[] outer = { 1, 2, 3 };
+
+        entries.put("BOOT-INF/classes/q/A.class", outer);
+        entries.put("BOOT-INF/lib/inner.jar", Files.readAllBytes(writeJar("inner.jar", inner, null, 0, false).toPath()));
+
+        NestedZipLoader loader = new NestedZipLoader(writeArchive("fat.jar", entries, false));
+        loaders.add(loader);
+
+        assertArrayEquals(outer, loader.load("q/A"));
+        assertArrayEquals(inner.get("p/C1"), loader.load("p/C1"));
+        assertEquals(stamp(inner.get("p/C2")), (long) loader.getStamp("p/C2"));
+        assertEquals(4, loader.getInternalNames().size());
+    }
+
+    protected ZipLoader open(File jar) throws LoaderException {
+        ZipLoader loader = new ZipLoader(jar);
+        loaders.add(loader);
+        return loader;
+    }
+
+    protected static void assertClasses(Map<String, byte[]> classes, ZipLoader loader) throws LoaderException {
+        List<String> internalNames = new ArrayList<>(loader.getInternalNames());
+        Map<String, Long> stamps = loader.getEntryStamps();
+
+        Collections.sort(internalNames);
+        assertEquals(new ArrayList<>(new TreeSet<>(classes.keySet())), internalNames);
+
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String internalName = entry.getKey();
+            ByteBuffer buffer = loader.loadBuffer(internalName);
+            byte[] bytes = new byte[buffer.remaining()];
+
+            buffer.get(bytes);
+
+            assertTrue(loader.canLoad(internalName));
+            assertArrayEquals(entry.getValue(), loader.load(internalName));
+            assertArrayEquals(entry.getValue(), bytes);
+            assertEquals(stamp(entry.getValue()), (long) loader.getStamp(internalName));
+            assertEquals(stamps.get(internalName), loader.getStamp(internalName));
+        }
+    }
+
+    protected static void assertFails(ZipLoader loader) {
+        try {
+            loader.load("p/A");
+            fail("Invalid archive read");
+        } catch (LoaderException e) {
+            // Expected
+        }
+        try {
+            loader.getInternalNames();
+            fail("Invalid archive listed");
+        } catch (LoaderException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * @return Classes alternately stored and deflated.
+     */
+    protected static Map<String, byte[]> newClasses(int count) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[100 + i];
+
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) (j % 7 + i);
+            }
+
+            classes.put("p/C" + i, data);
+        }
+
+        return classes;
+    }
+
+    protected File writeJar(String name, Map<String, byte[]> classes, String comment, int prefix, boolean allStored) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        entries.put("p/", new byte[0]);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            entries.put(entry.getKey() + ".class", entry.getValue());
+        }
+
+        File file = writeArchive(name, entries, allStored);
+
+        if ((comment != null) || (prefix > 0)) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[prefix]);
+
+                if (comment == null) {
+                    out.write(bytes);
+                } else {
+                    // Rewrite the comment length of the end record, at its end without comment
+                    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(bytes.length - 2, (short) comment.length());
+                    out.write(bytes);
+                    out.write(comment.getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+        }
+
+        return file;
+    }
+
+    protected File writeArchive(String name, Map<String, byte[]> entries, boolean allStored) throws IOException {
+        File file = new File(directory, name);
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            int i = 0;
+
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                byte[] data = entry.getValue();
+
+                if (allStored || (i++ % 2 == 0)) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(data.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+
+                out.putNextEntry(zipEntry);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Writes a stored entry whose sizes are in the zip64 extended
+     * information of the central directory, 'extraLength' bytes long.
+     */
+    protected File writeZip64Entry(String name, String entryName, byte[] data, int extraLength) throws IOException {
+        byte[] nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+
+        crc.update(data);
+
+        buffer.putInt(ZipLoader.LOCAL_HEADER_SIGNATURE).putShort((short) 10).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) crc.getValue()).putInt(data.length).putInt(data.length)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes).put(data);
+
+        int cdOffset = buffer.position();
+
+        buffer.putInt(ZipLoader.CENTRAL_HEADER_SIGNATURE).putShort((short) 45).putShort((short) 45).putShort((short) 0)
+                .putShort((short) 0).putInt(0).putInt((int) crc.getValue()).putInt(-1).putInt(-1)
+                .putShort((short) nameBytes.length).putShort((short) (4 + extraLength)).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt(0).put(nameBytes)
+                .putShort((short) ZipLoader.ZIP64_EXTRA_ID).putShort((short) extraLength);
+
+        for (int i = 0; i < extraLength / 8; i++) {
+            buffer.putLong(data.length);
+        }
+
+        int cdSize = buffer.position() - cdOffset;
+
+        buffer.putInt(ZipLoader.END_SIGNATURE).putShort((short) 0).putShort((short) 0).putShort((short) 1)
+                .putShort((short) 1).putInt(cdSize).putInt(cdOffset).putShort((short) 0);
+
+        File file = new File(directory, name);
+        Files.write(file.toPath(), Arrays.copyOf(buffer.array(), buffer.position()));
+        return file;
+    }
+
+    protected static long stamp(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (crc.getValue() << 32) | data.length;
+    }
+
+    protected static int lastIndexOf(byte[] bytes, int signature) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = bytes.length - 4; i >= 0; i--) {
+            if (buffer.getInt(i) == signature) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2008, 2019 Emmanuel Dupuy.
+ * This project is distributed under the GPLv3 license.
+ * This is a Copyleft license that gives the user the right to use,
+ * copy and modify the code freely for non-commercial purposes.
+ */
+
+package org.jd.ide.eclipse.util.printer;
+
+import org.jd.core.v1.api.printer.Printer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrinterRecordingTest {
+    @Test
+    public void testReplayMakesTheRecordedCalls() {
+        List<String> expected = new ArrayList<>();
+        RecordingPrinter recorder = new RecordingPrinter();
+
+        print(new Printer[] { new LoggingPrinter(expected), recorder });
+
+        List<String> replayed = new ArrayList<>();
+        recorder.toRecording().replay(new LoggingPrinter(replayed));
+
+        assertEquals(expected, replayed);
+        assertEquals(52, recorder.getMajorVersion());
+        assertEquals(0, recorder.getMinorVersion());
+    }
+
+    @Test
+    public void testWrittenRecordingReplaysTheSameCalls() throws IOException {
+        List<String> expected = new ArrayList<>();
+        RecordingPrinter recorder = new RecordingPrinter();
+
+        print(new Printer[] { new LoggingPrinter(expected), recorder });
+
+        PrinterRecording recording = read(write(recorder.toRecording()));
+        List<String> replayed = new ArrayList<>();
+        recording.replay(new LoggingPrinter(replayed));
+
+        assertEquals(expected, replayed);
+    }
+
+    @Test
+    public void testStringsKeepUnpairedSurrogatesAndNuls() throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        // A pair split by the chunks, lone surrogates and NULs
+        while (sb.length() < PrinterRecording.CHUNK_LENGTH - 1) {
+            sb.append('a');
+        }
+        sb.append("\uD83D\uDE00").append('\uD800').append("x\uDC00").append('\0').append("\u00E9\u4E2D");
+        while (sb.length() < 3 * PrinterRecording.CHUNK_LENGTH + 7) {
+            sb.append('\uDBFF');
+        }
+
+        for (String s : Arrays.asList("", "\uD800", "\uDFFF\uD800", "\0", sb.toString())) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                PrinterRecording.writeString(out, s);
+            }
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertEquals(s, PrinterRecording.readString(in));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testOtherVersionIsRejected() throws IOException {
+        RecordingPrinter recorder = new RecordingPrinter();
+
+        print(new Printer[] { recorder });
+
+        byte[] bytes = write(recorder.toRecording());
+        bytes[3]++;
+
+        try {
+            read(bytes);
+            fail("Version not checked");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordingIsRejected() throws IOException {
+        RecordingPrinter recorder = new RecordingPrinter();
+
+        print(new Printer[] { recorder });
+
+        byte[] bytes = write(recorder.toRecording());
+
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                read(Arrays.copyOf(bytes, length));
+                fail("Truncated at " + length);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptedEventsFailOnReplay() {
+        RecordingPrinter recorder = new RecordingPrinter();
+
+        print(new Printer[] { recorder });
+
+        PrinterRecording recording = recorder.toRecording();
+        byte[] events = Arrays.copyOf(recording.events, recording.length);
+
+        // Unknown opcode
+        events[0] = 127;
+        assertReplayFails(new PrinterRecording(events, events.length, recording.strings));
+
+        // Arguments missing
+        events = Arrays.copyOf(recording.events, 2);
+        assertReplayFails(new PrinterRecording(events, events.length, recording.strings));
+    }
+
+    @Test
+    public void testInvalidLengthsAreRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(PrinterRecording.FORMAT_VERSION);
+            out.writeInt(-1);
+        }
+
+        try {
+            read(bytes.toByteArray());
+            fail("Negative length accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("length"));
+        }
+    }
+
+    protected static void print(Printer[] printers) {
+        for (Printer printer : printers) {
+            printer.start(12, 52, 0);
+            printer.startMarker(Printer.IMPORT_STATEMENTS);
+            printer.printKeyword("import");
+            printer.printText(" ");
+            printer.printReference(Printer.TYPE, "java/util/List", "List", null, "p/A");
+            printer.endMarker(Printer.IMPORT_STATEMENTS);
+            printer.endLine();
+            printer.extraLine(2);
+            printer.startLine(3);
+            printer.printDeclaration(Printer.TYPE, "p/A", "A", null);
+            printer.indent();
+            printer.printDeclaration(Printer.FIELD, "p/A", "s", "Ljava/lang/String;");
+            printer.printStringConstant("\"\uD800\u00E9\\n\"", "p/A");
+            printer.printNumericConstant("0x7FFFFFFF");
+            printer.printText("\uD83D\uDE00");
+            printer.printText("A");
+            printer.unindent();
+            printer.startLine(Printer.UNKNOWN_LINE_NUMBER);
+            printer.endLine();
+            printer.end();
+        }
+    }
+
+    protected static byte[] write(PrinterRecording recording) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            recording.write(out);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    protected static PrinterRecording read(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return PrinterRecording.read(in);
+        }
+    }
+
+    protected static void assertReplayFails(PrinterRecording recording) {
+        try {
+            recording.replay(new LoggingPrinter(new ArrayList<>()));
+            fail("Corrupted recording replayed");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    protected static class LoggingPrinter implements Printer {
+        protected final List<String> calls;
+
+        protected LoggingPrinter(List<String> calls) {
+            this.calls = calls;
+        }
+
+        protected void log(Object... arguments) {
+            calls.add(Arrays.toString(arguments));
+        }
+
+        @Override public void start(int maxLineNumber, int majorVersion, int minorVersion) { log("start", maxLineNumber, majorVersion, minorVersion); }
+        @Override public void end() { log("end"); }
+        @Override public void printText(String text) { log("text", text); }
+        @Override public void printNumericConstant(String constant) { log("numeric", constant); }
+        @Override public void printStringConstant(String constant, String ownerInternalName) { log("string", constant, ownerInternalName); }
+        @Override public void printKeyword(String keyword) { log("keyword", keyword); }
+        @Override public void printDeclaration(int type, String internalTypeName, String name, String descriptor) { log("declaration", type, internalTypeName, name, descriptor); }
+        @Override public void printReference(int type, String internalTypeName, String name, String descriptor, String ownerInternalName) { log("reference", type, internalTypeName, name, descriptor, ownerInternalName); }
+        @Override public void indent() { log("indent"); }
+        @Override public void unindent() { log("unindent"); }
+        @Override public void startLine(int lineNumber) { log("startLine", lineNumber); }
+        @Override public void endLine() { log("endLine"); }
+        @Override public void extraLine(int count) { log("extraLine", count); }
+        @Override public void startMarker(int type) { log("startMarker", type); }
+        @Override public void endMarker(int type) { log("endMarker", type); }
+    }
+}